@@ -6,12 +6,22 @@ import javafx.scene.Node;
 import javafx.scene.control.TreeItem;
 import javafx.util.Callback;
 
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.*;
 
+/**
+ * A tree item that mirrors an observable list of children for its value.
+ * Child items are only created once the children of this item are first requested, which happens when the item is expanded,
+ * so that a large tree allocates items for the rows that can be shown rather than for every descendant.
+ */
 public class RecursiveTreeItem<T> extends TreeItem<T> {
     private final Callback<T, ObservableList<T>> childrenFactory;
     private final Callback<T, Node> graphicsFactory;
+    private final ListChangeListener<T> childrenListener = this::childrenChanged;
+
+    //Child items by value identity, so removals do not need to search the children
+    private final Map<T, TreeItem<T>> childItems = new IdentityHashMap<>();
+    private ObservableList<T> childValues;
+    private boolean childrenLoaded;
 
     public RecursiveTreeItem(Callback<T, ObservableList<T>> childrenFactory){
         this(null, childrenFactory);
@@ -32,44 +42,91 @@ public class RecursiveTreeItem<T> extends TreeItem<T> {
         }
 
         valueProperty().addListener((obs, oldValue, newValue)->{
+            if(childValues != null) {
+                childValues.removeListener(childrenListener);
+                childValues = null;
+            }
+
             if(newValue != null){
                 addChildrenListener(newValue);
             }
+
+            if(childrenLoaded) {
+                childItems.clear();
+                super.getChildren().setAll(createChildItems(childValues == null ? Collections.emptyList() : childValues));
+            }
         });
 
         this.setExpanded(false);
     }
 
     private void addChildrenListener(T value){
-        final ObservableList<T> children = childrenFactory.call(value);
+        childValues = childrenFactory.call(value);
+        childValues.addListener(childrenListener);
+    }
 
-        children.forEach(child ->  RecursiveTreeItem.this.getChildren().add(
-                new RecursiveTreeItem<>(child, this.graphicsFactory, childrenFactory)));
+    @Override
+    public ObservableList<TreeItem<T>> getChildren() {
+        if(!childrenLoaded) {
+            childrenLoaded = true;
+            if(childValues != null && !childValues.isEmpty()) {
+                super.getChildren().setAll(createChildItems(childValues));
+            }
+        }
+
+        return super.getChildren();
+    }
 
-        children.addListener((ListChangeListener<T>) change -> {
-            while(change.next()){
+    @Override
+    public boolean isLeaf() {
+        if(childrenLoaded) {
+            return super.getChildren().isEmpty();
+        }
+
+        return childValues == null || childValues.isEmpty();
+    }
 
-                if(change.wasAdded()){
-                    if(change.getFrom() >= RecursiveTreeItem.this.getChildren().size()) {
-                        change.getAddedSubList().forEach(t-> RecursiveTreeItem.this.getChildren().add(new RecursiveTreeItem<>(t, this.graphicsFactory, childrenFactory)));
-                    } else {
-                        change.getAddedSubList().forEach(t-> RecursiveTreeItem.this.getChildren().add(change.getFrom(), new RecursiveTreeItem<>(t, this.graphicsFactory, childrenFactory)));
+    private List<TreeItem<T>> createChildItems(List<? extends T> values) {
+        List<TreeItem<T>> items = new ArrayList<>(values.size());
+        for(T value : values) {
+            TreeItem<T> item = new RecursiveTreeItem<>(value, this.graphicsFactory, childrenFactory);
+            childItems.put(value, item);
+            items.add(item);
+        }
+
+        return items;
+    }
+
+    private void childrenChanged(ListChangeListener.Change<? extends T> change) {
+        if(!childrenLoaded) {
+            //Loading the children now picks up the change and notifies the tree, so an expand arrow is shown or removed as required
+            getChildren();
+            return;
+        }
+
+        while(change.next()){
+
+            if(change.wasRemoved()){
+                Set<TreeItem<T>> itemsToRemove = Collections.newSetFromMap(new IdentityHashMap<>());
+                for(T t : change.getRemoved()) {
+                    TreeItem<T> item = childItems.remove(t);
+                    if(item != null) {
+                        itemsToRemove.add(item);
                     }
                 }
 
-                if(change.wasRemoved()){
-                    change.getRemoved().forEach(t->{
-                        final List<TreeItem<T>> itemsToRemove = RecursiveTreeItem.this
-                                .getChildren()
-                                .stream()
-                                .filter(treeItem -> treeItem.getValue().equals(t))
-                                .collect(Collectors.toList());
+                super.getChildren().removeAll(itemsToRemove);
+            }
 
-                        RecursiveTreeItem.this.getChildren().removeAll(itemsToRemove);
-                    });
+            if(change.wasAdded()){
+                List<TreeItem<T>> itemsToAdd = createChildItems(change.getAddedSubList());
+                if(change.getFrom() >= super.getChildren().size()) {
+                    super.getChildren().addAll(itemsToAdd);
+                } else {
+                    super.getChildren().addAll(change.getFrom(), itemsToAdd);
                 }
-
             }
-        });
+
+        }
     }
-}
\ No newline at end of file
+}
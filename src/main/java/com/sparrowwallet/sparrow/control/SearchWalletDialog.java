@@ -16,6 +16,8 @@ import com.sparrowwallet.sparrow.wallet.*;
 import javafx.application.Platform;
 import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.collections.ListChangeListener;
+import javafx.concurrent.Service;
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
@@ -42,6 +44,7 @@ public class SearchWalletDialog extends Dialog<Entry> {
     private final List<WalletForm> walletForms;
     private final TextField search;
     private final CoinTreeTable results;
+    private final SearchService searchService = new SearchService();
 
     public SearchWalletDialog(List<WalletForm> walletForms) {
         this.walletForms = walletForms;
@@ -159,6 +162,10 @@ public class SearchWalletDialog extends Dialog<Entry> {
                     || walletForms.stream().map(WalletForm::getWallet).noneMatch(wallet -> wallet == results.getSelectionModel().getSelectedItem().getValue().getWallet()));
         });
 
+        searchService.setOnSucceeded(successEvent -> setResults(searchService.getValue()));
+        searchService.setOnFailed(failedEvent -> log.error("Error searching wallets", failedEvent.getSource().getException()));
+        setOnHidden(hiddenEvent -> searchService.cancel());
+
         search.textProperty().addListener((observable, oldValue, newValue) -> {
             searchWallets(newValue);
         });
@@ -180,83 +187,21 @@ public class SearchWalletDialog extends Dialog<Entry> {
     }
 
     private void searchWallets(String searchPhrase) {
-        Set<Entry> matchingEntries = new LinkedHashSet<>();
-
-        if(!searchPhrase.isEmpty()) {
-            Set<String> searchWords = new LinkedHashSet<>(Arrays.stream(searchPhrase.split("\\s+"))
-                    .filter(text -> isAddress(text) || isHash(text) || isHashIndex(text)).toList());
-            String freeText = removeOccurrences(searchPhrase, searchWords).trim();
-            if(!freeText.isEmpty()) {
-                searchWords.add(freeText);
-            }
-
-            for(String searchText : searchWords) {
-                Long searchValue = getSearchValue(searchText);
-                Address searchAddress = getSearchAddress(searchText);
-                searchText = searchText.toLowerCase(Locale.ROOT);
-
-                for(WalletForm walletForm : walletForms) {
-                    WalletTransactionsEntry walletTransactionsEntry = walletForm.getWalletTransactionsEntry();
-                    for(Entry entry : walletTransactionsEntry.getChildren()) {
-                        if(entry instanceof TransactionEntry transactionEntry) {
-                            if(transactionEntry.getBlockTransaction().getHash().toString().equals(searchText) ||
-                                    (transactionEntry.getLabel() != null && transactionEntry.getLabel().toLowerCase(Locale.ROOT).contains(searchText)) ||
-                                    (transactionEntry.getValue() != null && searchValue != null && Math.abs(transactionEntry.getValue()) == searchValue) ||
-                                    (searchAddress != null && transactionEntry.getBlockTransaction().getTransaction().getOutputs().stream().map(output -> output.getScript().getToAddress()).filter(Objects::nonNull).anyMatch(address -> address.equals(searchAddress)))) {
-                                matchingEntries.add(entry);
-                            }
-                        }
-                    }
-
-                    for(KeyPurpose keyPurpose : KeyPurpose.DEFAULT_PURPOSES) {
-                        NodeEntry purposeEntry = walletForm.getNodeEntry(keyPurpose);
-                        for(Entry entry : purposeEntry.getChildren()) {
-                            if(entry instanceof NodeEntry nodeEntry) {
-                                if(nodeEntry.getAddress().toString().toLowerCase(Locale.ROOT).contains(searchText) ||
-                                        (nodeEntry.getLabel() != null && nodeEntry.getLabel().toLowerCase(Locale.ROOT).contains(searchText)) ||
-                                        (nodeEntry.getValue() != null && searchValue != null && Math.abs(nodeEntry.getValue()) == searchValue)) {
-                                    matchingEntries.add(entry);
-                                }
-                            }
-                        }
-                    }
-
-                    for(WalletForm nestedWalletForm : walletForm.getNestedWalletForms()) {
-                        for(KeyPurpose keyPurpose : nestedWalletForm.getWallet().getWalletKeyPurposes()) {
-                            NodeEntry purposeEntry = nestedWalletForm.getNodeEntry(keyPurpose);
-                            for(Entry entry : purposeEntry.getChildren()) {
-                                if(entry instanceof NodeEntry nodeEntry) {
-                                    if(nodeEntry.getAddress().toString().toLowerCase(Locale.ROOT).contains(searchText) ||
-                                            (nodeEntry.getLabel() != null && nodeEntry.getLabel().toLowerCase(Locale.ROOT).contains(searchText)) ||
-                                            (nodeEntry.getValue() != null && searchValue != null && Math.abs(nodeEntry.getValue()) == searchValue)) {
-                                        matchingEntries.add(entry);
-                                    }
-                                }
-                            }
-                        }
-                    }
+        //Indexes copy the wallet entry fields on first use after a wallet changes, which must happen on this thread, and are then built by the search
+        List<WalletSearchIndex> searchIndexes = walletForms.stream().map(WalletForm::getSearchIndex).toList();
 
-                    WalletUtxosEntry walletUtxosEntry = walletForm.getWalletUtxosEntry();
-                    for(Entry entry : walletUtxosEntry.getChildren()) {
-                        if(entry instanceof HashIndexEntry hashIndexEntry) {
-                            if(hashIndexEntry.getBlockTransaction().getHash().toString().toLowerCase(Locale.ROOT).equals(searchText) ||
-                                    hashIndexEntry.getHashIndex().toString().toLowerCase(Locale.ROOT).equals(searchText) ||
-                                    (hashIndexEntry.getLabel() != null && hashIndexEntry.getLabel().toLowerCase(Locale.ROOT).contains(searchText)) ||
-                                    (hashIndexEntry.getValue() != null && searchValue != null && Math.abs(hashIndexEntry.getValue()) == searchValue)) {
-                                matchingEntries.add(entry);
-                            }
-                        }
-                    }
-                }
-            }
-        }
+        searchService.setSearchPhrase(searchPhrase);
+        searchService.setSearchIndexes(searchIndexes);
+        searchService.restart();
+    }
 
+    private void setResults(Collection<Entry> matchingEntries) {
         SearchWalletEntry rootEntry = new SearchWalletEntry(walletForms.iterator().next().getWallet(), new ArrayList<>(matchingEntries));
         RecursiveTreeItem<Entry> rootItem = new RecursiveTreeItem<>(rootEntry, Entry::getChildren);
         results.setRoot(rootItem);
     }
 
-    private Long getSearchValue(String searchText) {
+    private static Long getSearchValue(String searchText) {
         try {
             return Math.abs(Long.parseLong(searchText));
         } catch(NumberFormatException e) {
@@ -264,7 +209,7 @@ public class SearchWalletDialog extends Dialog<Entry> {
         }
     }
 
-    private Address getSearchAddress(String searchText) {
+    private static Address getSearchAddress(String searchText) {
         try {
             return Address.fromString(searchText);
         } catch(InvalidAddressException e) {
@@ -272,7 +217,7 @@ public class SearchWalletDialog extends Dialog<Entry> {
         }
     }
 
-    private boolean isAddress(String text) {
+    private static boolean isAddress(String text) {
         try {
             Address.fromString(text);
             return true;
@@ -281,11 +226,11 @@ public class SearchWalletDialog extends Dialog<Entry> {
         }
     }
 
-    private boolean isHash(String text) {
+    private static boolean isHash(String text) {
         return text.length() == 64 && Utils.isHex(text);
     }
 
-    private boolean isHashIndex(String text) {
+    private static boolean isHashIndex(String text) {
         String[] parts = text.split(":");
         if(parts.length == 2 && isHash(parts[0])) {
             try {
@@ -299,7 +244,7 @@ public class SearchWalletDialog extends Dialog<Entry> {
         return false;
     }
 
-    private String removeOccurrences(String inputString, Collection<String> stringsToRemove) {
+    private static String removeOccurrences(String inputString, Collection<String> stringsToRemove) {
         for(String str : stringsToRemove) {
             inputString = inputString.replaceAll("(?i)" + str, "");
         }
@@ -361,6 +306,56 @@ public class SearchWalletDialog extends Dialog<Entry> {
         return BitcoinUnit.BTC.equals(results.getBitcoinUnit()) ? format.tableFormatBtcValue(value) : String.format(Locale.ENGLISH, "%d", value);
     }
 
+    /**
+     * Searches the wallet indexes in the background. Starting a new search cancels the previous one, so results for stale keystrokes are discarded.
+     */
+    private static class SearchService extends Service<Set<Entry>> {
+        private String searchPhrase;
+        private List<WalletSearchIndex> searchIndexes;
+
+        public void setSearchPhrase(String searchPhrase) {
+            this.searchPhrase = searchPhrase;
+        }
+
+        public void setSearchIndexes(List<WalletSearchIndex> searchIndexes) {
+            this.searchIndexes = searchIndexes;
+        }
+
+        @Override
+        protected Task<Set<Entry>> createTask() {
+            String searchPhrase = this.searchPhrase;
+            List<WalletSearchIndex> searchIndexes = this.searchIndexes;
+
+            return new Task<>() {
+                protected Set<Entry> call() {
+                    Set<Entry> matchingEntries = new LinkedHashSet<>();
+                    if(searchPhrase.isEmpty()) {
+                        return matchingEntries;
+                    }
+
+                    Set<String> searchWords = new LinkedHashSet<>(Arrays.stream(searchPhrase.split("\\s+"))
+                            .filter(text -> isAddress(text) || isHash(text) || isHashIndex(text)).toList());
+                    String freeText = removeOccurrences(searchPhrase, searchWords).trim();
+                    if(!freeText.isEmpty()) {
+                        searchWords.add(freeText);
+                    }
+
+                    for(String searchText : searchWords) {
+                        Long searchValue = getSearchValue(searchText);
+                        Address searchAddress = getSearchAddress(searchText);
+                        searchText = searchText.toLowerCase(Locale.ROOT);
+
+                        for(WalletSearchIndex searchIndex : searchIndexes) {
+                            matchingEntries.addAll(searchIndex.search(searchText, searchValue, searchAddress, this::isCancelled));
+                        }
+                    }
+
+                    return matchingEntries;
+                }
+            };
+        }
+    }
+
     private static class SearchWalletEntry extends Entry {
         public SearchWalletEntry(Wallet wallet, List<Entry> entries) {
             super(wallet, wallet.getName(), entries);
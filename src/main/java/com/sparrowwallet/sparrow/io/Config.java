@@ -80,6 +80,7 @@ public class Config {
     private boolean autoSwitchProxy = true;
     private int maxServerTimeout = DEFAULT_MAX_TIMEOUT;
     private int maxPageSize = DEFAULT_PAGE_SIZE;
+    private boolean persistBlockData;
     private boolean usePayNym;
     private boolean mempoolFullRbf;
     private Double appWidth;
@@ -680,6 +681,10 @@ public class Config {
         return maxPageSize;
     }
 
+    public boolean isPersistBlockData() {
+        return persistBlockData;
+    }
+
     public boolean isUsePayNym() {
         return usePayNym;
     }
@@ -43,6 +43,7 @@ public class Storage {
     public static final String WALLETS_DIR = "wallets";
     public static final String WALLETS_BACKUP_DIR = "backup";
     public static final String CERTS_DIR = "certs";
+    public static final String CACHE_DIR = "cache";
     public static final List<String> RESERVED_WALLET_NAMES = List.of("temp");
 
     private Persistence persistence;
@@ -524,6 +525,15 @@ public class Storage {
         return certsDir;
     }
 
+    public static File getCacheDir() {
+        File cacheDir = new File(getSparrowDir(), CACHE_DIR);
+        if(!cacheDir.exists()) {
+            createOwnerOnlyDirectory(cacheDir);
+        }
+
+        return cacheDir;
+    }
+
     public static File getSparrowDir() {
         File sparrowDir;
         Network network = Network.get();
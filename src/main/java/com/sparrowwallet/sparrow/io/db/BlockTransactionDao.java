@@ -1,27 +1,46 @@
 package com.sparrowwallet.sparrow.io.db;
 
 import com.sparrowwallet.drongo.protocol.Sha256Hash;
+import com.sparrowwallet.drongo.protocol.Transaction;
 import com.sparrowwallet.drongo.wallet.BlockTransaction;
 import com.sparrowwallet.drongo.wallet.Wallet;
+import org.jdbi.v3.sqlobject.config.KeyColumn;
 import org.jdbi.v3.sqlobject.config.RegisterRowMapper;
+import org.jdbi.v3.sqlobject.config.ValueColumn;
 import org.jdbi.v3.sqlobject.customizer.Bind;
+import org.jdbi.v3.sqlobject.customizer.BindList;
 import org.jdbi.v3.sqlobject.statement.GetGeneratedKeys;
+import org.jdbi.v3.sqlobject.statement.SqlBatch;
 import org.jdbi.v3.sqlobject.statement.SqlQuery;
 import org.jdbi.v3.sqlobject.statement.SqlUpdate;
 
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.stream.Collectors;
 
 public interface BlockTransactionDao {
+    int MAX_TXID_LOOKUP = 500;
+
     @SqlQuery("select id, txid, hash, height, date, fee, label, transaction, blockHash from blockTransaction where wallet = ? order by id")
     @RegisterRowMapper(BlockTransactionMapper.class)
     Map<Sha256Hash, BlockTransaction> getForWalletId(Long id);
 
+    @SqlQuery("select id, txid, hash, height, date, fee, label, blockHash from blockTransaction where wallet = ? order by id")
+    @RegisterRowMapper(LazyBlockTransactionMapper.class)
+    Map<Sha256Hash, BlockTransaction> getUnloadedForWalletId(Long id);
+
+    @SqlQuery("select id, transaction from blockTransaction where id in (<ids>)")
+    @KeyColumn("id")
+    @ValueColumn("transaction")
+    Map<Long, byte[]> getTransactionData(@BindList("ids") List<Long> ids);
+
     @SqlQuery("select id, txid, hash, height, date, fee, label, transaction, blockHash from blockTransaction where txid = ?")
     @RegisterRowMapper(BlockTransactionMapper.class)
     Map<Sha256Hash, BlockTransaction> getForTxId(byte[] id);
 
+    @SqlQuery("select id, txid, hash, height, date, fee, label, transaction, blockHash from blockTransaction where txid in (<txids>)")
+    @RegisterRowMapper(BlockTransactionMapper.class)
+    Map<Sha256Hash, BlockTransaction> getForTxIds(@BindList("txids") List<byte[]> txids);
+
     @SqlUpdate("insert into blockTransaction (txid, hash, height, date, fee, label, transaction, blockHash, wallet) values (?, ?, ?, ?, ?, ?, ?, ?, ?)")
     @GetGeneratedKeys("id")
     long insertBlockTransaction(byte[] txid, byte[] hash, int height, Date date, Long fee, String label, byte[] transaction, byte[] blockHash, long wallet);
@@ -29,17 +48,96 @@ public interface BlockTransactionDao {
     @SqlUpdate("update blockTransaction set txid = ?, hash = ?, height = ?, date = ?, fee = ?, label = ?, transaction = ?, blockHash = ?, wallet = ? where id = ?")
     void updateBlockTransaction(byte[] txid, byte[] hash, int height, Date date, Long fee, String label, byte[] transaction, byte[] blockHash, long wallet, long id);
 
+    @SqlBatch("insert into blockTransaction (txid, hash, height, date, fee, label, transaction, blockHash, wallet) values (?, ?, ?, ?, ?, ?, ?, ?, ?)")
+    @GetGeneratedKeys("id")
+    long[] insertBlockTransactions(List<byte[]> txids, List<byte[]> hashes, List<Integer> heights, List<Date> dates, List<Long> fees, List<String> labels, List<byte[]> transactions, List<byte[]> blockHashes, long wallet);
+
+    @SqlBatch("update blockTransaction set txid = ?, hash = ?, height = ?, date = ?, fee = ?, label = ?, transaction = ?, blockHash = ?, wallet = ? where id = ?")
+    void updateBlockTransactions(List<byte[]> txids, List<byte[]> hashes, List<Integer> heights, List<Date> dates, List<Long> fees, List<String> labels, List<byte[]> transactions, List<byte[]> blockHashes, long wallet, List<Long> ids);
+
     @SqlUpdate("update blockTransaction set label = :label where id = :id")
     void updateLabel(@Bind("id") long id, @Bind("label") String label);
 
     @SqlUpdate("delete from blockTransaction where wallet = ?")
     void clear(long wallet);
 
+    /**
+     * Loads the transactions for a wallet, reading raw transaction data only for unconfirmed transactions and those with the given txids.
+     * The remaining transactions are returned as unloaded {@link LazyBlockTransaction}s.
+     */
+    default Map<Sha256Hash, BlockTransaction> getForWalletId(Long id, Set<Sha256Hash> loadedTxids) {
+        Map<Sha256Hash, BlockTransaction> blockTransactions = new LinkedHashMap<>(getUnloadedForWalletId(id));
+        List<Long> loadedIds = blockTransactions.entrySet().stream().filter(entry -> entry.getValue().getHeight() <= 0 || loadedTxids.contains(entry.getKey()))
+                .map(entry -> entry.getValue().getId()).collect(Collectors.toList());
+
+        Map<Long, byte[]> transactionData = new HashMap<>();
+        for(int i = 0; i < loadedIds.size(); i += MAX_TXID_LOOKUP) {
+            transactionData.putAll(getTransactionData(loadedIds.subList(i, Math.min(i + MAX_TXID_LOOKUP, loadedIds.size()))));
+        }
+
+        for(Map.Entry<Sha256Hash, BlockTransaction> entry : blockTransactions.entrySet()) {
+            BlockTransaction blkTx = entry.getValue();
+            if(transactionData.containsKey(blkTx.getId())) {
+                byte[] txBytes = transactionData.get(blkTx.getId());
+                BlockTransaction loadedBlkTx = new BlockTransaction(blkTx.getHash(), blkTx.getHeight(), blkTx.getDate(), blkTx.getFee(),
+                        txBytes == null ? null : new Transaction(txBytes), blkTx.getBlockHash(), blkTx.getLabel());
+                loadedBlkTx.setId(blkTx.getId());
+                entry.setValue(loadedBlkTx);
+            }
+        }
+
+        return blockTransactions;
+    }
+
     default void addBlockTransactions(Wallet wallet) {
         Map<Sha256Hash, BlockTransaction> walletTransactions = new HashMap<>(wallet.getTransactions());
-        for(Map.Entry<Sha256Hash, BlockTransaction> blkTxEntry : walletTransactions.entrySet()) {
-            blkTxEntry.getValue().setId(null);
-            addOrUpdate(wallet, blkTxEntry.getKey(), blkTxEntry.getValue());
+        for(BlockTransaction blkTx : walletTransactions.values()) {
+            blkTx.setId(null);
+        }
+
+        addOrUpdate(wallet, walletTransactions);
+    }
+
+    /**
+     * Inserts or updates the given transactions using one batch for each statement type.
+     * Transactions without an id are first looked up by txid so that existing rows are updated rather than duplicated.
+     */
+    default void addOrUpdate(Wallet wallet, Map<Sha256Hash, BlockTransaction> blockTransactions) {
+        List<byte[]> unknownTxids = blockTransactions.entrySet().stream().filter(entry -> entry.getValue().getId() == null).map(entry -> entry.getKey().getBytes()).collect(Collectors.toList());
+        Map<Sha256Hash, BlockTransaction> existing = new HashMap<>();
+        for(int i = 0; i < unknownTxids.size(); i += MAX_TXID_LOOKUP) {
+            existing.putAll(getForTxIds(unknownTxids.subList(i, Math.min(i + MAX_TXID_LOOKUP, unknownTxids.size()))));
+        }
+
+        BlockTransactionColumns insertColumns = new BlockTransactionColumns();
+        List<BlockTransaction> inserts = new ArrayList<>();
+        BlockTransactionColumns updateColumns = new BlockTransactionColumns();
+        List<Long> updateIds = new ArrayList<>();
+        for(Map.Entry<Sha256Hash, BlockTransaction> blkTxEntry : blockTransactions.entrySet()) {
+            Sha256Hash txid = blkTxEntry.getKey();
+            BlockTransaction blkTx = blkTxEntry.getValue();
+            if(blkTx.getId() == null && !existing.containsKey(txid)) {
+                insertColumns.add(txid, blkTx, truncate(blkTx.getLabel()));
+                inserts.add(blkTx);
+            } else {
+                Long existingId = existing.get(txid) != null ? existing.get(txid).getId() : blkTx.getId();
+                updateColumns.add(txid, blkTx, truncate(blkTx.getLabel()));
+                updateIds.add(existingId);
+                blkTx.setId(existingId);
+            }
+        }
+
+        if(!inserts.isEmpty()) {
+            long[] ids = insertBlockTransactions(insertColumns.txids, insertColumns.hashes, insertColumns.heights, insertColumns.dates, insertColumns.fees, insertColumns.labels,
+                    insertColumns.transactions, insertColumns.blockHashes, wallet.getId());
+            for(int i = 0; i < inserts.size(); i++) {
+                inserts.get(i).setId(ids[i]);
+            }
+        }
+
+        if(!updateIds.isEmpty()) {
+            updateBlockTransactions(updateColumns.txids, updateColumns.hashes, updateColumns.heights, updateColumns.dates, updateColumns.fees, updateColumns.labels,
+                    updateColumns.transactions, updateColumns.blockHashes, wallet.getId(), updateIds);
         }
     }
 
@@ -63,4 +161,26 @@ public interface BlockTransactionDao {
     default String truncate(String label) {
         return (label != null && label.length() > BlockTransaction.MAX_LABEL_LENGTH ? label.substring(0, BlockTransaction.MAX_LABEL_LENGTH) : label);
     }
+
+    class BlockTransactionColumns {
+        private final List<byte[]> txids = new ArrayList<>();
+        private final List<byte[]> hashes = new ArrayList<>();
+        private final List<Integer> heights = new ArrayList<>();
+        private final List<Date> dates = new ArrayList<>();
+        private final List<Long> fees = new ArrayList<>();
+        private final List<String> labels = new ArrayList<>();
+        private final List<byte[]> transactions = new ArrayList<>();
+        private final List<byte[]> blockHashes = new ArrayList<>();
+
+        private void add(Sha256Hash txid, BlockTransaction blkTx, String label) {
+            txids.add(txid.getBytes());
+            hashes.add(blkTx.getHash().getBytes());
+            heights.add(blkTx.getHeight());
+            dates.add(blkTx.getDate());
+            fees.add(blkTx.getFee());
+            labels.add(label);
+            transactions.add(blkTx.getTransaction() == null ? null : blkTx.getTransaction().bitcoinSerialize());
+            blockHashes.add(blkTx.getBlockHash() == null ? null : blkTx.getBlockHash().getBytes());
+        }
+    }
 }
@@ -12,6 +12,7 @@ import com.sparrowwallet.drongo.wallet.*;
 import com.sparrowwallet.sparrow.EventManager;
 import com.sparrowwallet.sparrow.event.*;
 import com.sparrowwallet.sparrow.io.*;
+import com.sparrowwallet.sparrow.net.ElectrumServer;
 import com.sparrowwallet.sparrow.wallet.*;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
@@ -61,6 +62,7 @@ public class DbPersistence implements Persistence {
     private Wallet masterWallet;
     private final Map<Wallet, DirtyPersistables> dirtyPersistablesMap = new HashMap<>();
     private ExecutorService updateExecutor;
+    private volatile boolean closed;
 
     public DbPersistence() {
         EventManager.get().register(this);
@@ -94,12 +96,77 @@ public class DbPersistence implements Persistence {
 
         Map<WalletAndKey, Storage> childWallets = loadChildWallets(storage, masterWallet, encryptionKey);
         masterWallet.setChildWallets(childWallets.keySet().stream().map(WalletAndKey::getWallet).collect(Collectors.toList()));
+        loadScriptHashStatuses(jdbi, masterWallet);
+        createTransactionLoaders(storage, masterWallet);
 
         createUpdateExecutor(masterWallet);
 
         return new WalletAndKey(masterWallet, encryptionKey, keyDeriver, childWallets);
     }
 
+    private void loadScriptHashStatuses(Jdbi jdbi, Wallet masterWallet) {
+        List<Wallet> wallets = new ArrayList<>();
+        wallets.add(masterWallet);
+        wallets.addAll(masterWallet.getChildWallets());
+
+        jdbi.useHandle(handle -> {
+            WalletDao walletDao = handle.attach(WalletDao.class);
+            WalletNodeDao walletNodeDao = handle.attach(WalletNodeDao.class);
+            try {
+                for(Wallet wallet : wallets) {
+                    walletDao.setSchema(getSchema(wallet));
+                    ElectrumServer.addPersistedScriptHashStatuses(wallet, walletNodeDao.getScriptHashStatuses(wallet.getId()));
+                }
+            } finally {
+                walletDao.setSchema(DEFAULT_SCHEMA);
+            }
+        });
+    }
+
+    private void createTransactionLoaders(Storage storage, Wallet masterWallet) {
+        List<Wallet> wallets = new ArrayList<>();
+        wallets.add(masterWallet);
+        wallets.addAll(masterWallet.getChildWallets());
+
+        for(Wallet wallet : wallets) {
+            List<LazyBlockTransaction> unloadedTransactions = wallet.getTransactions().values().stream()
+                    .filter(blkTx -> blkTx instanceof LazyBlockTransaction lazyBlkTx && !lazyBlkTx.isLoaded()).map(LazyBlockTransaction.class::cast).collect(Collectors.toList());
+            if(!unloadedTransactions.isEmpty()) {
+                String schema = getSchema(wallet);
+                new TransactionLoader(unloadedTransactions, ids -> getTransactionData(storage, schema, ids));
+            }
+        }
+    }
+
+    private Map<Long, byte[]> getTransactionData(Storage storage, String schema, List<Long> ids) throws StorageException {
+        if(closed) {
+            throw new StorageException("The wallet database has been closed");
+        }
+
+        Jdbi jdbi = getJdbi(storage, getDatasourcePassword());
+        return jdbi.withHandle(handle -> {
+            WalletDao walletDao = handle.attach(WalletDao.class);
+            BlockTransactionDao blockTransactionDao = handle.attach(BlockTransactionDao.class);
+            try {
+                walletDao.setSchema(schema);
+                return blockTransactionDao.getTransactionData(ids);
+            } finally {
+                walletDao.setSchema(DEFAULT_SCHEMA);
+            }
+        });
+    }
+
+    /**
+     * Reads any raw transactions not yet loaded, as the rows they are read from are about to be replaced
+     */
+    private void loadTransactions(Wallet wallet) {
+        for(BlockTransaction blkTx : wallet.getTransactions().values()) {
+            if(blkTx instanceof LazyBlockTransaction lazyBlkTx && !lazyBlkTx.isLoaded()) {
+                lazyBlkTx.getTransaction();
+            }
+        }
+    }
+
     private Map<WalletAndKey, Storage> loadChildWallets(Storage storage, Wallet masterWallet, ECKey encryptionKey) throws StorageException {
         Jdbi jdbi = getJdbi(storage, getFilePassword(encryptionKey));
         List<String> schemas = jdbi.withHandle(handle -> {
@@ -209,7 +276,7 @@ public class DbPersistence implements Persistence {
             return;
         }
 
-        jdbi.useHandle(handle -> {
+        jdbi.useTransaction(handle -> {
             WalletDao walletDao = handle.attach(WalletDao.class);
             try {
                 if(dirtyPersistables.deleteAccount && !wallet.isMasterWallet()) {
@@ -231,8 +298,10 @@ public class DbPersistence implements Persistence {
                 if(!dirtyPersistables.historyNodes.isEmpty()) {
                     WalletNodeDao walletNodeDao = handle.attach(WalletNodeDao.class);
                     BlockTransactionDao blockTransactionDao = handle.attach(BlockTransactionDao.class);
+                    Set<WalletNode> historyNodes = new LinkedHashSet<>(dirtyPersistables.historyNodes);
                     Set<Sha256Hash> referencedTxIds = new HashSet<>();
-                    for(WalletNode addressNode : dirtyPersistables.historyNodes) {
+                    Map<WalletNode, List<WalletNode>> newAddressNodes = new LinkedHashMap<>();
+                    for(WalletNode addressNode : historyNodes) {
                         if(addressNode.getId() == null) {
                             WalletNode purposeNode = wallet.getNode(addressNode.getKeyPurpose());
                             if(purposeNode.getId() == null) {
@@ -240,28 +309,41 @@ public class DbPersistence implements Persistence {
                                 purposeNode.setId(purposeNodeId);
                             }
 
-                            long nodeId = walletNodeDao.insertWalletNode(addressNode.getDerivationPath(), addressNode.getLabel(), wallet.getId(), purposeNode.getId(), addressNode.getAddressData());
-                            addressNode.setId(nodeId);
+                            newAddressNodes.computeIfAbsent(purposeNode, k -> new ArrayList<>()).add(addressNode);
                         } else if(addressNode.getAddress() != null) {
                             walletNodeDao.updateNodeAddressData(addressNode.getId(), addressNode.getAddressData());
                         }
+                    }
+                    for(Map.Entry<WalletNode, List<WalletNode>> purposeEntry : newAddressNodes.entrySet()) {
+                        walletNodeDao.addWalletNodes(wallet, purposeEntry.getKey(), purposeEntry.getValue());
+                    }
 
+                    for(WalletNode addressNode : historyNodes) {
                         List<BlockTransactionHashIndex> txos = addressNode.getTransactionOutputs().stream().flatMap(txo -> txo.isSpent() ? Stream.of(txo, txo.getSpentBy()) : Stream.of(txo)).collect(Collectors.toList());
                         List<Long> existingIds = txos.stream().map(Persistable::getId).filter(Objects::nonNull).collect(Collectors.toList());
                         referencedTxIds.addAll(txos.stream().map(BlockTransactionHash::getHash).collect(Collectors.toSet()));
 
                         walletNodeDao.deleteNodeTxosNotInList(addressNode, existingIds.isEmpty() ? List.of(-1L) : existingIds);
-                        for(BlockTransactionHashIndex txo : addressNode.getTransactionOutputs()) {
-                            walletNodeDao.addOrUpdate(addressNode, txo);
-                        }
                     }
+                    walletNodeDao.addOrUpdate(historyNodes);
+
+                    List<String> scriptHashStatuses = new ArrayList<>(historyNodes.size());
+                    List<Long> nodeIds = new ArrayList<>(historyNodes.size());
+                    for(WalletNode addressNode : historyNodes) {
+                        scriptHashStatuses.add(ElectrumServer.getRetrievedScriptHashStatus(addressNode));
+                        nodeIds.add(addressNode.getId());
+                    }
+                    walletNodeDao.updateNodeScriptHashStatuses(scriptHashStatuses, nodeIds);
+
+                    Map<Sha256Hash, BlockTransaction> referencedTransactions = new LinkedHashMap<>();
                     for(Sha256Hash txid : referencedTxIds) {
                         BlockTransaction blkTx = wallet.getTransactions().get(txid);
                         //May be null for a nested wallet if still updating
                         if(blkTx != null) {
-                            blockTransactionDao.addOrUpdate(wallet, txid, blkTx);
+                            referencedTransactions.put(txid, blkTx);
                         }
                     }
+                    blockTransactionDao.addOrUpdate(wallet, referencedTransactions);
                     if(!dirtyPersistables.clearHistory) {
                         DetachedLabelDao detachedLabelDao = handle.attach(DetachedLabelDao.class);
                         detachedLabelDao.clearAndAddAll(wallet);
@@ -376,11 +458,12 @@ public class DbPersistence implements Persistence {
     }
 
     private void cleanAndAddWallet(Storage storage, Wallet wallet, String password) throws StorageException {
+        loadTransactions(wallet);
         String schema = getSchema(wallet);
         cleanAndMigrate(storage, schema, password);
 
         Jdbi jdbi = getJdbi(storage, password);
-        jdbi.useHandle(handle -> {
+        jdbi.useTransaction(handle -> {
             WalletDao walletDao = handle.attach(WalletDao.class);
             walletDao.addWallet(schema, wallet);
         });
@@ -605,6 +688,7 @@ public class DbPersistence implements Persistence {
     @Override
     public void close() {
         EventManager.get().unregister(this);
+        closed = true;
         if(updateExecutor != null) {
             updateExecutor.shutdown();
             try {
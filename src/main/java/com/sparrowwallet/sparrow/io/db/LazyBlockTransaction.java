@@ -0,0 +1,43 @@
+package com.sparrowwallet.sparrow.io.db;
+
+import com.sparrowwallet.drongo.protocol.Sha256Hash;
+import com.sparrowwallet.drongo.protocol.Transaction;
+import com.sparrowwallet.drongo.wallet.BlockTransaction;
+
+import java.util.Date;
+
+/**
+ * A wallet transaction loaded from the database without its raw transaction data.
+ * The raw transaction is read and decoded on first access, together with a page of other unloaded transactions from the same wallet.
+ */
+public class LazyBlockTransaction extends BlockTransaction {
+    private volatile Transaction transaction;
+    private volatile TransactionLoader transactionLoader;
+
+    public LazyBlockTransaction(Sha256Hash hash, int height, Date date, Long fee, Sha256Hash blockHash, String label) {
+        super(hash, height, date, fee, null, blockHash, label);
+    }
+
+    @Override
+    public Transaction getTransaction() {
+        Transaction loadedTransaction = transaction;
+        if(loadedTransaction == null && transactionLoader != null) {
+            transactionLoader.load(this);
+            loadedTransaction = transaction;
+        }
+
+        return loadedTransaction;
+    }
+
+    public boolean isLoaded() {
+        return transaction != null;
+    }
+
+    void setTransaction(Transaction transaction) {
+        this.transaction = transaction;
+    }
+
+    void setTransactionLoader(TransactionLoader transactionLoader) {
+        this.transactionLoader = transactionLoader;
+    }
+}
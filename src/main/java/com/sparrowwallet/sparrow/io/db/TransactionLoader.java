@@ -0,0 +1,71 @@
+package com.sparrowwallet.sparrow.io.db;
+
+import com.sparrowwallet.drongo.protocol.Transaction;
+import com.sparrowwallet.sparrow.io.StorageException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Reads the raw transactions of a wallet's unloaded transactions from the database on demand.
+ * Each read loads the requested transaction and the unloaded transactions stored after it, up to a page, as history is usually viewed in order.
+ */
+class TransactionLoader {
+    private static final Logger log = LoggerFactory.getLogger(TransactionLoader.class);
+
+    static final int PAGE_SIZE = 500;
+
+    private final NavigableMap<Long, LazyBlockTransaction> unloadedTransactions = new TreeMap<>();
+    private final PageReader pageReader;
+
+    public TransactionLoader(Collection<LazyBlockTransaction> transactions, PageReader pageReader) {
+        this.pageReader = pageReader;
+        for(LazyBlockTransaction transaction : transactions) {
+            unloadedTransactions.put(transaction.getId(), transaction);
+            transaction.setTransactionLoader(this);
+        }
+    }
+
+    public synchronized void load(LazyBlockTransaction requested) {
+        if(requested.isLoaded() || !unloadedTransactions.containsKey(requested.getId())) {
+            return;
+        }
+
+        List<Long> ids = new ArrayList<>(PAGE_SIZE);
+        ids.add(requested.getId());
+        for(Iterator<Long> iter = unloadedTransactions.tailMap(requested.getId(), false).keySet().iterator(); iter.hasNext() && ids.size() < PAGE_SIZE; ) {
+            ids.add(iter.next());
+        }
+        for(Iterator<Long> iter = unloadedTransactions.headMap(requested.getId(), false).descendingKeySet().iterator(); iter.hasNext() && ids.size() < PAGE_SIZE; ) {
+            ids.add(iter.next());
+        }
+
+        try {
+            Map<Long, byte[]> transactionData = pageReader.read(ids);
+            for(Long id : ids) {
+                LazyBlockTransaction transaction = unloadedTransactions.remove(id);
+                byte[] txBytes = transactionData.get(id);
+                if(txBytes != null) {
+                    transaction.setTransaction(new Transaction(txBytes));
+                }
+            }
+        } catch(StorageException e) {
+            log.error("Error loading transactions from wallet database", e);
+        }
+    }
+
+    public synchronized void loadAll() {
+        while(!unloadedTransactions.isEmpty()) {
+            int unloaded = unloadedTransactions.size();
+            load(unloadedTransactions.firstEntry().getValue());
+            if(unloadedTransactions.size() == unloaded) {
+                break;
+            }
+        }
+    }
+
+    public interface PageReader {
+        Map<Long, byte[]> read(List<Long> ids) throws StorageException;
+    }
+}
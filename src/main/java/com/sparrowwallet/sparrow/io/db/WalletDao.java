@@ -9,9 +9,7 @@ import org.jdbi.v3.sqlobject.statement.GetGeneratedKeys;
 import org.jdbi.v3.sqlobject.statement.SqlQuery;
 import org.jdbi.v3.sqlobject.statement.SqlUpdate;
 
-import java.util.Date;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.stream.Collectors;
 
 public interface WalletDao {
@@ -115,7 +113,19 @@ public interface WalletDao {
         wallet.getPurposeNodes().addAll(walletNodes.stream().filter(walletNode -> walletNode.getDerivation().size() == 1).collect(Collectors.toList()));
         wallet.getPurposeNodes().forEach(walletNode -> walletNode.setWallet(wallet));
 
-        Map<Sha256Hash, BlockTransaction> blockTransactions = createBlockTransactionDao().getForWalletId(wallet.getId());
+        //Raw transactions are read up front only where they create unspent outputs, so older history is read when first accessed
+        Set<Sha256Hash> utxoTxids = new HashSet<>();
+        for(WalletNode purposeNode : wallet.getPurposeNodes()) {
+            for(WalletNode addressNode : purposeNode.getChildren()) {
+                for(BlockTransactionHashIndex txo : addressNode.getTransactionOutputs()) {
+                    if(!txo.isSpent()) {
+                        utxoTxids.add(txo.getHash());
+                    }
+                }
+            }
+        }
+
+        Map<Sha256Hash, BlockTransaction> blockTransactions = createBlockTransactionDao().getForWalletId(wallet.getId(), utxoTxids);
         wallet.updateTransactions(blockTransactions);
 
         Map<String, String> detachedLabels = createDetachedLabelDao().getAll();
@@ -3,17 +3,22 @@ package com.sparrowwallet.sparrow.io.db;
 import com.sparrowwallet.drongo.wallet.BlockTransactionHashIndex;
 import com.sparrowwallet.drongo.wallet.Wallet;
 import com.sparrowwallet.drongo.wallet.WalletNode;
+import org.jdbi.v3.sqlobject.config.KeyColumn;
 import org.jdbi.v3.sqlobject.config.RegisterRowMapper;
+import org.jdbi.v3.sqlobject.config.ValueColumn;
 import org.jdbi.v3.sqlobject.customizer.Bind;
 import org.jdbi.v3.sqlobject.customizer.BindList;
 import org.jdbi.v3.sqlobject.statement.GetGeneratedKeys;
+import org.jdbi.v3.sqlobject.statement.SqlBatch;
 import org.jdbi.v3.sqlobject.statement.SqlQuery;
 import org.jdbi.v3.sqlobject.statement.SqlUpdate;
 import org.jdbi.v3.sqlobject.statement.UseRowReducer;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 public interface WalletNodeDao {
     @SqlQuery("select walletNode.id, walletNode.derivationPath, walletNode.label, walletNode.parent, walletNode.addressData, ?, " +
@@ -29,6 +34,10 @@ public interface WalletNodeDao {
     @GetGeneratedKeys("id")
     long insertWalletNode(String derivationPath, String label, long wallet, Long parent, byte[] addressData);
 
+    @SqlBatch("insert into walletNode (derivationPath, label, wallet, parent, addressData) values (?, ?, ?, ?, ?)")
+    @GetGeneratedKeys("id")
+    long[] insertWalletNodes(List<String> derivationPaths, List<String> labels, long wallet, Long parent, List<byte[]> addressData);
+
     @SqlUpdate("insert into blockTransactionHashIndex (hash, height, date, fee, label, index, outputValue, status, spentBy, node) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")
     @GetGeneratedKeys("id")
     long insertBlockTransactionHashIndex(byte[] hash, int height, Date date, Long fee, String label, long index, long value, Integer status, Long spentBy, long node);
@@ -36,12 +45,27 @@ public interface WalletNodeDao {
     @SqlUpdate("update blockTransactionHashIndex set hash = ?, height = ?, date = ?, fee = ?, label = ?, index = ?, outputValue = ?, status = ?, spentBy = ?, node = ? where id = ?")
     void updateBlockTransactionHashIndex(byte[] hash, int height, Date date, Long fee, String label, long index, long value, Integer status, Long spentBy, long node, long id);
 
+    @SqlBatch("insert into blockTransactionHashIndex (hash, height, date, fee, label, index, outputValue, status, spentBy, node) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")
+    @GetGeneratedKeys("id")
+    long[] insertBlockTransactionHashIndexes(List<byte[]> hashes, List<Integer> heights, List<Date> dates, List<Long> fees, List<String> labels, List<Long> indexes, List<Long> values, List<Integer> statuses, List<Long> spentBys, List<Long> nodes);
+
+    @SqlBatch("update blockTransactionHashIndex set hash = ?, height = ?, date = ?, fee = ?, label = ?, index = ?, outputValue = ?, status = ?, spentBy = ?, node = ? where id = ?")
+    void updateBlockTransactionHashIndexes(List<byte[]> hashes, List<Integer> heights, List<Date> dates, List<Long> fees, List<String> labels, List<Long> indexes, List<Long> values, List<Integer> statuses, List<Long> spentBys, List<Long> nodes, List<Long> ids);
+
     @SqlUpdate("update walletNode set label = :label where id = :id")
     void updateNodeLabel(@Bind("id") long id, @Bind("label") String label);
 
     @SqlUpdate("update walletNode set addressData = :addressData where id = :id and addressData is null")
     void updateNodeAddressData(@Bind("id") long id, @Bind("addressData") byte[] addressData);
 
+    @SqlQuery("select derivationPath, scriptHashStatus from walletNode where wallet = ? and scriptHashStatus is not null")
+    @KeyColumn("derivationPath")
+    @ValueColumn("scriptHashStatus")
+    Map<String, String> getScriptHashStatuses(long wallet);
+
+    @SqlBatch("update walletNode set scriptHashStatus = ? where id = ?")
+    void updateNodeScriptHashStatuses(List<String> scriptHashStatuses, List<Long> ids);
+
     @SqlUpdate("update blockTransactionHashIndex set label = :label where id = :id")
     void updateTxoLabel(@Bind("id") long id, @Bind("label") String label);
 
@@ -61,28 +85,75 @@ public interface WalletNodeDao {
     void deleteUnreferencedNodeSpentTxos(@Bind("nodeId") Long nodeId, @BindList("ids") List<Long> ids);
 
     default void addWalletNodes(Wallet wallet) {
+        List<WalletNode> addressNodes = new ArrayList<>();
         for(WalletNode purposeNode : wallet.getPurposeNodes()) {
             long purposeNodeId = insertWalletNode(purposeNode.getDerivationPath(), truncate(purposeNode.getLabel()), wallet.getId(), null, null);
             purposeNode.setId(purposeNodeId);
-            addTransactionOutputs(purposeNode);
+            addressNodes.add(purposeNode);
+
             List<WalletNode> childNodes = new ArrayList<>(purposeNode.getChildren());
-            for(WalletNode addressNode : childNodes) {
-                long addressNodeId = insertWalletNode(addressNode.getDerivationPath(), truncate(addressNode.getLabel()), wallet.getId(), purposeNodeId, addressNode.getAddressData());
-                addressNode.setId(addressNodeId);
-                addTransactionOutputs(addressNode);
+            addWalletNodes(wallet, purposeNode, childNodes);
+            addressNodes.addAll(childNodes);
+        }
+
+        addTransactionOutputs(addressNodes);
+    }
+
+    default void addWalletNodes(Wallet wallet, WalletNode purposeNode, List<WalletNode> addressNodes) {
+        if(addressNodes.isEmpty()) {
+            return;
+        }
+
+        List<String> derivationPaths = new ArrayList<>(addressNodes.size());
+        List<String> labels = new ArrayList<>(addressNodes.size());
+        List<byte[]> addressData = new ArrayList<>(addressNodes.size());
+        for(WalletNode addressNode : addressNodes) {
+            derivationPaths.add(addressNode.getDerivationPath());
+            labels.add(truncate(addressNode.getLabel()));
+            addressData.add(addressNode.getAddressData());
+        }
+
+        long[] ids = insertWalletNodes(derivationPaths, labels, wallet.getId(), purposeNode.getId(), addressData);
+        for(int i = 0; i < addressNodes.size(); i++) {
+            addressNodes.get(i).setId(ids[i]);
+        }
+    }
+
+    default void addTransactionOutputs(Collection<WalletNode> addressNodes) {
+        for(WalletNode addressNode : addressNodes) {
+            for(BlockTransactionHashIndex txo : addressNode.getTransactionOutputs()) {
+                txo.setId(null);
+                if(txo.isSpent()) {
+                    txo.getSpentBy().setId(null);
+                }
             }
         }
+
+        addOrUpdate(addressNodes);
     }
 
-    default void addTransactionOutputs(WalletNode addressNode) {
-        for(BlockTransactionHashIndex txo : addressNode.getTransactionOutputs()) {
-            txo.setId(null);
-            if(txo.isSpent()) {
-                txo.getSpentBy().setId(null);
+    /**
+     * Inserts or updates all the transaction outputs of the given nodes in batches, spending inputs first so their ids can be referenced.
+     * Generated ids are set on the inserted persistables.
+     */
+    default void addOrUpdate(Collection<WalletNode> addressNodes) {
+        TxoBatch spentByBatch = new TxoBatch();
+        for(WalletNode addressNode : addressNodes) {
+            for(BlockTransactionHashIndex txo : addressNode.getTransactionOutputs()) {
+                if(txo.isSpent()) {
+                    spentByBatch.add(addressNode, txo.getSpentBy(), null, truncate(txo.getSpentBy().getLabel()));
+                }
             }
+        }
+        spentByBatch.execute(this);
 
-            addOrUpdate(addressNode, txo);
+        TxoBatch txoBatch = new TxoBatch();
+        for(WalletNode addressNode : addressNodes) {
+            for(BlockTransactionHashIndex txo : addressNode.getTransactionOutputs()) {
+                txoBatch.add(addressNode, txo, txo.isSpent() ? txo.getSpentBy().getId() : null, truncate(txo.getLabel()));
+            }
         }
+        txoBatch.execute(this);
     }
 
     default void addOrUpdate(WalletNode addressNode, BlockTransactionHashIndex txo) {
@@ -123,4 +194,62 @@ public interface WalletNodeDao {
     default String truncate(String label) {
         return (label != null && label.length() > WalletNode.MAX_LABEL_LENGTH ? label.substring(0, WalletNode.MAX_LABEL_LENGTH) : label);
     }
+
+    class TxoBatch {
+        private final List<BlockTransactionHashIndex> inserts = new ArrayList<>();
+        private final TxoColumns insertColumns = new TxoColumns();
+        private final TxoColumns updateColumns = new TxoColumns();
+        private final List<Long> updateIds = new ArrayList<>();
+
+        public void add(WalletNode addressNode, BlockTransactionHashIndex txo, Long spentById, String label) {
+            if(txo.getId() == null) {
+                inserts.add(txo);
+                insertColumns.add(addressNode, txo, spentById, label);
+            } else {
+                updateColumns.add(addressNode, txo, spentById, label);
+                updateIds.add(txo.getId());
+            }
+        }
+
+        public void execute(WalletNodeDao walletNodeDao) {
+            if(!inserts.isEmpty()) {
+                long[] ids = walletNodeDao.insertBlockTransactionHashIndexes(insertColumns.hashes, insertColumns.heights, insertColumns.dates, insertColumns.fees, insertColumns.labels,
+                        insertColumns.indexes, insertColumns.values, insertColumns.statuses, insertColumns.spentBys, insertColumns.nodes);
+                for(int i = 0; i < inserts.size(); i++) {
+                    inserts.get(i).setId(ids[i]);
+                }
+            }
+
+            if(!updateIds.isEmpty()) {
+                walletNodeDao.updateBlockTransactionHashIndexes(updateColumns.hashes, updateColumns.heights, updateColumns.dates, updateColumns.fees, updateColumns.labels,
+                        updateColumns.indexes, updateColumns.values, updateColumns.statuses, updateColumns.spentBys, updateColumns.nodes, updateIds);
+            }
+        }
+    }
+
+    class TxoColumns {
+        private final List<byte[]> hashes = new ArrayList<>();
+        private final List<Integer> heights = new ArrayList<>();
+        private final List<Date> dates = new ArrayList<>();
+        private final List<Long> fees = new ArrayList<>();
+        private final List<String> labels = new ArrayList<>();
+        private final List<Long> indexes = new ArrayList<>();
+        private final List<Long> values = new ArrayList<>();
+        private final List<Integer> statuses = new ArrayList<>();
+        private final List<Long> spentBys = new ArrayList<>();
+        private final List<Long> nodes = new ArrayList<>();
+
+        private void add(WalletNode addressNode, BlockTransactionHashIndex txo, Long spentById, String label) {
+            hashes.add(txo.getHash().getBytes());
+            heights.add(txo.getHeight());
+            dates.add(txo.getDate());
+            fees.add(txo.getFee());
+            labels.add(label);
+            indexes.add(txo.getIndex());
+            values.add(txo.getValue());
+            statuses.add(txo.getStatus() == null ? null : txo.getStatus().ordinal());
+            spentBys.add(spentById);
+            nodes.add(addressNode.getId());
+        }
+    }
 }
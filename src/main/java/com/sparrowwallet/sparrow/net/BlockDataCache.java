@@ -0,0 +1,356 @@
+package com.sparrowwallet.sparrow.net;
+
+import com.sparrowwallet.drongo.Utils;
+import com.sparrowwallet.drongo.protocol.BlockHeader;
+import com.sparrowwallet.drongo.protocol.ProtocolException;
+import com.sparrowwallet.drongo.protocol.Sha256Hash;
+import com.sparrowwallet.drongo.protocol.Transaction;
+import com.sparrowwallet.sparrow.AppServices;
+import com.sparrowwallet.sparrow.io.Config;
+import com.sparrowwallet.sparrow.io.Server;
+import com.sparrowwallet.sparrow.io.Storage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * An append-only on-disk store of raw transactions and block headers that are buried deep enough that they cannot change.
+ * The cache is kept per server in the network specific cache directory, so data is only ever returned to the server it was retrieved from.
+ * Records are checked against their txid or block hash key when read to detect corruption of the file.
+ * Once the file exceeds its size limit it is compacted to the most recently written records.
+ */
+public class BlockDataCache {
+    private static final Logger log = LoggerFactory.getLogger(BlockDataCache.class);
+
+    public static final String CACHE_FILENAME_PREFIX = "blockdata-";
+    public static final String CACHE_FILENAME_SUFFIX = ".cache";
+    private static final String LEGACY_CACHE_FILENAME = "blockdata.cache";
+    public static final int MIN_CONFIRMATIONS = 6;
+    public static final long MAX_CACHE_SIZE = 256 * 1024 * 1024L;
+
+    private static final byte RECORD_HEADER = 1;
+    private static final byte RECORD_TRANSACTION = 2;
+    private static final int RECORD_PREFIX_LENGTH = 1 + 32 + 4 + 4;
+    private static final int BLOCK_HEADER_LENGTH = 80;
+
+    private static BlockDataCache INSTANCE;
+
+    private final File cacheFile;
+    private FileChannel channel;
+    private final Map<Integer, Long> headerOffsets = new HashMap<>();
+    private final Map<Sha256Hash, Long> transactionOffsets = new HashMap<>();
+
+    private BlockDataCache(File cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    public static synchronized BlockDataCache get() {
+        File cacheFile = new File(Storage.getCacheDir(), getCacheFilename(Config.get().getServer()));
+        if(INSTANCE == null || !INSTANCE.cacheFile.equals(cacheFile)) {
+            if(INSTANCE != null) {
+                INSTANCE.closeCache();
+            }
+
+            //Data in the unscoped cache file from earlier versions cannot be attributed to a server
+            File legacyCacheFile = new File(Storage.getCacheDir(), LEGACY_CACHE_FILENAME);
+            if(legacyCacheFile.exists() && !legacyCacheFile.delete()) {
+                log.warn("Could not delete " + legacyCacheFile.getAbsolutePath());
+            }
+
+            INSTANCE = new BlockDataCache(cacheFile);
+        }
+
+        return INSTANCE;
+    }
+
+    public static boolean isEnabled() {
+        return Config.get().isPersistBlockData() && Config.get().hasServer();
+    }
+
+    static String getCacheFilename(Server server) {
+        String serverHash = Sha256Hash.of(server.getUrl().getBytes(StandardCharsets.UTF_8)).toString().substring(0, 16);
+        return CACHE_FILENAME_PREFIX + serverHash + CACHE_FILENAME_SUFFIX;
+    }
+
+    public synchronized Map<Integer, BlockHeader> getBlockHeaders(Collection<Integer> heights) {
+        Map<Integer, BlockHeader> blockHeaders = new HashMap<>();
+        if(!open()) {
+            return blockHeaders;
+        }
+
+        for(Integer height : heights) {
+            Long offset = headerOffsets.get(height);
+            if(offset != null) {
+                try {
+                    Record record = readRecord(offset);
+                    if(record.type == RECORD_HEADER && record.data.length == BLOCK_HEADER_LENGTH && record.key.equals(getBlockHash(record.data))) {
+                        blockHeaders.put(height, new BlockHeader(record.data));
+                    } else {
+                        log.warn("Ignoring invalid cached block header at height " + height);
+                        headerOffsets.remove(height);
+                    }
+                } catch(IOException | ProtocolException e) {
+                    log.warn("Error reading cached block header at height " + height, e);
+                    headerOffsets.remove(height);
+                }
+            }
+        }
+
+        return blockHeaders;
+    }
+
+    public synchronized Map<Sha256Hash, Transaction> getTransactions(Collection<Sha256Hash> txids) {
+        Map<Sha256Hash, Transaction> transactions = new HashMap<>();
+        if(!open()) {
+            return transactions;
+        }
+
+        for(Sha256Hash txid : txids) {
+            Long offset = transactionOffsets.get(txid);
+            if(offset != null) {
+                try {
+                    Record record = readRecord(offset);
+                    Transaction transaction = new Transaction(record.data);
+                    if(record.type == RECORD_TRANSACTION && txid.equals(transaction.getTxId())) {
+                        transactions.put(txid, transaction);
+                    } else {
+                        log.warn("Ignoring invalid cached transaction " + txid);
+                        transactionOffsets.remove(txid);
+                    }
+                } catch(IOException | ProtocolException e) {
+                    log.warn("Error reading cached transaction " + txid, e);
+                    transactionOffsets.remove(txid);
+                }
+            }
+        }
+
+        return transactions;
+    }
+
+    public synchronized void putBlockHeaders(Map<Integer, BlockHeader> blockHeaders) {
+        if(!open()) {
+            return;
+        }
+
+        try {
+            for(Map.Entry<Integer, BlockHeader> entry : blockHeaders.entrySet()) {
+                int height = entry.getKey();
+                if(isBuried(height) && !headerOffsets.containsKey(height)) {
+                    byte[] rawHeader = entry.getValue().bitcoinSerialize();
+                    if(rawHeader.length == BLOCK_HEADER_LENGTH) {
+                        headerOffsets.put(height, appendRecord(RECORD_HEADER, getBlockHash(rawHeader), height, rawHeader));
+                    }
+                }
+            }
+        } catch(IOException e) {
+            log.error("Error writing block headers to " + cacheFile.getAbsolutePath(), e);
+            close();
+        }
+    }
+
+    public synchronized void putTransactions(Map<Sha256Hash, Integer> txidHeights, Map<Sha256Hash, Transaction> transactions) {
+        if(!open()) {
+            return;
+        }
+
+        try {
+            for(Map.Entry<Sha256Hash, Transaction> entry : transactions.entrySet()) {
+                Sha256Hash txid = entry.getKey();
+                Integer height = txidHeights.get(txid);
+                if(height != null && isBuried(height) && !transactionOffsets.containsKey(txid)) {
+                    transactionOffsets.put(txid, appendRecord(RECORD_TRANSACTION, txid, height, entry.getValue().bitcoinSerialize()));
+                }
+            }
+        } catch(IOException e) {
+            log.error("Error writing transactions to " + cacheFile.getAbsolutePath(), e);
+            close();
+        }
+    }
+
+    private synchronized void closeCache() {
+        close();
+    }
+
+    private boolean isBuried(int height) {
+        Integer currentHeight = AppServices.getCurrentBlockHeight();
+        return height > 0 && currentHeight != null && currentHeight - height + 1 >= MIN_CONFIRMATIONS;
+    }
+
+    private boolean open() {
+        if(channel != null) {
+            return true;
+        }
+
+        try {
+            channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            loadIndex();
+            return true;
+        } catch(IOException e) {
+            log.error("Error opening " + cacheFile.getAbsolutePath(), e);
+            close();
+            return false;
+        }
+    }
+
+    private void loadIndex() throws IOException {
+        headerOffsets.clear();
+        transactionOffsets.clear();
+
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer prefix = ByteBuffer.allocate(RECORD_PREFIX_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        while(position + RECORD_PREFIX_LENGTH <= size) {
+            prefix.clear();
+            readFully(prefix, position);
+            prefix.flip();
+
+            byte type = prefix.get();
+            byte[] key = new byte[32];
+            prefix.get(key);
+            int height = prefix.getInt();
+            int length = prefix.getInt();
+            if((type != RECORD_HEADER && type != RECORD_TRANSACTION) || length < 0 || position + RECORD_PREFIX_LENGTH + length > size) {
+                break;
+            }
+
+            if(type == RECORD_HEADER) {
+                headerOffsets.put(height, position);
+            } else {
+                transactionOffsets.put(Sha256Hash.wrap(key), position);
+            }
+
+            position += RECORD_PREFIX_LENGTH + length;
+        }
+
+        //Discard any partially written record at the end of the file
+        if(position < size) {
+            log.warn("Truncating " + (size - position) + " bytes of incomplete data from " + cacheFile.getAbsolutePath());
+            channel.truncate(position);
+        }
+
+        log.debug("Loaded " + headerOffsets.size() + " block headers and " + transactionOffsets.size() + " transactions from " + cacheFile.getAbsolutePath());
+    }
+
+    private Record readRecord(long offset) throws IOException {
+        ByteBuffer prefix = ByteBuffer.allocate(RECORD_PREFIX_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(prefix, offset);
+        prefix.flip();
+
+        byte type = prefix.get();
+        byte[] key = new byte[32];
+        prefix.get(key);
+        int height = prefix.getInt();
+        int length = prefix.getInt();
+
+        ByteBuffer data = ByteBuffer.allocate(length);
+        readFully(data, offset + RECORD_PREFIX_LENGTH);
+        return new Record(type, Sha256Hash.wrap(key), height, data.array());
+    }
+
+    private int readRecordLength(long offset) throws IOException {
+        ByteBuffer prefix = ByteBuffer.allocate(RECORD_PREFIX_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(prefix, offset);
+        return prefix.getInt(RECORD_PREFIX_LENGTH - 4);
+    }
+
+    private long appendRecord(byte type, Sha256Hash key, int height, byte[] data) throws IOException {
+        if(channel.size() + RECORD_PREFIX_LENGTH + data.length > MAX_CACHE_SIZE) {
+            compact();
+        }
+
+        long offset = channel.size();
+        writeRecord(channel, offset, new Record(type, key, height, data));
+        return offset;
+    }
+
+    private static long writeRecord(FileChannel fileChannel, long offset, Record record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_PREFIX_LENGTH + record.data.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(record.type);
+        buffer.put(record.key.getBytes());
+        buffer.putInt(record.height);
+        buffer.putInt(record.data.length);
+        buffer.put(record.data);
+        buffer.flip();
+
+        long position = offset;
+        while(buffer.hasRemaining()) {
+            position += fileChannel.write(buffer, position);
+        }
+
+        return position;
+    }
+
+    /**
+     * Rewrites the cache with the most recently written records that fit in half of the maximum size, discarding older and superseded records.
+     */
+    private void compact() throws IOException {
+        List<Long> offsets = new ArrayList<>(headerOffsets.size() + transactionOffsets.size());
+        offsets.addAll(headerOffsets.values());
+        offsets.addAll(transactionOffsets.values());
+        offsets.sort(Comparator.reverseOrder());
+
+        //Offsets are selected first and the records copied one at a time, so the retained data is not held in memory
+        List<Long> retainedOffsets = new ArrayList<>();
+        long retainedSize = 0;
+        for(Long offset : offsets) {
+            retainedSize += RECORD_PREFIX_LENGTH + readRecordLength(offset);
+            if(retainedSize > MAX_CACHE_SIZE / 2) {
+                break;
+            }
+            retainedOffsets.add(offset);
+        }
+        Collections.reverse(retainedOffsets);
+
+        File compactFile = new File(cacheFile.getParentFile(), cacheFile.getName() + ".tmp");
+        try(FileChannel compactChannel = FileChannel.open(compactFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long position = 0;
+            for(Long offset : retainedOffsets) {
+                position = writeRecord(compactChannel, position, readRecord(offset));
+            }
+            compactChannel.force(true);
+        }
+
+        close();
+        Files.move(compactFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        loadIndex();
+        log.debug("Compacted " + cacheFile.getAbsolutePath() + " to " + retainedOffsets.size() + " records");
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if(read < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+            position += read;
+        }
+    }
+
+    private void close() {
+        if(channel != null) {
+            try {
+                channel.close();
+            } catch(IOException e) {
+                log.debug("Error closing " + cacheFile.getAbsolutePath(), e);
+            }
+            channel = null;
+        }
+    }
+
+    private static Sha256Hash getBlockHash(byte[] rawHeader) {
+        return Sha256Hash.wrap(Utils.reverseBytes(Sha256Hash.hashTwice(rawHeader)));
+    }
+
+    private record Record(byte type, Sha256Hash key, int height, byte[] data) {}
+}
@@ -68,6 +68,8 @@ public class ElectrumServer {
 
     private static final Map<String, String> retrievedScriptHashes = Collections.synchronizedMap(new HashMap<>());
 
+    private static final Map<Wallet, ScriptHashPrefetcher> scriptHashPrefetchers = new ConcurrentHashMap<>();
+
     private static final Map<Sha256Hash, BlockTransaction> retrievedTransactions = new ConcurrentHashMap<>();
 
     private static final Map<Integer, BlockHeader> retrievedBlockHeaders = new ConcurrentHashMap<>();
@@ -214,6 +216,34 @@ public class ElectrumServer {
         calculatedScriptHashStatuses.forEach(retrievedScriptHashes::putIfAbsent);
     }
 
+    /**
+     * Adds script hash statuses persisted with the wallet, keyed by node derivation path.
+     * These are only used where the status calculated from the stored history is ambiguous because several transactions share a block height,
+     * so that an unchanged node does not need its history fetched again after a restart.
+     */
+    public static void addPersistedScriptHashStatuses(Wallet wallet, Map<String, String> persistedStatuses) {
+        if(persistedStatuses.isEmpty()) {
+            return;
+        }
+
+        for(KeyPurpose keyPurpose : List.of(KeyPurpose.RECEIVE, KeyPurpose.CHANGE)) {
+            for(WalletNode walletNode : wallet.getNode(keyPurpose).getChildren()) {
+                String persistedStatus = persistedStatuses.get(walletNode.getDerivationPath());
+                if(persistedStatus != null) {
+                    String scriptHash = getScriptHash(walletNode);
+                    String calculatedStatus = getScriptHashStatus(scriptHash, walletNode);
+                    if(calculatedStatus != null && !persistedStatus.equals(calculatedStatus) && sameHeightTxioScriptHashes.contains(scriptHash)) {
+                        retrievedScriptHashes.putIfAbsent(scriptHash, persistedStatus);
+                    }
+                }
+            }
+        }
+    }
+
+    public static String getRetrievedScriptHashStatus(WalletNode walletNode) {
+        return retrievedScriptHashes.get(getScriptHash(walletNode));
+    }
+
     private static Map<String, String> getCalculatedScriptHashes(Wallet wallet) {
         Map<String, String> storedScriptHashStatuses = new HashMap<>();
         storedScriptHashStatuses.putAll(calculateScriptHashes(wallet, KeyPurpose.RECEIVE));
@@ -282,6 +312,7 @@ public class ElectrumServer {
     }
 
     public static void clearRetrievedScriptHashes(Wallet wallet) {
+        ScriptHashIndex.remove(wallet);
         wallet.getNode(KeyPurpose.RECEIVE).getChildren().stream().map(ElectrumServer::getScriptHash).forEach(ElectrumServer::clearRetrievedScriptHash);
         wallet.getNode(KeyPurpose.CHANGE).getChildren().stream().map(ElectrumServer::getScriptHash).forEach(ElectrumServer::clearRetrievedScriptHash);
         TransactionHistoryService.walletLocks.computeIfAbsent(wallet.hashCode(), w -> new WalletLock()).initialized = false;
@@ -387,13 +418,27 @@ public class ElectrumServer {
         int historySize = purposeNode.getChildren().size();
         //The gap limit size takes the highest used index in the retrieved history and adds the gap limit (plus one to be comparable to the number of children since index is zero based)
         int gapLimitSize = getGapLimitSize(wallet, nodeTransactionMap, purposeNode);
-        while(historySize < gapLimitSize) {
-            purposeNode.fillToIndex(wallet, gapLimitSize - 1);
-            subscribeWalletNodes(wallet, getAddressNodes(wallet, purposeNode), nodeTransactionMap, historySize);
-            getReferences(wallet, nodeTransactionMap.keySet(), nodeTransactionMap, historySize);
-            getReferencedTransactions(wallet, nodeTransactionMap);
-            historySize = purposeNode.getChildren().size();
-            gapLimitSize = getGapLimitSize(wallet, nodeTransactionMap, purposeNode);
+        if(historySize >= gapLimitSize) {
+            return;
+        }
+
+        //Derive script hashes on a worker pool, one window ahead of the network requests, so derivation overlaps with waiting on the server
+        ScriptHashPrefetcher prefetcher = new ScriptHashPrefetcher(wallet, purposeNode.getKeyPurpose());
+        scriptHashPrefetchers.put(wallet, prefetcher);
+        try {
+            while(historySize < gapLimitSize) {
+                prefetcher.prefetch(historySize, gapLimitSize);
+                prefetcher.prefetch(gapLimitSize, gapLimitSize + wallet.getGapLimit());
+                purposeNode.fillToIndex(wallet, gapLimitSize - 1);
+                subscribeWalletNodes(wallet, getAddressNodes(wallet, purposeNode), nodeTransactionMap, historySize);
+                getReferences(wallet, nodeTransactionMap.keySet(), nodeTransactionMap, historySize);
+                getReferencedTransactions(wallet, nodeTransactionMap);
+                historySize = purposeNode.getChildren().size();
+                gapLimitSize = getGapLimitSize(wallet, nodeTransactionMap, purposeNode);
+            }
+        } finally {
+            scriptHashPrefetchers.remove(wallet, prefetcher);
+            prefetcher.cancel();
         }
     }
 
@@ -684,20 +729,35 @@ public class ElectrumServer {
                 }
             }
 
+            if(!blockHeights.isEmpty() && BlockDataCache.isEnabled()) {
+                Map<Integer, BlockHeader> cachedBlockHeaders = BlockDataCache.get().getBlockHeaders(blockHeights);
+                for(Map.Entry<Integer, BlockHeader> entry : cachedBlockHeaders.entrySet()) {
+                    blockHeaderMap.put(entry.getKey(), entry.getValue());
+                    updateRetrievedBlockHeaders(entry.getKey(), entry.getValue());
+                    blockHeights.remove(entry.getKey());
+                }
+            }
+
             if(blockHeights.isEmpty()) {
                 return blockHeaderMap;
             }
 
             Map<Integer, String> result = electrumServerRpc.getBlockHeaders(getTransport(), wallet, blockHeights);
 
+            Map<Integer, BlockHeader> fetchedBlockHeaders = new HashMap<>();
             for(Integer height : result.keySet()) {
                 byte[] blockHeaderBytes = Utils.hexToBytes(result.get(height));
                 BlockHeader blockHeader = new BlockHeader(blockHeaderBytes);
                 blockHeaderMap.put(height, blockHeader);
+                fetchedBlockHeaders.put(height, blockHeader);
                 updateRetrievedBlockHeaders(height, blockHeader);
                 blockHeights.remove(height);
             }
 
+            if(BlockDataCache.isEnabled()) {
+                BlockDataCache.get().putBlockHeaders(fetchedBlockHeaders);
+            }
+
             if(!blockHeights.isEmpty()) {
                 log.warn("Could not retrieve " + blockHeights.size() + " blocks");
             }
@@ -724,8 +784,21 @@ public class ElectrumServer {
                 }
             }
 
+            if(!txids.isEmpty() && BlockDataCache.isEnabled()) {
+                Map<Sha256Hash, Transaction> cachedTransactions = BlockDataCache.get().getTransactions(txids.stream().map(Sha256Hash::wrap).toList());
+                for(BlockTransactionHash reference : references.keySet()) {
+                    Transaction transaction = cachedTransactions.get(reference.getHash());
+                    if(transaction != null) {
+                        references.put(reference, transaction);
+                        txids.remove(reference.getHashAsString());
+                    }
+                }
+            }
+
             if(!txids.isEmpty()) {
                 Map<String, String> result = electrumServerRpc.getTransactions(getTransport(), wallet, txids);
+                Map<Sha256Hash, Integer> fetchedHeights = new HashMap<>();
+                Map<Sha256Hash, Transaction> fetchedTransactions = new HashMap<>();
 
                 String strErrorTx = Sha256Hash.ZERO_HASH.toString();
                 for(String txid : result.keySet()) {
@@ -755,6 +828,12 @@ public class ElectrumServer {
                     BlockTransactionHash reference = optionalReference.get();
 
                     references.put(reference, transaction);
+                    fetchedHeights.put(hash, reference.getHeight());
+                    fetchedTransactions.put(hash, transaction);
+                }
+
+                if(BlockDataCache.isEnabled()) {
+                    BlockDataCache.get().putTransactions(fetchedHeights, fetchedTransactions);
                 }
             }
 
@@ -792,13 +871,21 @@ public class ElectrumServer {
         }
     }
 
-    public void calculateNodeHistory(Wallet wallet, Map<WalletNode, Set<BlockTransactionHash>> nodeTransactionMap) {
+    /**
+     * Calculates the transaction outputs of each node from its history, returning the nodes whose transaction outputs have changed
+     */
+    public Set<WalletNode> calculateNodeHistory(Wallet wallet, Map<WalletNode, Set<BlockTransactionHash>> nodeTransactionMap) {
+        Set<WalletNode> historyChangedNodes = new HashSet<>();
         for(WalletNode node : nodeTransactionMap.keySet()) {
-            calculateNodeHistory(wallet, nodeTransactionMap, node);
+            if(calculateNodeHistory(wallet, nodeTransactionMap, node)) {
+                historyChangedNodes.add(node);
+            }
         }
+
+        return historyChangedNodes;
     }
 
-    public void calculateNodeHistory(Wallet wallet, Map<WalletNode, Set<BlockTransactionHash>> nodeTransactionMap, WalletNode node) {
+    public boolean calculateNodeHistory(Wallet wallet, Map<WalletNode, Set<BlockTransactionHash>> nodeTransactionMap, WalletNode node) {
         Set<BlockTransactionHashIndex> transactionOutputs = new TreeSet<>();
 
         //First check all provided txes that pay to this node
@@ -872,7 +959,10 @@ public class ElectrumServer {
             node.updateTransactionOutputs(wallet, transactionOutputs);
             copyPostmixLabels(wallet, transactionOutputs);
             copyBadbankLabels(wallet, transactionOutputs);
+            return true;
         }
+
+        return false;
     }
 
     public void copyPostmixLabels(Wallet wallet, Set<BlockTransactionHashIndex> newTransactionOutputs) {
@@ -1133,19 +1223,36 @@ public class ElectrumServer {
         }
     }
 
-    public Set<String> getMempoolScriptHashes(Wallet wallet, Sha256Hash txId, Set<WalletNode> transactionNodes) throws ServerException {
-        Map<String, String> pathScriptHashes = new LinkedHashMap<>(transactionNodes.size());
-        for(WalletNode node : transactionNodes) {
-            pathScriptHashes.put(node.getDerivationPath(), getScriptHash(node));
+    /**
+     * Retrieves the history of the union of the given script hashes in one batch, and returns for each txid the script hashes that have it unconfirmed
+     */
+    public Map<Sha256Hash, Set<String>> getMempoolScriptHashes(Map<Sha256Hash, Set<String>> txidScriptHashes) throws ServerException {
+        //The RPC layer expects path-like keys, so each distinct script hash is given a synthetic index path
+        Map<String, String> scriptHashPaths = new LinkedHashMap<>();
+        Map<String, String> pathScriptHashes = new LinkedHashMap<>();
+        for(Set<String> txScriptHashes : txidScriptHashes.values()) {
+            for(String scriptHash : txScriptHashes) {
+                scriptHashPaths.computeIfAbsent(scriptHash, k -> {
+                    String path = "m/" + pathScriptHashes.size();
+                    pathScriptHashes.put(path, scriptHash);
+                    return path;
+                });
+            }
         }
 
-        Set<String> mempoolScriptHashes = new LinkedHashSet<>();
-        Map<String, ScriptHashTx[]> result = electrumServerRpc.getScriptHashHistory(getTransport(), wallet, pathScriptHashes, true);
-        for(String path : result.keySet()) {
-            ScriptHashTx[] txes = result.get(path);
-            if(Arrays.stream(txes).map(ScriptHashTx::getBlockchainTransactionHash).anyMatch(ref -> txId.equals(ref.getHash()) && ref.getHeight() <= 0)) {
-                mempoolScriptHashes.add(pathScriptHashes.get(path));
+        Map<Sha256Hash, Set<String>> mempoolScriptHashes = new HashMap<>();
+        try {
+            Map<String, ScriptHashTx[]> result = electrumServerRpc.getScriptHashHistory(getTransport(), null, pathScriptHashes, true);
+            for(Map.Entry<Sha256Hash, Set<String>> entry : txidScriptHashes.entrySet()) {
+                for(String scriptHash : entry.getValue()) {
+                    ScriptHashTx[] txes = result.get(scriptHashPaths.get(scriptHash));
+                    if(txes != null && Arrays.stream(txes).map(ScriptHashTx::getBlockchainTransactionHash).anyMatch(ref -> entry.getKey().equals(ref.getHash()) && ref.getHeight() <= 0)) {
+                        mempoolScriptHashes.computeIfAbsent(entry.getKey(), k -> new LinkedHashSet<>()).add(scriptHash);
+                    }
+                }
             }
+        } catch(ElectrumServerRpcException | IllegalStateException e) {
+            throw new ServerException(e.getMessage(), e);
         }
 
         return mempoolScriptHashes;
@@ -1193,6 +1300,8 @@ public class ElectrumServer {
     }
 
     public static Map<String, WalletNode> getAllScriptHashes(Wallet wallet) {
+        ScriptHashIndex.get(wallet).update(wallet);
+
         Map<String, WalletNode> scriptHashes = new HashMap<>();
         for(KeyPurpose keyPurpose : KeyPurpose.DEFAULT_PURPOSES) {
             for(WalletNode childNode : wallet.getNode(keyPurpose).getChildren()) {
@@ -1212,7 +1321,27 @@ public class ElectrumServer {
     }
 
     public static String getScriptHash(WalletNode node) {
-        byte[] hash = Sha256Hash.hash(node.getOutputScript().getProgram());
+        Wallet wallet = node.getWallet();
+        if(wallet == null) {
+            return getScriptHash(node.getOutputScript());
+        }
+
+        ScriptHashIndex scriptHashIndex = ScriptHashIndex.get(wallet);
+        String scriptHash = scriptHashIndex.getScriptHash(node);
+        if(scriptHash == null) {
+            ScriptHashPrefetcher prefetcher = scriptHashPrefetchers.isEmpty() ? null : scriptHashPrefetchers.get(wallet);
+            scriptHash = prefetcher == null ? null : prefetcher.get(node);
+            if(scriptHash == null) {
+                scriptHash = getScriptHash(node.getOutputScript());
+            }
+            scriptHashIndex.put(node.getDerivationPath(), scriptHash);
+        }
+
+        return scriptHash;
+    }
+
+    public static String getScriptHash(Script script) {
+        byte[] hash = Sha256Hash.hash(script.getProgram());
         byte[] reversed = Utils.reverseBytes(hash);
         return Utils.bytesToHex(reversed);
     }
@@ -1659,6 +1788,7 @@ public class ElectrumServer {
         private final Wallet mainWallet;
         private final List<Wallet> filterToWallets;
         private final Set<WalletNode> filterToNodes;
+        private final Set<WalletNode> historyChangedNodes = ConcurrentHashMap.newKeySet();
         private final static Map<Integer, WalletLock> walletLocks = Collections.synchronizedMap(new HashMap<>());
 
         public TransactionHistoryService(Wallet wallet) {
@@ -1695,6 +1825,13 @@ public class ElectrumServer {
             };
         }
 
+        /**
+         * Returns the nodes of the main and nested wallets whose transaction outputs were changed by this service
+         */
+        public Set<WalletNode> getHistoryChangedNodes() {
+            return historyChangedNodes;
+        }
+
         private boolean getTransactionHistory(Wallet wallet) throws ServerException {
             if(filterToWallets != null && !filterToWallets.contains(wallet)) {
                 return false;
@@ -1708,6 +1845,7 @@ public class ElectrumServer {
             WalletLock walletLock = walletLocks.computeIfAbsent(wallet.hashCode(), w -> new WalletLock());
             synchronized(walletLock) {
                 if(!walletLock.initialized) {
+                    ScriptHashIndex.get(wallet).update(wallet);
                     addCalculatedScriptHashes(wallet);
                     walletLock.initialized = true;
                 }
@@ -1718,7 +1856,7 @@ public class ElectrumServer {
                     Map<String, String> previousScriptHashes = getCalculatedScriptHashes(wallet);
                     Map<WalletNode, Set<BlockTransactionHash>> nodeTransactionMap = (nodes == null ? electrumServer.getHistory(wallet) : electrumServer.getHistory(wallet, nodes));
                     electrumServer.getReferencedTransactions(wallet, nodeTransactionMap);
-                    electrumServer.calculateNodeHistory(wallet, nodeTransactionMap);
+                    historyChangedNodes.addAll(electrumServer.calculateNodeHistory(wallet, nodeTransactionMap));
 
                     //Add all of the script hashes we have now fetched the history for so we don't need to fetch again until the script hash status changes
                     Set<WalletNode> updatedNodes = new HashSet<>();
@@ -1750,6 +1888,7 @@ public class ElectrumServer {
                             if(retrievedScriptHashes.get(scriptHash) == null && !node.getTransactionOutputs().isEmpty()) {
                                 log.debug("Clearing transaction history for " + node);
                                 node.getTransactionOutputs().clear();
+                                historyChangedNodes.add(node);
                             }
                         }
                     }
@@ -1768,6 +1907,7 @@ public class ElectrumServer {
         private final Set<WalletNode> nodes;
         private final IntegerProperty iterationCount = new SimpleIntegerProperty(0);
         private boolean cancelled;
+        private boolean watching;
 
         public TransactionMempoolService(Wallet wallet, Sha256Hash txId, Set<WalletNode> nodes) {
             this.wallet = wallet;
@@ -1789,6 +1929,10 @@ public class ElectrumServer {
 
         @Override
         public void start() {
+            if(!watching) {
+                MempoolWatcher.get().watch(txId, nodes);
+                watching = true;
+            }
             this.cancelled = false;
             super.start();
         }
@@ -1796,6 +1940,10 @@ public class ElectrumServer {
         @Override
         public boolean cancel() {
             this.cancelled = true;
+            if(watching) {
+                MempoolWatcher.get().unwatch(txId);
+                watching = false;
+            }
             return super.cancel();
         }
 
@@ -1811,7 +1959,7 @@ public class ElectrumServer {
 
                     iterationCount.set(iterationCount.get() + 1);
                     ElectrumServer electrumServer = new ElectrumServer();
-                    return electrumServer.getMempoolScriptHashes(wallet, txId, nodes);
+                    return MempoolWatcher.get().getMempoolScriptHashes(electrumServer, txId);
                 }
             };
         }
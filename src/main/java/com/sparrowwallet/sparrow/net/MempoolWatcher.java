@@ -0,0 +1,166 @@
+package com.sparrowwallet.sparrow.net;
+
+import com.sparrowwallet.drongo.protocol.Sha256Hash;
+import com.sparrowwallet.drongo.wallet.WalletNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Watches for broadcast transactions to appear in the mempool on behalf of all outstanding {@link ElectrumServer.TransactionMempoolService}s.
+ * Script hashes are deduplicated across transactions and probed in a single batch, and probes back off while the script hashes are subscribed,
+ * since a status notification will then prompt an immediate probe.
+ * The time from the start of each watch until the transaction is detected in the mempool is recorded. As detection happens on a probe,
+ * this is an upper bound on the broadcast to mempool time with a granularity of up to the maximum probe interval.
+ */
+public class MempoolWatcher {
+    private static final Logger log = LoggerFactory.getLogger(MempoolWatcher.class);
+
+    private static final long MIN_PROBE_INTERVAL_MILLIS = 5000;
+    private static final long MAX_PROBE_INTERVAL_MILLIS = 20000;
+    private static final long MAX_WATCH_AGE_MILLIS = 10 * 60 * 1000;
+
+    private static MempoolWatcher INSTANCE;
+
+    private final Map<Sha256Hash, Watch> watches = new HashMap<>();
+    private final Set<String> updatedScriptHashes = ConcurrentHashMap.newKeySet();
+    private final LongSupplier clock;
+    private final Predicate<String> subscribed;
+
+    private long detectedCount;
+    private long totalDetectionMillis;
+    private long maxDetectionMillis;
+
+    private MempoolWatcher() {
+        this(System::currentTimeMillis, scriptHash -> ElectrumServer.getSubscribedScriptHashes().containsKey(scriptHash));
+    }
+
+    MempoolWatcher(LongSupplier clock, Predicate<String> subscribed) {
+        this.clock = clock;
+        this.subscribed = subscribed;
+    }
+
+    public static synchronized MempoolWatcher get() {
+        if(INSTANCE == null) {
+            INSTANCE = new MempoolWatcher();
+        }
+
+        return INSTANCE;
+    }
+
+    public void watch(Sha256Hash txId, Set<WalletNode> nodes) {
+        Set<String> scriptHashes = new LinkedHashSet<>();
+        for(WalletNode node : nodes) {
+            scriptHashes.add(ElectrumServer.getScriptHash(node));
+        }
+
+        watchScriptHashes(txId, scriptHashes);
+    }
+
+    synchronized void watchScriptHashes(Sha256Hash txId, Collection<String> scriptHashes) {
+        Watch watch = watches.computeIfAbsent(txId, k -> new Watch(k, clock.getAsLong()));
+        watch.references++;
+        watch.scriptHashes.addAll(scriptHashes);
+    }
+
+    public synchronized void unwatch(Sha256Hash txId) {
+        Watch watch = watches.get(txId);
+        if(watch != null && --watch.references <= 0) {
+            watches.remove(txId);
+        }
+    }
+
+    /**
+     * Called when the server notifies a status change for a subscribed script hash, so that watches on it are probed on their next check
+     */
+    public void scriptHashUpdated(String scriptHash) {
+        updatedScriptHashes.add(scriptHash);
+    }
+
+    /**
+     * Returns the script hashes of the watched transaction that have it in their mempool history, probing the server together with any other watches that are due.
+     */
+    public synchronized Set<String> getMempoolScriptHashes(ElectrumServer electrumServer, Sha256Hash txId) throws ServerException {
+        long now = clock.getAsLong();
+        watches.values().removeIf(watch -> now - watch.started > MAX_WATCH_AGE_MILLIS);
+
+        Watch watch = watches.get(txId);
+        if(watch == null) {
+            return Collections.emptySet();
+        }
+
+        if(watch.mempoolScriptHashes.isEmpty() && isProbeDue(watch, now)) {
+            List<Watch> dueWatches = watches.values().stream().filter(w -> w.mempoolScriptHashes.isEmpty() && isProbeDue(w, now)).toList();
+            Map<Sha256Hash, Set<String>> txidScriptHashes = new HashMap<>();
+            for(Watch dueWatch : dueWatches) {
+                txidScriptHashes.put(dueWatch.txId, dueWatch.scriptHashes);
+                updatedScriptHashes.removeAll(dueWatch.scriptHashes);
+            }
+
+            Map<Sha256Hash, Set<String>> mempoolScriptHashes = electrumServer.getMempoolScriptHashes(txidScriptHashes);
+            for(Watch dueWatch : dueWatches) {
+                dueWatch.lastProbe = now;
+                Set<String> found = mempoolScriptHashes.getOrDefault(dueWatch.txId, Collections.emptySet());
+                if(found.isEmpty()) {
+                    dueWatch.probeInterval = Math.min(dueWatch.probeInterval * 2, MAX_PROBE_INTERVAL_MILLIS);
+                } else {
+                    dueWatch.mempoolScriptHashes.addAll(found);
+                    recordDetection(dueWatch, now);
+                }
+            }
+        }
+
+        return new LinkedHashSet<>(watch.mempoolScriptHashes);
+    }
+
+    private boolean isProbeDue(Watch watch, long now) {
+        if(watch.lastProbe == 0 || now - watch.lastProbe >= watch.probeInterval) {
+            return true;
+        }
+
+        //Without subscriptions there will be no notifications to rely on
+        return watch.scriptHashes.stream().anyMatch(scriptHash -> !subscribed.test(scriptHash) || updatedScriptHashes.contains(scriptHash));
+    }
+
+    private void recordDetection(Watch watch, long now) {
+        long detectionMillis = now - watch.started;
+        detectedCount++;
+        totalDetectionMillis += detectionMillis;
+        maxDetectionMillis = Math.max(maxDetectionMillis, detectionMillis);
+        log.debug("Transaction " + watch.txId + " detected in mempool " + detectionMillis + "ms after broadcast (mean " + getMeanDetectionMillis() + "ms, max " + maxDetectionMillis + "ms over " + detectedCount + " transactions)");
+    }
+
+    public synchronized long getDetectedCount() {
+        return detectedCount;
+    }
+
+    /**
+     * Returns the mean time from broadcast until detection in the mempool, which includes up to one probe interval of delay
+     */
+    public synchronized long getMeanDetectionMillis() {
+        return detectedCount == 0 ? 0 : totalDetectionMillis / detectedCount;
+    }
+
+    public synchronized long getMaxDetectionMillis() {
+        return maxDetectionMillis;
+    }
+
+    private static class Watch {
+        private final Sha256Hash txId;
+        private final long started;
+        private final Set<String> scriptHashes = new LinkedHashSet<>();
+        private final Set<String> mempoolScriptHashes = new LinkedHashSet<>();
+        private int references;
+        private long lastProbe;
+        private long probeInterval = MIN_PROBE_INTERVAL_MILLIS;
+
+        public Watch(Sha256Hash txId, long started) {
+            this.txId = txId;
+            this.started = started;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.sparrowwallet.sparrow.net;
+
+/**
+ * Tracks how many pages of a batched request may be in flight at once over a pipelined transport, and how large those pages should be.
+ * The window grows while pages complete quickly, and both the window and the page size shrink after failures or slow responses.
+ */
+public class PageWindow {
+    public static final int DEFAULT_WINDOW = 4;
+    public static final int MAX_WINDOW = 8;
+    public static final int MAX_PAGE_SIZE_DIVISOR = 8;
+    public static final long SLOW_PAGE_LATENCY_MILLIS = 5000;
+
+    private static final double LATENCY_SMOOTHING = 0.2;
+
+    private int window = DEFAULT_WINDOW;
+    private int pageSizeDivisor = 1;
+    private double averageLatencyMillis = -1;
+    private long lastLatencyMillis = -1;
+
+    public synchronized int getWindow() {
+        return window;
+    }
+
+    public synchronized int getPageSize(int pageSize) {
+        return Math.max(1, pageSize / pageSizeDivisor);
+    }
+
+    public synchronized void recordSuccess(long latencyMillis) {
+        lastLatencyMillis = latencyMillis;
+        averageLatencyMillis = averageLatencyMillis < 0 ? latencyMillis : (LATENCY_SMOOTHING * latencyMillis) + ((1 - LATENCY_SMOOTHING) * averageLatencyMillis);
+
+        if(averageLatencyMillis > SLOW_PAGE_LATENCY_MILLIS) {
+            window = Math.max(1, window - 1);
+        } else if(window < MAX_WINDOW) {
+            window++;
+        } else if(pageSizeDivisor > 1) {
+            pageSizeDivisor /= 2;
+        }
+    }
+
+    public synchronized void recordFailure() {
+        window = Math.max(1, window / 2);
+        pageSizeDivisor = Math.min(MAX_PAGE_SIZE_DIVISOR, pageSizeDivisor * 2);
+    }
+
+    public synchronized long getAverageLatencyMillis() {
+        return Math.round(averageLatencyMillis);
+    }
+
+    public synchronized long getLastLatencyMillis() {
+        return lastLatencyMillis;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "window " + window + ", page size divisor " + pageSizeDivisor + ", average page latency " + Math.round(averageLatencyMillis) + "ms";
+    }
+}
@@ -9,18 +9,29 @@ import com.github.arteam.simplejsonrpc.client.exception.JsonRpcBatchException;
 import com.github.arteam.simplejsonrpc.core.domain.ErrorMessage;
 import com.google.common.collect.Lists;
 import com.sparrowwallet.sparrow.io.Config;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static com.sparrowwallet.sparrow.net.BatchedElectrumServerRpc.DEFAULT_MAX_ATTEMPTS;
 import static com.sparrowwallet.sparrow.net.BatchedElectrumServerRpc.RETRY_DELAY_SECS;
 
 public class PagedBatchRequestBuilder<K, V> extends AbstractBuilder {
+    private static final Logger log = LoggerFactory.getLogger(PagedBatchRequestBuilder.class);
+
     public static final int DEFAULT_PAGE_SIZE = 100;
 
+    private static ExecutorService pageExecutor;
+
     private final AtomicLong counter;
 
     @NotNull
@@ -111,53 +122,119 @@ public class PagedBatchRequestBuilder<K, V> extends AbstractBuilder {
      */
     @NotNull
     public Map<K, V> execute(int maxAttempts) throws Exception {
-        Map<K, V> allResults = new HashMap<>();
         JsonRpcClient client = new JsonRpcClient(transport);
-
         List<List<Request<K>>> pages = Lists.partition(requests, getPageSize());
+
+        if(pages.size() > 1 && counter != null && transport instanceof PipelinedTransport pipelinedTransport) {
+            return executeWindowed(client, pages, maxAttempts, pipelinedTransport.getPageWindow());
+        }
+
+        Map<K, V> allResults = new HashMap<>();
         for(List<Request<K>> page : pages) {
-            if(counter != null) {
-                Map<Long, K> counterIdMap = new HashMap<>();
-                BatchRequestBuilder<Long, V> batchRequest = client.createBatchRequest().keysType(Long.class).returnType(returnType);
-                for(Request<K> request : page) {
-                    counterIdMap.put(request.counterId, request.id);
-                    batchRequest.add(request.counterId, request.method, request.params);
+            allResults.putAll(executePage(client, page, maxAttempts, null));
+        }
+
+        return allResults;
+    }
+
+    /**
+     * Executes pages with up to the current window size of pages in flight at once, collecting results in page order
+     */
+    private Map<K, V> executeWindowed(JsonRpcClient client, List<List<Request<K>>> pages, int maxAttempts, PageWindow pageWindow) throws Exception {
+        Map<K, V> allResults = new HashMap<>();
+        Deque<Future<Map<K, V>>> inFlight = new ArrayDeque<>();
+        Iterator<List<Request<K>>> pageIterator = pages.iterator();
+
+        try {
+            while(pageIterator.hasNext() || !inFlight.isEmpty()) {
+                while(pageIterator.hasNext() && inFlight.size() < pageWindow.getWindow()) {
+                    List<Request<K>> page = pageIterator.next();
+                    inFlight.add(getPageExecutor().submit(() -> executePage(client, page, maxAttempts, pageWindow)));
                 }
 
                 try {
-                    Map<Long, V> pageResult = new RetryLogic<Map<Long, V>>(maxAttempts, RETRY_DELAY_SECS, List.of(IllegalStateException.class, IllegalArgumentException.class)).getResult(batchRequest::execute);
-                    for(Map.Entry<Long, V> pageEntry : pageResult.entrySet()) {
-                        allResults.put(counterIdMap.get(pageEntry.getKey()), pageEntry.getValue());
-                    }
-                } catch(JsonRpcBatchException e) {
-                    Map<Object, Object> mappedSuccesess = new HashMap<>();
-                    for(Map.Entry<?, ?> successEntry : e.getSuccesses().entrySet()) {
-                        mappedSuccesess.put(counterIdMap.get((Long)successEntry.getKey()), successEntry.getValue());
+                    allResults.putAll(inFlight.removeFirst().get());
+                } catch(ExecutionException e) {
+                    if(e.getCause() instanceof Exception cause) {
+                        throw cause;
                     }
-                    Map<Object, ErrorMessage> mappedErrors = new HashMap<>();
-                    for(Map.Entry<?, ErrorMessage> errorEntry : e.getErrors().entrySet()) {
-                        mappedErrors.put(counterIdMap.get((Long)errorEntry.getKey()), errorEntry.getValue());
-                    }
-                    throw new JsonRpcBatchException(e.getMessage(), mappedSuccesess, mappedErrors);
+                    throw e;
                 }
-            } else {
-                BatchRequestBuilder<K, V> batchRequest = client.createBatchRequest().keysType(keysType).returnType(returnType);
-                for(Request<K> request : page) {
-                    if(request.id instanceof String strReq) {
-                        batchRequest.add(strReq, request.method, request.params);
-                    } else if(request.id instanceof Integer intReq) {
-                        batchRequest.add(intReq, request.method, request.params);
-                    } else {
-                        throw new IllegalArgumentException("Id of class " + request.id.getClass().getName() + " not supported");
-                    }
+            }
+        } finally {
+            for(Future<Map<K, V>> future : inFlight) {
+                future.cancel(true);
+            }
+        }
+
+        log.debug("Executed " + requests.size() + " requests in " + pages.size() + " pages, " + pageWindow);
+
+        return allResults;
+    }
+
+    private Map<K, V> executePage(JsonRpcClient client, List<Request<K>> page, int maxAttempts, PageWindow pageWindow) throws Exception {
+        long start = System.currentTimeMillis();
+
+        try {
+            Map<K, V> pageResults = executePage(client, page, maxAttempts);
+            if(pageWindow != null) {
+                long latency = System.currentTimeMillis() - start;
+                pageWindow.recordSuccess(latency);
+                if(log.isTraceEnabled()) {
+                    log.trace("Page of " + page.size() + " requests completed in " + latency + "ms");
                 }
+            }
 
-                Map<K, V> pageResult = new RetryLogic<Map<K, V>>(maxAttempts, RETRY_DELAY_SECS, List.of(IllegalStateException.class, IllegalArgumentException.class)).getResult(batchRequest::execute);
-                allResults.putAll(pageResult);
+            return pageResults;
+        } catch(Exception e) {
+            if(pageWindow != null) {
+                pageWindow.recordFailure();
             }
+            throw e;
         }
+    }
 
-        return allResults;
+    private Map<K, V> executePage(JsonRpcClient client, List<Request<K>> page, int maxAttempts) throws Exception {
+        if(counter != null) {
+            Map<Long, K> counterIdMap = new HashMap<>();
+            BatchRequestBuilder<Long, V> batchRequest = client.createBatchRequest().keysType(Long.class).returnType(returnType);
+            for(Request<K> request : page) {
+                counterIdMap.put(request.counterId, request.id);
+                batchRequest.add(request.counterId, request.method, request.params);
+            }
+
+            try {
+                Map<K, V> pageResults = new HashMap<>();
+                Map<Long, V> pageResult = new RetryLogic<Map<Long, V>>(maxAttempts, RETRY_DELAY_SECS, List.of(IllegalStateException.class, IllegalArgumentException.class)).getResult(batchRequest::execute);
+                for(Map.Entry<Long, V> pageEntry : pageResult.entrySet()) {
+                    pageResults.put(counterIdMap.get(pageEntry.getKey()), pageEntry.getValue());
+                }
+                return pageResults;
+            } catch(JsonRpcBatchException e) {
+                Map<Object, Object> mappedSuccesess = new HashMap<>();
+                for(Map.Entry<?, ?> successEntry : e.getSuccesses().entrySet()) {
+                    mappedSuccesess.put(counterIdMap.get((Long)successEntry.getKey()), successEntry.getValue());
+                }
+                Map<Object, ErrorMessage> mappedErrors = new HashMap<>();
+                for(Map.Entry<?, ErrorMessage> errorEntry : e.getErrors().entrySet()) {
+                    mappedErrors.put(counterIdMap.get((Long)errorEntry.getKey()), errorEntry.getValue());
+                }
+                throw new JsonRpcBatchException(e.getMessage(), mappedSuccesess, mappedErrors);
+            }
+        } else {
+            BatchRequestBuilder<K, V> batchRequest = client.createBatchRequest().keysType(keysType).returnType(returnType);
+            for(Request<K> request : page) {
+                if(request.id instanceof String strReq) {
+                    batchRequest.add(strReq, request.method, request.params);
+                } else if(request.id instanceof Integer intReq) {
+                    batchRequest.add(intReq, request.method, request.params);
+                } else {
+                    throw new IllegalArgumentException("Id of class " + request.id.getClass().getName() + " not supported");
+                }
+            }
+
+            return new RetryLogic<Map<K, V>>(maxAttempts, RETRY_DELAY_SECS, List.of(IllegalStateException.class, IllegalArgumentException.class)).getResult(batchRequest::execute);
+        }
     }
 
     private int getPageSize() {
@@ -166,6 +243,11 @@ public class PagedBatchRequestBuilder<K, V> extends AbstractBuilder {
             pageSize = DEFAULT_PAGE_SIZE;
         }
 
+        //Shrink the page size if pipelined pages have been failing
+        if(transport instanceof PipelinedTransport pipelinedTransport) {
+            pageSize = pipelinedTransport.getPageWindow().getPageSize(pageSize);
+        }
+
         //Halve the page size if there have been timeouts
         if(transport instanceof TimeoutCounter timeoutCounter) {
             int timeouts = timeoutCounter.getTimeoutCount();
@@ -177,6 +259,15 @@ public class PagedBatchRequestBuilder<K, V> extends AbstractBuilder {
         return pageSize;
     }
 
+    private static synchronized ExecutorService getPageExecutor() {
+        if(pageExecutor == null) {
+            BasicThreadFactory factory = new BasicThreadFactory.Builder().namingPattern("PagedBatchRequest-%d").daemon(true).priority(Thread.NORM_PRIORITY).build();
+            pageExecutor = Executors.newCachedThreadPool(factory);
+        }
+
+        return pageExecutor;
+    }
+
     /**
      * Creates a builder of a JSON-RPC batch request in initial state
      *
@@ -0,0 +1,10 @@
+package com.sparrowwallet.sparrow.net;
+
+import com.github.arteam.simplejsonrpc.client.Transport;
+
+/**
+ * A transport that can have multiple requests in flight at the same time, matching responses to requests by id.
+ */
+public interface PipelinedTransport extends Transport {
+    PageWindow getPageWindow();
+}
@@ -0,0 +1,60 @@
+package com.sparrowwallet.sparrow.net;
+
+import com.sparrowwallet.drongo.KeyPurpose;
+import com.sparrowwallet.drongo.wallet.Wallet;
+import com.sparrowwallet.drongo.wallet.WalletNode;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An index of the Electrum script hashes of a wallet's nodes by derivation path, so that output scripts are hashed only once per node.
+ * The index holds no references to the wallet or its nodes, so it is released when the wallet is no longer referenced.
+ */
+public class ScriptHashIndex {
+    private static final Map<Wallet, ScriptHashIndex> INDEXES = Collections.synchronizedMap(new WeakHashMap<>());
+
+    //Below this number of unindexed nodes, hashing on the calling thread is faster than splitting the work
+    private static final int PARALLEL_THRESHOLD = 200;
+
+    private final Map<String, String> pathScriptHashes = new ConcurrentHashMap<>();
+
+    public static ScriptHashIndex get(Wallet wallet) {
+        return INDEXES.computeIfAbsent(wallet, w -> new ScriptHashIndex());
+    }
+
+    /**
+     * Discards the index for a wallet, which must be done if the wallet's output scripts may have changed
+     */
+    public static void remove(Wallet wallet) {
+        INDEXES.remove(wallet);
+    }
+
+    /**
+     * Indexes any of the wallet's address nodes not yet indexed, in parallel where there are many
+     */
+    public void update(Wallet wallet) {
+        List<WalletNode> unindexedNodes = new ArrayList<>();
+        for(KeyPurpose keyPurpose : KeyPurpose.DEFAULT_PURPOSES) {
+            for(WalletNode childNode : wallet.getNode(keyPurpose).getChildren()) {
+                if(!pathScriptHashes.containsKey(childNode.getDerivationPath())) {
+                    unindexedNodes.add(childNode);
+                }
+            }
+        }
+
+        if(unindexedNodes.size() > PARALLEL_THRESHOLD) {
+            unindexedNodes.parallelStream().forEach(node -> put(node.getDerivationPath(), ElectrumServer.getScriptHash(node.getOutputScript())));
+        } else {
+            unindexedNodes.forEach(node -> put(node.getDerivationPath(), ElectrumServer.getScriptHash(node.getOutputScript())));
+        }
+    }
+
+    public String getScriptHash(WalletNode node) {
+        return pathScriptHashes.get(node.getDerivationPath());
+    }
+
+    public void put(String derivationPath, String scriptHash) {
+        pathScriptHashes.put(derivationPath, scriptHash);
+    }
+}
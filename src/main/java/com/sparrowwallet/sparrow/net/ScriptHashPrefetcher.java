@@ -0,0 +1,77 @@
+package com.sparrowwallet.sparrow.net;
+
+import com.sparrowwallet.drongo.KeyPurpose;
+import com.sparrowwallet.drongo.wallet.Wallet;
+import com.sparrowwallet.drongo.wallet.WalletNode;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Derives the script hashes of a range of addresses for a wallet key purpose on a worker pool, so that derivation can proceed ahead of
+ * and in parallel with the network requests that use them during gap limit scanning.
+ */
+public class ScriptHashPrefetcher {
+    private static final Logger log = LoggerFactory.getLogger(ScriptHashPrefetcher.class);
+
+    private static final int CHUNK_SIZE = 100;
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+            new BasicThreadFactory.Builder().namingPattern("ScriptHashPrefetcher-%d").daemon(true).priority(Thread.NORM_PRIORITY).build());
+
+    private final Wallet wallet;
+    private final KeyPurpose keyPurpose;
+    private final Map<String, String> scriptHashes = new ConcurrentHashMap<>();
+    private final Map<Integer, CompletableFuture<Void>> chunks = new ConcurrentHashMap<>();
+
+    public ScriptHashPrefetcher(Wallet wallet, KeyPurpose keyPurpose) {
+        this.wallet = wallet;
+        this.keyPurpose = keyPurpose;
+    }
+
+    /**
+     * Starts deriving the script hashes of the addresses from the start index (inclusive) to the end index (exclusive), if not already started
+     */
+    public void prefetch(int fromIndex, int toIndex) {
+        for(int chunk = fromIndex / CHUNK_SIZE; chunk * CHUNK_SIZE < toIndex; chunk++) {
+            int chunkIndex = chunk;
+            chunks.computeIfAbsent(chunkIndex, k -> CompletableFuture.runAsync(() -> derive(chunkIndex), EXECUTOR));
+        }
+    }
+
+    private void derive(int chunk) {
+        for(int index = chunk * CHUNK_SIZE; index < (chunk + 1) * CHUNK_SIZE; index++) {
+            WalletNode node = new WalletNode(wallet, keyPurpose, index);
+            scriptHashes.put(node.getDerivationPath(), ElectrumServer.getScriptHash(node.getOutputScript()));
+        }
+    }
+
+    /**
+     * Returns the prefetched script hash for the node, waiting for its derivation if in progress, or null if it has not been prefetched
+     */
+    public String get(WalletNode node) {
+        if(node.getKeyPurpose() != keyPurpose) {
+            return null;
+        }
+
+        CompletableFuture<Void> chunk = chunks.get(node.getIndex() / CHUNK_SIZE);
+        if(chunk == null) {
+            return null;
+        }
+
+        try {
+            chunk.join();
+        } catch(CompletionException | CancellationException e) {
+            log.debug("Error prefetching script hashes", e);
+            return null;
+        }
+
+        return scriptHashes.get(node.getDerivationPath());
+    }
+
+    public void cancel() {
+        chunks.values().forEach(chunk -> chunk.cancel(false));
+    }
+}
@@ -38,6 +38,7 @@ public class SubscriptionService {
             existingStatuses.add(status);
         }
 
+        MempoolWatcher.get().scriptHashUpdated(scriptHash);
         Platform.runLater(() -> EventManager.get().post(new WalletNodeHistoryChangedEvent(scriptHash, status)));
     }
 }
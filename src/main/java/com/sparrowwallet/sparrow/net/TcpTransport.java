@@ -1,9 +1,9 @@
 package com.sparrowwallet.sparrow.net;
 
 import com.github.arteam.simplejsonrpc.server.JsonRpcServer;
-import com.google.common.base.Splitter;
 import com.google.common.net.HostAndPort;
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import com.sparrowwallet.sparrow.io.Config;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
@@ -16,14 +16,11 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
-import java.util.Objects;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Condition;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.locks.ReentrantLock;
 
-public class TcpTransport implements CloseableTransport, TimeoutCounter {
+public class TcpTransport implements CloseableTransport, PipelinedTransport, TimeoutCounter {
     private static final Logger log = LoggerFactory.getLogger(TcpTransport.class);
 
     public static final int DEFAULT_MAX_TIMEOUT = 34;
@@ -38,25 +35,27 @@ public class TcpTransport implements CloseableTransport, TimeoutCounter {
 
     protected Socket socket;
 
-    private String response;
+    private PrintWriter out;
 
     private final CountDownLatch readReadySignal = new CountDownLatch(1);
+    private final CountDownLatch firstRequestSignal = new CountDownLatch(1);
 
-    private final ReentrantLock readLock = new ReentrantLock();
-    private final Condition readingCondition = readLock.newCondition();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Set<PendingRequest> pendingRequests = new LinkedHashSet<>();
+    private final Map<String, PendingRequest> pendingRequestsById = new HashMap<>();
+    private int pendingRequestCount;
 
-    private final ReentrantLock clientRequestLock = new ReentrantLock();
-    private boolean running = false;
-    private volatile boolean reading = true;
-    private boolean closed = false;
-    private boolean firstRead = true;
-    private int readTimeoutIndex;
-    private int requestIdCount = 1;
+    private volatile boolean running = false;
+    private volatile boolean closed = false;
+    private volatile boolean firstRead = true;
+    private volatile int readTimeoutIndex;
+
+    private final PageWindow pageWindow = new PageWindow();
 
     private final JsonRpcServer jsonRpcServer = new JsonRpcServer();
     private final SubscriptionService subscriptionService = new SubscriptionService();
 
-    private Exception lastException;
+    private volatile Exception lastException;
     private final Gson gson = new Gson();
 
     public TcpTransport(HostAndPort server) {
@@ -77,23 +76,21 @@ public class TcpTransport implements CloseableTransport, TimeoutCounter {
 
     @Override
     public @NotNull String pass(@NotNull String request) throws IOException {
-        clientRequestLock.lock();
+        //Register the request by its id(s) before writing so the response cannot arrive unmatched
+        PendingRequest pendingRequest = new PendingRequest(getIds(request));
+        addPendingRequest(pendingRequest);
+
         try {
-            Rpc sentRpc = request.startsWith("{") ? gson.fromJson(request, Rpc.class) : null;
-            Rpc recvRpc;
-            String recv;
+            //Check for a reader failure only once registered, as a failure after this point will complete the request
+            Exception exception = lastException;
+            if(exception != null) {
+                throw new IOException("Error reading response: " + exception.getMessage(), exception);
+            }
 
-            //Count number of requests in batched query to increase read timeout appropriately
-            requestIdCount = Splitter.on("\"id\"").splitToList(request).size() - 1;
             writeRequest(request);
-            do {
-                recv = readResponse();
-                recvRpc = recv.startsWith("{") ? gson.fromJson(response, Rpc.class) : null;
-            } while(!Objects.equals(recvRpc, sentRpc));
-
-            return recv;
+            return readResponse(pendingRequest);
         } finally {
-            clientRequestLock.unlock();
+            removePendingRequest(pendingRequest);
         }
     }
 
@@ -106,12 +103,22 @@ public class TcpTransport implements CloseableTransport, TimeoutCounter {
             throw new IllegalStateException("Socket connection has not been established.");
         }
 
-        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(socket.getOutputStream())));
-        out.println(request);
-        out.flush();
+        writeLock.lock();
+        try {
+            if(out == null) {
+                out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)));
+            }
+
+            out.println(request);
+            out.flush();
+        } finally {
+            writeLock.unlock();
+        }
+
+        firstRequestSignal.countDown();
     }
 
-    private String readResponse() throws IOException {
+    private String readResponse(PendingRequest pendingRequest) throws IOException {
         if(firstRead) {
             try {
                 //Ensure read thread has started
@@ -121,15 +128,24 @@ public class TcpTransport implements CloseableTransport, TimeoutCounter {
             } catch(InterruptedException e) {
                 throw new IOException("Read ready await interrupted");
             }
+            firstRead = false;
         }
 
+        //Requests are answered in turn by the server, so allow for all requests in flight ahead of this one
+        long timeoutMillis = (readTimeouts[readTimeoutIndex] * 1000L) + (pendingRequest.inFlightCount * PER_REQUEST_READ_TIMEOUT_MILLIS);
+
+        String response;
         try {
-            if(!readLock.tryLock((readTimeouts[readTimeoutIndex] * 1000L) + (requestIdCount * PER_REQUEST_READ_TIMEOUT_MILLIS), TimeUnit.MILLISECONDS)) {
-                readTimeoutIndex = Math.min(readTimeoutIndex + 1, readTimeouts.length - 1);
-                log.warn("No response from server, setting read timeout to " + readTimeouts[readTimeoutIndex] + " secs");
-                throw new IOException("No response from server");
-            }
+            response = pendingRequest.future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch(TimeoutException e) {
+            readTimeoutIndex = Math.min(readTimeoutIndex + 1, readTimeouts.length - 1);
+            log.warn("No response from server, setting read timeout to " + readTimeouts[readTimeoutIndex] + " secs");
+            throw new IOException("No response from server");
+        } catch(ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw new IOException("Error reading response: " + cause.getMessage(), cause);
         } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new IOException("Read thread interrupted");
         }
 
@@ -137,43 +153,16 @@ public class TcpTransport implements CloseableTransport, TimeoutCounter {
             readTimeoutIndex--;
         }
 
-        try {
-            if(firstRead) {
-                readingCondition.signal();
-                firstRead = false;
-            }
-
-            while(reading) {
-                try {
-                    readingCondition.await();
-                } catch(InterruptedException e) {
-                    //Restore interrupt status and break
-                    Thread.currentThread().interrupt();
-                    break;
-                }
-            }
-
-            if(lastException != null) {
-                throw new IOException("Error reading response: " + lastException.getMessage(), lastException);
-            }
-
-            reading = true;
-
-            readingCondition.signal();
-            return response;
-        } finally {
-            readLock.unlock();
-        }
+        return response;
     }
 
     public void readInputLoop() throws ServerException {
-        readLock.lock();
         readReadySignal.countDown();
 
         try {
             try {
                 //Don't start reading until first RPC request is sent
-                readingCondition.await();
+                firstRequestSignal.await();
             } catch(InterruptedException e) {
                 Thread.currentThread().interrupt();
             }
@@ -187,21 +176,13 @@ public class TcpTransport implements CloseableTransport, TimeoutCounter {
                         //Handle subscription notification
                         jsonRpcServer.handle(received, subscriptionService);
                     } else {
-                        //Handle client's response
-                        response = received;
-                        reading = false;
-                        readingCondition.signal();
-                        readingCondition.await();
+                        //Hand the response directly to the waiting client
+                        completeRequest(received);
                     }
-                } catch(InterruptedException e) {
-                    //Restore interrupt status and continue
-                    Thread.currentThread().interrupt();
                 } catch(Exception e) {
                     log.trace("Connection error while reading", e);
                     if(running) {
-                        lastException = e;
-                        reading = false;
-                        readingCondition.signal();
+                        failPendingRequests(e);
                         //Allow this thread to terminate as we will need to reconnect with a new transport anyway
                         running = false;
                     }
@@ -212,17 +193,95 @@ public class TcpTransport implements CloseableTransport, TimeoutCounter {
                 log.error("Error opening socket inputstream", e);
             }
             if(running) {
-                lastException = e;
-                reading = false;
-                readingCondition.signal();
+                failPendingRequests(e);
                 //Allow this thread to terminate as we will need to reconnect with a new transport anyway
                 running = false;
             }
-        } finally {
-            readLock.unlock();
         }
     }
 
+    private void addPendingRequest(PendingRequest pendingRequest) {
+        synchronized(pendingRequests) {
+            pendingRequest.inFlightCount = pendingRequestCount + pendingRequest.ids.size();
+            pendingRequestCount += pendingRequest.ids.size();
+            pendingRequests.add(pendingRequest);
+            for(String id : pendingRequest.ids) {
+                if(id != null) {
+                    pendingRequestsById.put(id, pendingRequest);
+                }
+            }
+        }
+    }
+
+    private void removePendingRequest(PendingRequest pendingRequest) {
+        synchronized(pendingRequests) {
+            if(pendingRequests.remove(pendingRequest)) {
+                pendingRequestCount -= pendingRequest.ids.size();
+                for(String id : pendingRequest.ids) {
+                    if(id != null) {
+                        pendingRequestsById.remove(id, pendingRequest);
+                    }
+                }
+            }
+        }
+    }
+
+    private void completeRequest(String received) {
+        List<String> ids = getIds(received);
+        PendingRequest pendingRequest = null;
+
+        synchronized(pendingRequests) {
+            for(String id : ids) {
+                if(id != null) {
+                    pendingRequest = pendingRequestsById.get(id);
+                    if(pendingRequest != null) {
+                        break;
+                    }
+                }
+            }
+
+            //Responses without an id (for example a batch rejected as a whole) are matched to the oldest request
+            if(pendingRequest == null && ids.stream().allMatch(Objects::isNull) && !pendingRequests.isEmpty()) {
+                pendingRequest = pendingRequests.iterator().next();
+            }
+        }
+
+        if(pendingRequest != null) {
+            pendingRequest.future.complete(received);
+        } else {
+            log.debug("Discarding response with no matching request: " + received);
+        }
+    }
+
+    private void failPendingRequests(Exception e) {
+        lastException = e;
+
+        List<PendingRequest> failed;
+        synchronized(pendingRequests) {
+            failed = new ArrayList<>(pendingRequests);
+        }
+
+        for(PendingRequest pendingRequest : failed) {
+            pendingRequest.future.completeExceptionally(e);
+        }
+    }
+
+    private List<String> getIds(String json) {
+        try {
+            if(json.startsWith("[")) {
+                Rpc[] rpcs = gson.fromJson(json, Rpc[].class);
+                return Arrays.stream(rpcs).map(rpc -> rpc == null ? null : rpc.id).toList();
+            } else if(json.startsWith("{")) {
+                Rpc rpc = gson.fromJson(json, Rpc.class);
+                return Collections.singletonList(rpc.id);
+            }
+        } catch(JsonParseException e) {
+            log.debug("Could not parse JSON-RPC ids", e);
+        }
+
+        return Collections.emptyList();
+    }
+
     protected String readInputStream(BufferedReader in) throws IOException {
         String response = readLine(in);
 
@@ -287,6 +346,10 @@ public class TcpTransport implements CloseableTransport, TimeoutCounter {
             socket.close();
         }
         closed = true;
+
+        if(lastException == null) {
+            failPendingRequests(new IOException("Transport closed"));
+        }
     }
 
     @Override
@@ -294,24 +357,22 @@ public class TcpTransport implements CloseableTransport, TimeoutCounter {
         return readTimeoutIndex;
     }
 
+    @Override
+    public PageWindow getPageWindow() {
+        return pageWindow;
+    }
+
     private static class Rpc {
         public String id;
+    }
 
-        @Override
-        public boolean equals(Object o) {
-            if(this == o) {
-                return true;
-            }
-            if(o == null || getClass() != o.getClass()) {
-                return false;
-            }
-            Rpc rpc = (Rpc) o;
-            return Objects.equals(id, rpc.id);
-        }
+    private static class PendingRequest {
+        private final List<String> ids;
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+        private int inFlightCount;
 
-        @Override
-        public int hashCode() {
-            return Objects.hash(id);
+        public PendingRequest(List<String> ids) {
+            this.ids = ids;
         }
     }
 }
@@ -0,0 +1,17 @@
+package com.sparrowwallet.sparrow.net.cormorant.bitcoind;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * A single element of a JSON-RPC batch response. Bitcoin Core returns a null result alongside an error, so both are nullable.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record BatchResponse(String id, JsonNode result, Error error) {
+    public boolean isSuccess() {
+        return error == null && result != null && !result.isNull();
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Error(int code, String message) {}
+}
@@ -1,8 +1,12 @@
 package com.sparrowwallet.sparrow.net.cormorant.bitcoind;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.arteam.simplejsonrpc.client.JsonRpcClient;
 import com.github.arteam.simplejsonrpc.client.exception.JsonRpcException;
-import com.google.common.collect.Sets;
+import com.google.common.collect.Lists;
+import com.google.common.net.HostAndPort;
 import com.sparrowwallet.drongo.KeyPurpose;
 import com.sparrowwallet.drongo.OutputDescriptor;
 import com.sparrowwallet.drongo.Utils;
@@ -16,15 +20,18 @@ import com.sparrowwallet.sparrow.event.CormorantPruneStatusEvent;
 import com.sparrowwallet.sparrow.event.CormorantScanStatusEvent;
 import com.sparrowwallet.sparrow.event.CormorantSyncStatusEvent;
 import com.sparrowwallet.sparrow.io.Config;
+import com.sparrowwallet.sparrow.io.Server;
 import com.sparrowwallet.sparrow.net.Bwt;
 import com.sparrowwallet.sparrow.net.ConfigurationException;
 import com.sparrowwallet.sparrow.net.CoreAuthType;
+import com.sparrowwallet.sparrow.net.Protocol;
 import com.sparrowwallet.sparrow.net.cormorant.Cormorant;
 import com.sparrowwallet.drongo.address.Address;
 import com.sparrowwallet.drongo.address.InvalidAddressException;
 import com.sparrowwallet.sparrow.net.cormorant.electrum.ElectrumBlockHeader;
 import com.sparrowwallet.sparrow.net.cormorant.electrum.ScriptHashStatus;
 import com.sparrowwallet.sparrow.net.cormorant.index.Store;
+import com.sparrowwallet.sparrow.net.cormorant.index.StoreCheckpoint;
 import com.sparrowwallet.drongo.protocol.*;
 import javafx.application.Platform;
 import javafx.concurrent.Service;
@@ -32,12 +39,15 @@ import javafx.concurrent.Task;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class BitcoindClient {
@@ -49,15 +59,40 @@ public class BitcoindClient {
 
     private static final long PRUNED_RESCAN_TIMEGAP_MILLIS = 7200*1000;
 
+    //Time to wait for other wallets to request imports before starting a rescan, so they can share it
+    private static final long IMPORT_COALESCE_MILLIS = 500;
+
+    //Maximum number of requests sent to Bitcoin Core in a single JSON-RPC batch
+    private static final int MAX_BATCH_SIZE = 500;
+    private static final ObjectMapper BATCH_MAPPER = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    //Number of blocks below the tip for which cached headers are discarded when a reorg is detected
+    private static final int REORG_INVALIDATION_DEPTH = 100;
+
+    //ZMQ topics used to trigger polling, with sequence preferred as it also reports mempool additions and removals
+    private static final String ZMQ_SEQUENCE = "sequence";
+    private static final String ZMQ_HASHBLOCK = "hashblock";
+    private static final String ZMQ_HASHTX = "hashtx";
+    private static final long PUSH_POLL_DELAY_MILLIS = 1000;
+    private static final int PUSH_FALLBACK_POLL_TICKS = 6;
+    private static final int MEMPOOL_REFRESH_TICKS = 12;
+    private static final int PUSH_MEMPOOL_REFRESH_TICKS = 120;
+
+    //Minimum time between checkpoint writes, as each write serializes the entire confirmed index
+    private static final long CHECKPOINT_INTERVAL_MILLIS = 60 * 1000;
+
     //Error codes from https://github.com/bitcoin/bitcoin/blob/master/src/rpc/protocol.h
     public static final int RPC_METHOD_NOT_FOUND = -32601;
     public static final int RPC_WALLET_NOT_FOUND = -18;
 
     public static final String WALLET_ALREADY_LOADING_MESSAGE = "Wallet already loading.";
 
+    private final BitcoindTransport bitcoindTransport;
     private final JsonRpcClient jsonRpcClient;
     private final Timer timer = new Timer(true);
     private final Store store = new Store();
+    private final StoreCheckpoint storeCheckpoint = StoreCheckpoint.get(Config.get().getCoreServer(), CORE_WALLET_NAME);
+    private final BlockHeaderCache blockHeaderCache = new BlockHeaderCache();
 
     private NetworkInfo networkInfo;
     private String lastBlock;
@@ -84,6 +119,11 @@ public class BitcoindClient {
 
     private final Lock scanningLock = new ReentrantLock();
     private final Set<String> scanningDescriptors = Collections.synchronizedSet(new HashSet<>());
+    private final Queue<DescriptorImport> pendingImports = new ConcurrentLinkedQueue<>();
+    private final ExecutorService importExecutor = Executors.newSingleThreadExecutor(Thread.ofVirtual().name("Cormorant Import").factory());
+    private final ExecutorService checkpointExecutor = Executors.newSingleThreadExecutor(Thread.ofVirtual().name("Cormorant Checkpoint").factory());
+    private final AtomicBoolean checkpointScheduled = new AtomicBoolean();
+    private volatile long lastCheckpointTime;
 
     private final Lock initialImportLock = new ReentrantLock();
     private final Condition initialImportCondition = initialImportLock.newCondition();
@@ -91,13 +131,19 @@ public class BitcoindClient {
 
     private final List<String> pruneWarnedDescriptors = new ArrayList<>();
 
-    private final Map<Sha256Hash, VsizeFeerate> mempoolEntries = new ConcurrentHashMap<>();
+    private final MempoolFeerates mempoolFeerates = new MempoolFeerates();
     private MempoolEntriesState mempoolEntriesState = MempoolEntriesState.UNINITIALIZED;
     private long timerTaskCount;
 
-    public BitcoindClient(boolean useWallets) {
-        BitcoindTransport bitcoindTransport;
+    private final List<ZmqSubscriber> zmqSubscribers = new ArrayList<>();
+    private final Set<Sha256Hash> pendingMempoolTxids = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean pollRequested = new AtomicBoolean();
+    private final Set<String> pendingWalletCheckTxids = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean walletCheckRequested = new AtomicBoolean();
+    private volatile boolean mempoolResyncRequired;
+    private long fallbackPollCount;
 
+    public BitcoindClient(boolean useWallets) {
         Config config = Config.get();
         if((config.getCoreAuthType() == CoreAuthType.COOKIE || config.getCoreAuth() == null || config.getCoreAuth().length() < 2) && config.getCoreDataDir() != null) {
             bitcoindTransport = new BitcoindTransport(config.getCoreServer(), CORE_WALLET_NAME, config.getCoreDataDir());
@@ -158,20 +204,136 @@ public class BitcoindClient {
             }
         }
 
+        boolean walletCreated = false;
         if(!loadedWallets.contains(CORE_WALLET_NAME)) {
             try {
                 getBitcoindService().loadWallet(CORE_WALLET_NAME, true);
             } catch(JsonRpcException e) {
                 if(e.getErrorMessage().getCode() == RPC_WALLET_NOT_FOUND) {
                     getBitcoindService().createWallet(CORE_WALLET_NAME, true, true, "", true, true, true, false);
+                    walletCreated = true;
                 } else if(!WALLET_ALREADY_LOADING_MESSAGE.equals(e.getErrorMessage().getMessage())) {
                     throw e;
                 }
             }
         }
 
-        ListSinceBlock listSinceBlock = getListSinceBlock(null);
+        String checkpointBlock = walletCreated ? null : loadCheckpoint();
+        ListSinceBlock listSinceBlock = getListSinceBlock(checkpointBlock);
         updateStore(listSinceBlock);
+
+        startZmqSubscribers();
+    }
+
+    private void startZmqSubscribers() {
+        Server coreServer = Config.get().getCoreServer();
+        if(coreServer == null || Protocol.isOnionAddress(coreServer)) {
+            return;
+        }
+
+        List<ZmqNotification> notifications;
+        try {
+            notifications = getBitcoindService().getZmqNotifications();
+        } catch(Exception e) {
+            log.debug("Bitcoin Core ZMQ notifications are not available, polling only", e);
+            return;
+        }
+
+        boolean sequenceAvailable = notifications.stream().anyMatch(notification -> ZMQ_SEQUENCE.equals(notification.getTopic()));
+        Map<String, Set<String>> addressTopics = new LinkedHashMap<>();
+        for(ZmqNotification notification : notifications) {
+            String topic = notification.getTopic();
+            if(ZMQ_SEQUENCE.equals(topic) || (!sequenceAvailable && (ZMQ_HASHBLOCK.equals(topic) || ZMQ_HASHTX.equals(topic)))) {
+                addressTopics.computeIfAbsent(notification.address(), k -> new LinkedHashSet<>()).add(topic);
+            }
+        }
+
+        for(Map.Entry<String, Set<String>> entry : addressTopics.entrySet()) {
+            HostAndPort hostAndPort = getZmqHostAndPort(entry.getKey(), coreServer);
+            if(hostAndPort != null) {
+                log.info("Subscribing to Bitcoin Core ZMQ " + entry.getValue() + " notifications at " + hostAndPort);
+                ZmqSubscriber zmqSubscriber = new ZmqSubscriber(hostAndPort, entry.getValue(), new ZmqListener());
+                zmqSubscribers.add(zmqSubscriber);
+                zmqSubscriber.start();
+            }
+        }
+    }
+
+    private static HostAndPort getZmqHostAndPort(String address, Server coreServer) {
+        if(address == null || !address.startsWith("tcp://")) {
+            return null;
+        }
+
+        try {
+            HostAndPort hostAndPort = HostAndPort.fromString(address.substring("tcp://".length()));
+            if(!hostAndPort.hasPort()) {
+                return null;
+            }
+
+            //Bitcoin Core may bind to all interfaces, in which case connect to the configured RPC host
+            String host = hostAndPort.getHost();
+            if(host.equals("*") || host.equals("0.0.0.0") || host.equals("::")) {
+                return HostAndPort.fromParts(coreServer.getHostAndPort().getHost(), hostAndPort.getPort());
+            }
+
+            return hostAndPort;
+        } catch(IllegalArgumentException e) {
+            log.debug("Cannot parse ZMQ address " + address);
+            return null;
+        }
+    }
+
+    private boolean isPushActive() {
+        return zmqSubscribers.stream().anyMatch(ZmqSubscriber::isConnected);
+    }
+
+    private void requestPoll() {
+        if(!stopped && pollRequested.compareAndSet(false, true)) {
+            try {
+                timer.schedule(new PollTask(true), PUSH_POLL_DELAY_MILLIS);
+            } catch(IllegalStateException e) {
+                //Timer has been cancelled
+                pollRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * Schedules a check of whether newly announced mempool transactions belong to the Cormorant wallet, polling only if any do.
+     * Checks are coalesced so that a busy mempool results in one batched gettransaction call per delay period.
+     */
+    private void requestWalletCheck(Sha256Hash txid) {
+        pendingWalletCheckTxids.add(txid.toString());
+        if(!stopped && walletCheckRequested.compareAndSet(false, true)) {
+            try {
+                timer.schedule(new WalletCheckTask(), PUSH_POLL_DELAY_MILLIS);
+            } catch(IllegalStateException e) {
+                //Timer has been cancelled
+                walletCheckRequested.set(false);
+            }
+        }
+    }
+
+    private String loadCheckpoint() {
+        String checkpointBlock = storeCheckpoint.load(store);
+        if(checkpointBlock == null) {
+            return null;
+        }
+
+        try {
+            VerboseBlockHeader checkpointHeader = getBitcoindService().getBlockHeader(checkpointBlock);
+            if(checkpointHeader.confirmations() > 0) {
+                log.debug("Resuming from checkpoint at block height " + checkpointHeader.height());
+                return checkpointBlock;
+            }
+
+            log.info("Checkpoint block " + checkpointBlock + " is no longer in the active chain, replaying wallet history");
+        } catch(JsonRpcException e) {
+            log.info("Checkpoint block " + checkpointBlock + " not found, replaying wallet history");
+        }
+
+        store.clear();
+        return null;
     }
 
     private ListSinceBlock getListSinceBlock(String blockHash) {
@@ -388,39 +550,12 @@ public class BitcoindClient {
         }
 
         if(!importingDescriptors.isEmpty()) {
-            log.debug("Importing descriptors " + importingDescriptors);
-
-            List<ImportDescriptor> importDescriptors = importingDescriptors.entrySet().stream()
-                    .map(entry -> {
-                        ScanDate scanDate = entry.getValue();
-                        if(entry.getKey().contains("/0/*")) {
-                            return new ImportRangedDescriptor(entry.getKey(), true, scanDate.range(), scanDate.getTimestamp(), false);
-                        } else if(entry.getKey().contains("/1/*")) {
-                            return new ImportRangedDescriptor(entry.getKey(), false, scanDate.range(), scanDate.getTimestamp(), true);
-                        }
-                        return new ImportDescriptor(entry.getKey(), false, entry.getValue().getTimestamp(), true);
-                    }).toList();
-
-            List<ImportDescriptorResult> results;
-            scanningLock.lock();
-            try {
-                scanningDescriptors.addAll(importingDescriptors.keySet());
-                Platform.runLater(() -> EventManager.get().post(new CormorantScanStatusEvent("Scanning (0%)", getScanningWallets(), 0, null)));
-                results = getBitcoindService().importDescriptors(importDescriptors);
-            } finally {
-                scanningLock.unlock();
-                Set<Wallet> scanningWallets = getScanningWallets();
-                Platform.runLater(() -> EventManager.get().post(new CormorantScanStatusEvent("Scanning completed", scanningWallets, 100, Duration.ZERO)));
-                scanningDescriptors.clear();
-            }
-
-            for(int i = 0; i < importDescriptors.size(); i++) {
-                ImportDescriptor importDescriptor = importDescriptors.get(i);
-                ImportDescriptorResult importDescriptorResult = results.get(i);
-                if(importDescriptorResult.success()) {
-                    importedDescriptors.put(importDescriptor.getDesc(), importingDescriptors.get(importDescriptor.getDesc()));
+            Map<String, ImportDescriptorResult> results = scheduleImport(importingDescriptors);
+            for(Map.Entry<String, ImportDescriptorResult> result : results.entrySet()) {
+                if(result.getValue().success()) {
+                    importedDescriptors.put(result.getKey(), importingDescriptors.get(result.getKey()));
                 } else {
-                    log.error("Error importing descriptor " + importDescriptor.getDesc() + ": " + importDescriptorResult);
+                    log.error("Error importing descriptor " + result.getKey() + ": " + result.getValue());
                 }
             }
         }
@@ -429,10 +564,139 @@ public class BitcoindClient {
         return importingDescriptors.keySet();
     }
 
+    private Map<String, ImportDescriptorResult> scheduleImport(Map<String, ScanDate> importingDescriptors) {
+        DescriptorImport descriptorImport = new DescriptorImport(importingDescriptors);
+        pendingImports.add(descriptorImport);
+        importExecutor.execute(this::runImportPass);
+
+        try {
+            return descriptorImport.future().join();
+        } catch(CompletionException e) {
+            if(e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+
+            throw e;
+        }
+    }
+
+    /**
+     * Imports all pending descriptors in as few importdescriptors calls as possible.
+     * Descriptors that do not need a rescan are imported first and their callers released, then the remaining descriptors from all pending imports
+     * are combined into a single call, so that Bitcoin Core performs one rescan from the earliest date rather than one rescan per wallet.
+     */
+    private void runImportPass() {
+        List<DescriptorImport> rescanImports = importWithoutRescan(drainPendingImports());
+        if(rescanImports.isEmpty()) {
+            return;
+        }
+
+        //Wait briefly so that wallets being opened together share the rescan
+        try {
+            Thread.sleep(IMPORT_COALESCE_MILLIS);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        rescanImports.addAll(importWithoutRescan(drainPendingImports()));
+
+        Map<String, ScanDate> rescanDescriptors = new LinkedHashMap<>();
+        rescanImports.forEach(descriptorImport -> rescanDescriptors.putAll(descriptorImport.getRescanDescriptors()));
+        log.debug("Rescanning for " + rescanImports.size() + " import(s) from " + rescanDescriptors.values().stream().map(ScanDate::rescanSince).min(Date::compareTo).orElse(null));
+
+        scanningLock.lock();
+        try {
+            rescanImports.forEach(descriptorImport -> scanningDescriptors.addAll(descriptorImport.descriptors().keySet()));
+            Platform.runLater(() -> EventManager.get().post(new CormorantScanStatusEvent("Scanning (0%)", getScanningWallets(), 0, null)));
+            Map<String, ImportDescriptorResult> results = importDescriptors(rescanDescriptors);
+            rescanImports.forEach(descriptorImport -> {
+                descriptorImport.addResults(results);
+                descriptorImport.complete();
+            });
+        } catch(Exception e) {
+            rescanImports.forEach(descriptorImport -> descriptorImport.future().completeExceptionally(e));
+        } finally {
+            scanningLock.unlock();
+            Set<Wallet> scanningWallets = getScanningWallets();
+            Platform.runLater(() -> EventManager.get().post(new CormorantScanStatusEvent("Scanning completed", scanningWallets, 100, Duration.ZERO)));
+            scanningDescriptors.clear();
+        }
+    }
+
+    private List<DescriptorImport> drainPendingImports() {
+        List<DescriptorImport> descriptorImports = new ArrayList<>();
+        DescriptorImport descriptorImport;
+        while((descriptorImport = pendingImports.poll()) != null) {
+            descriptorImports.add(descriptorImport);
+        }
+
+        return descriptorImports;
+    }
+
+    private List<DescriptorImport> importWithoutRescan(List<DescriptorImport> descriptorImports) {
+        Map<String, ScanDate> descriptors = new LinkedHashMap<>();
+        descriptorImports.forEach(descriptorImport -> descriptors.putAll(descriptorImport.getNonRescanDescriptors()));
+
+        if(!descriptors.isEmpty()) {
+            try {
+                Map<String, ImportDescriptorResult> results = importDescriptors(descriptors);
+                descriptorImports.forEach(descriptorImport -> descriptorImport.addResults(results));
+            } catch(Exception e) {
+                descriptorImports.forEach(descriptorImport -> descriptorImport.future().completeExceptionally(e));
+                return new ArrayList<>();
+            }
+        }
+
+        List<DescriptorImport> rescanImports = new ArrayList<>();
+        for(DescriptorImport descriptorImport : descriptorImports) {
+            if(descriptorImport.getRescanDescriptors().isEmpty()) {
+                descriptorImport.complete();
+            } else {
+                rescanImports.add(descriptorImport);
+            }
+        }
+
+        return rescanImports;
+    }
+
+    private Map<String, ImportDescriptorResult> importDescriptors(Map<String, ScanDate> descriptors) {
+        log.debug("Importing descriptors " + descriptors);
+
+        List<ImportDescriptor> importDescriptors = descriptors.entrySet().stream()
+                .map(entry -> {
+                    ScanDate scanDate = entry.getValue();
+                    if(entry.getKey().contains("/0/*")) {
+                        return new ImportRangedDescriptor(entry.getKey(), true, scanDate.range(), scanDate.getTimestamp(), false);
+                    } else if(entry.getKey().contains("/1/*")) {
+                        return new ImportRangedDescriptor(entry.getKey(), false, scanDate.range(), scanDate.getTimestamp(), true);
+                    }
+                    return new ImportDescriptor(entry.getKey(), false, entry.getValue().getTimestamp(), true);
+                }).toList();
+
+        List<ImportDescriptorResult> results = getBitcoindService().importDescriptors(importDescriptors);
+
+        Map<String, ImportDescriptorResult> descriptorResults = new HashMap<>();
+        for(int i = 0; i < importDescriptors.size(); i++) {
+            descriptorResults.put(importDescriptors.get(i).getDesc(), results.get(i));
+        }
+
+        return descriptorResults;
+    }
+
     public void stop() {
         timer.cancel();
+        zmqSubscribers.forEach(ZmqSubscriber::close);
+        importExecutor.shutdown();
+        if(checkpointScheduled.get()) {
+            checkpointExecutor.submit(this::saveCheckpoint);
+        }
+        checkpointExecutor.shutdown();
         pruneWarnedDescriptors.clear();
         stopped = true;
+
+        if(log.isDebugEnabled()) {
+            bitcoindTransport.getLatencyStats().forEach((method, latencyStats) -> log.debug("Bitcoin Core RPC " + method + ": " + latencyStats));
+        }
+        bitcoindTransport.close();
     }
 
     private void updateStore(ListSinceBlock listSinceBlock, Set<String> descriptors) {
@@ -477,9 +741,12 @@ public class BitcoindClient {
             }
         }
 
+        Set<String> unresolvedTxids = sentTransactions.stream().map(ListTransaction::txid).filter(txid -> !store.getSpentOutputs().containsKey(txid)).collect(Collectors.toCollection(LinkedHashSet::new));
+        Map<String, String> unresolvedTransactions = getTransactions(unresolvedTxids);
+
         for(ListTransaction sentTransaction : sentTransactions) {
             Set<HashIndex> spentOutputs = store.getSpentOutputs().computeIfAbsent(sentTransaction.txid(), txid -> {
-                String txhex = getTransaction(txid);
+                String txhex = unresolvedTransactions.containsKey(txid) ? unresolvedTransactions.get(txid) : getTransaction(txid);
                 Transaction tx = new Transaction(Utils.hexToBytes(txhex));
                 return tx.getInputs().stream().map(txInput -> new HashIndex(txInput.getOutpoint().getHash(), txInput.getOutpoint().getIndex())).collect(Collectors.toSet());
             });
@@ -501,16 +768,60 @@ public class BitcoindClient {
             }
         }
 
-        syncMempool(!listSinceBlock.lastblock().equals(lastBlock));
+        boolean blockChanged = !listSinceBlock.lastblock().equals(lastBlock);
+        syncMempool(blockChanged);
         updatedScriptHashes.addAll(store.updateMempoolTransactions());
 
         lastBlock = listSinceBlock.lastblock();
 
+        //Checkpoint the confirmed index whenever it may have changed
+        if(blockChanged || listSinceBlock.transactions().stream().anyMatch(lt -> lt.confirmations() > 0) || !listSinceBlock.removed().isEmpty()) {
+            scheduleCheckpoint();
+        }
+
         for(String updatedScriptHash : updatedScriptHashes) {
             Cormorant.getEventBus().post(new ScriptHashStatus(updatedScriptHash, store.getStatus(updatedScriptHash)));
         }
     }
 
+    private void scheduleCheckpoint() {
+        if(!stopped && checkpointScheduled.compareAndSet(false, true)) {
+            long delay = Math.max(0, lastCheckpointTime + CHECKPOINT_INTERVAL_MILLIS - System.currentTimeMillis());
+            try {
+                timer.schedule(new TimerTask() {
+                    @Override
+                    public void run() {
+                        try {
+                            checkpointExecutor.submit(BitcoindClient.this::saveCheckpoint);
+                        } catch(RejectedExecutionException e) {
+                            //Client has been stopped
+                        }
+                    }
+                }, delay);
+            } catch(IllegalStateException e) {
+                //Timer has been cancelled
+                checkpointScheduled.set(false);
+            }
+        }
+    }
+
+    private void saveCheckpoint() {
+        StoreCheckpoint.Snapshot snapshot;
+        synchronized(this) {
+            if(!checkpointScheduled.getAndSet(false) || lastBlock == null) {
+                return;
+            }
+
+            //Only the copy of the index is taken under the update lock, compression and disk writes happen afterwards
+            snapshot = storeCheckpoint.snapshot(store, lastBlock);
+        }
+
+        if(snapshot != null) {
+            storeCheckpoint.save(snapshot);
+        }
+        lastCheckpointTime = System.currentTimeMillis();
+    }
+
     private String getTransaction(String txid) {
         try {
             return getBitcoindService().getTransaction(txid, true, false).get("hex").toString();
@@ -519,17 +830,84 @@ public class BitcoindClient {
         }
     }
 
+    /**
+     * Fetches raw transactions in batches, using gettransaction for wallet transactions and falling back to getrawtransaction.
+     * Transactions that cannot be found are omitted from the result.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, String> getTransactions(Collection<String> txids) {
+        Map<String, String> transactions = new HashMap<>();
+        for(List<String> batch : Lists.partition(new ArrayList<>(txids), MAX_BATCH_SIZE)) {
+            Map<String, Object> results = executeBatch(batch, "gettransaction", txid -> new Object[] {txid, true, false});
+            for(Map.Entry<String, Object> result : results.entrySet()) {
+                transactions.put(result.getKey(), ((Map<String, Object>)result.getValue()).get("hex").toString());
+            }
+
+            List<String> missing = batch.stream().filter(txid -> !transactions.containsKey(txid)).toList();
+            if(!missing.isEmpty()) {
+                executeBatch(missing, "getrawtransaction", txid -> new Object[] {txid, false}).forEach((txid, txhex) -> transactions.put(txid, txhex.toString()));
+            }
+        }
+
+        return transactions;
+    }
+
+    /**
+     * Fetches mempool entries in batches. Transactions no longer in the mempool are omitted from the result.
+     */
+    private Map<String, MempoolEntry> getMempoolEntries(Collection<String> txids) {
+        Map<String, MempoolEntry> entries = new HashMap<>();
+        for(List<String> batch : Lists.partition(new ArrayList<>(txids), MAX_BATCH_SIZE)) {
+            entries.putAll(executeBatch(batch, "getmempoolentry", MempoolEntry.class, txid -> new Object[] {txid}));
+        }
+
+        return entries;
+    }
+
+    private Map<String, Object> executeBatch(List<String> keys, String method, Function<String, Object[]> params) {
+        return executeBatch(keys, method, Object.class, params);
+    }
+
+    /**
+     * Executes a single JSON-RPC batch keyed by txid or block height, returning only the successful results
+     */
+    private <V> Map<String, V> executeBatch(List<String> keys, String method, Class<V> returnType, Function<String, Object[]> params) {
+        Map<String, V> results = new HashMap<>();
+        if(keys.isEmpty()) {
+            return results;
+        }
+
+        List<BatchRequest> requests = keys.stream().map(key -> new BatchRequest("2.0", key, method, params.apply(key))).toList();
+        try {
+            String response = bitcoindTransport.pass(BATCH_MAPPER.writeValueAsString(requests));
+            List<BatchResponse> responses = BATCH_MAPPER.readValue(response, new TypeReference<>() {});
+            for(BatchResponse batchResponse : responses) {
+                if(batchResponse.isSuccess()) {
+                    results.put(batchResponse.id(), BATCH_MAPPER.treeToValue(batchResponse.result(), returnType));
+                } else if(batchResponse.error() != null && log.isTraceEnabled()) {
+                    log.trace("Error in " + method + " batch for " + batchResponse.id() + ": " + batchResponse.error().message());
+                }
+            }
+        } catch(IOException e) {
+            throw new IllegalStateException("Error executing " + method + " batch", e);
+        }
+
+        return results;
+    }
+
+    private record BatchRequest(String jsonrpc, String id, String method, Object[] params) {}
+
     private void syncMempool(boolean forceRefresh) {
         Map<String, MempoolEntry> mempoolEntries = store.getMempoolEntries();
 
-        for(String txid : new HashSet<>(mempoolEntries.keySet())) {
-            if(forceRefresh || mempoolEntries.get(txid) == null) {
-                try {
-                    MempoolEntry mempoolEntry = getBitcoindService().getMempoolEntry(txid);
-                    mempoolEntries.put(txid, mempoolEntry);
-                } catch(JsonRpcException e) {
-                    mempoolEntries.remove(txid);
-                }
+        Set<String> refreshTxids = mempoolEntries.entrySet().stream().filter(entry -> forceRefresh || entry.getValue() == null).map(Map.Entry::getKey).collect(Collectors.toSet());
+        Map<String, MempoolEntry> refreshedEntries = getMempoolEntries(refreshTxids);
+        for(String txid : refreshTxids) {
+            MempoolEntry mempoolEntry = refreshedEntries.get(txid);
+            if(mempoolEntry != null) {
+                mempoolEntries.put(txid, mempoolEntry);
+            } else {
+                mempoolEntries.remove(txid);
             }
         }
     }
@@ -593,17 +971,12 @@ public class BitcoindClient {
             //Fast system, fetch all mempool data at once
             Map<Sha256Hash, VsizeFeerate> entries = getBitcoindService().getRawMempool(true).entrySet().stream()
                     .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().getVsizeFeerate(), (u, v) -> u, HashMap::new));
-            mempoolEntries.putAll(entries);
+            mempoolFeerates.putAll(entries);
         } else {
-            //Slow system, fetch mempool entries one-by-one to avoid risking a node crash
-            for(Sha256Hash txid : txids) {
-                try {
-                    MempoolEntry mempoolEntry = getBitcoindService().getMempoolEntry(txid.toString());
-                    mempoolEntries.put(txid, mempoolEntry.getVsizeFeerate());
-                } catch(JsonRpcException e) {
-                    //ignore, probably tx has been removed from mempool
-                }
-            }
+            //Slow system, fetch mempool entries in bounded batches to avoid risking a node crash
+            //Transactions that have since been removed from the mempool are omitted
+            getMempoolEntries(txids.stream().map(Sha256Hash::toString).toList())
+                    .forEach((txid, mempoolEntry) -> mempoolFeerates.put(Sha256Hash.wrap(txid), mempoolEntry.getVsizeFeerate()));
         }
 
         mempoolEntriesState = MempoolEntriesState.INITIALIZED;
@@ -612,22 +985,24 @@ public class BitcoindClient {
     public void updateMempoolEntries() {
         Set<Sha256Hash> txids = getBitcoindService().getRawMempool();
 
-        Set<Sha256Hash> removed = new HashSet<>(Sets.difference(mempoolEntries.keySet(), txids));
-        mempoolEntries.keySet().removeAll(removed);
+        mempoolFeerates.retainAll(txids);
 
-        Set<Sha256Hash> added = Sets.difference(txids, mempoolEntries.keySet());
-        for(Sha256Hash txid : added) {
-            try {
-                MempoolEntry mempoolEntry = getBitcoindService().getMempoolEntry(txid.toString());
-                mempoolEntries.put(txid, mempoolEntry.getVsizeFeerate());
-            } catch(JsonRpcException e) {
-                //ignore, probably tx has been removed from mempool
-            }
-        }
+        List<Sha256Hash> added = txids.stream().filter(txid -> !mempoolFeerates.containsKey(txid)).toList();
+        getMempoolEntries(added.stream().map(Sha256Hash::toString).toList())
+                .forEach((txid, mempoolEntry) -> mempoolFeerates.put(Sha256Hash.wrap(txid), mempoolEntry.getVsizeFeerate()));
     }
 
-    public Map<Sha256Hash, VsizeFeerate> getMempoolEntries() {
-        return mempoolEntries;
+    private void addPendingMempoolEntries() {
+        List<Sha256Hash> txids = new ArrayList<>(pendingMempoolTxids);
+        pendingMempoolTxids.removeAll(txids);
+        txids.removeIf(mempoolFeerates::containsKey);
+
+        getMempoolEntries(txids.stream().map(Sha256Hash::toString).toList())
+                .forEach((txid, mempoolEntry) -> mempoolFeerates.put(Sha256Hash.wrap(txid), mempoolEntry.getVsizeFeerate()));
+    }
+
+    public MempoolFeerates getMempoolFeerates() {
+        return mempoolFeerates;
     }
 
     public MempoolEntriesState getMempoolEntriesState() {
@@ -646,6 +1021,10 @@ public class BitcoindClient {
         return store;
     }
 
+    public BitcoindTransport getBitcoindTransport() {
+        return bitcoindTransport;
+    }
+
     public BitcoindClientService getBitcoindService() {
         return jsonRpcClient.onDemand(BitcoindClientService.class);
     }
@@ -654,17 +1033,110 @@ public class BitcoindClient {
         return networkInfo;
     }
 
+    /**
+     * Returns the raw block header at the given height as hex, from the header cache where possible
+     */
+    public String getBlockHeader(int height) {
+        byte[] header = blockHeaderCache.get(height);
+        if(header != null) {
+            return Utils.bytesToHex(header);
+        }
+
+        String blockHash = store.getBlockHash(height);
+        if(blockHash == null) {
+            blockHash = getBitcoindService().getBlockHash(height);
+        }
+
+        String headerHex = getBitcoindService().getBlockHeader(blockHash, false);
+        blockHeaderCache.put(height, Utils.hexToBytes(headerHex));
+        return headerHex;
+    }
+
+    /**
+     * Returns up to count consecutive raw block headers as hex from the start height, stopping at the chain tip or the first header that cannot be retrieved.
+     * Headers that are not cached are fetched with batched getblockhash and getblockheader calls.
+     */
+    public List<String> getBlockHeaders(int startHeight, int count) {
+        int endHeight = startHeight + count - 1;
+        if(tip != null) {
+            endHeight = Math.min(endHeight, tip.height());
+        }
+
+        Map<Integer, byte[]> headers = new HashMap<>();
+        List<String> missingHeights = new ArrayList<>();
+        for(int height = startHeight; height <= endHeight; height++) {
+            byte[] header = blockHeaderCache.get(height);
+            if(header != null) {
+                headers.put(height, header);
+            } else {
+                missingHeights.add(Integer.toString(height));
+            }
+        }
+
+        for(List<String> batch : Lists.partition(missingHeights, MAX_BATCH_SIZE)) {
+            Map<String, String> blockHashes = new HashMap<>();
+            List<String> unknownHeights = new ArrayList<>();
+            for(String height : batch) {
+                String blockHash = store.getBlockHash(Integer.parseInt(height));
+                if(blockHash != null) {
+                    blockHashes.put(height, blockHash);
+                } else {
+                    unknownHeights.add(height);
+                }
+            }
+
+            executeBatch(unknownHeights, "getblockhash", height -> new Object[] {Integer.parseInt(height)})
+                    .forEach((height, blockHash) -> blockHashes.put(height, blockHash.toString()));
+            executeBatch(new ArrayList<>(blockHashes.keySet()), "getblockheader", height -> new Object[] {blockHashes.get(height), false})
+                    .forEach((height, headerHex) -> {
+                        byte[] header = Utils.hexToBytes(headerHex.toString());
+                        blockHeaderCache.put(Integer.parseInt(height), header);
+                        headers.put(Integer.parseInt(height), header);
+                    });
+        }
+
+        List<String> blockHeaders = new ArrayList<>();
+        for(int height = startHeight; height <= endHeight && headers.containsKey(height); height++) {
+            blockHeaders.add(Utils.bytesToHex(headers.get(height)));
+        }
+
+        return blockHeaders;
+    }
+
     public ElectrumBlockHeader getTip() {
         return tip;
     }
 
     private class PollTask extends TimerTask {
+        private final boolean pushed;
+
+        public PollTask() {
+            this(false);
+        }
+
+        public PollTask(boolean pushed) {
+            this.pushed = pushed;
+        }
+
         @Override
         public void run() {
             if(stopped) {
                 timer.cancel();
             }
 
+            boolean pushActive = isPushActive();
+            boolean mempoolRefreshDue = false;
+            if(pushed) {
+                pollRequested.set(false);
+            } else {
+                mempoolRefreshDue = (++timerTaskCount+1) % (pushActive ? PUSH_MEMPOOL_REFRESH_TICKS : MEMPOOL_REFRESH_TICKS) == 0;
+
+                //While ZMQ notifications are being received, scheduled polls are only a fallback
+                if(pushActive && !syncing && !mempoolRefreshDue && scanningDescriptors.isEmpty() && ++fallbackPollCount % PUSH_FALLBACK_POLL_TICKS != 0) {
+                    return;
+                }
+            }
+
             try {
                 if(syncing) {
                     BlockchainInfo blockchainInfo = getBitcoindService().getBlockchainInfo();
@@ -689,11 +1161,17 @@ public class BitcoindClient {
                     if(!lastBlock.equals(blockhash)) {
                         log.warn("Reorg detected, block height " + tip.height() + " was " + lastBlock + " and now is " + blockhash);
                         lastBlock = null;
+                        blockHeaderCache.invalidateFrom(Math.max(0, tip.height() - REORG_INVALIDATION_DEPTH));
                     }
                 }
 
-                if(mempoolEntriesState == MempoolEntriesState.INITIALIZED && (++timerTaskCount+1) % 12 == 0) {
-                    updateMempoolEntries();
+                if(mempoolEntriesState == MempoolEntriesState.INITIALIZED) {
+                    if(mempoolRefreshDue || mempoolResyncRequired) {
+                        mempoolResyncRequired = false;
+                        updateMempoolEntries();
+                    } else if(!pendingMempoolTxids.isEmpty()) {
+                        addPendingMempoolEntries();
+                    }
                 }
 
                 ListSinceBlock listSinceBlock = getListSinceBlock(lastBlock);
@@ -735,6 +1213,77 @@ public class BitcoindClient {
         }
     }
 
+    private class ZmqListener implements ZmqSubscriber.Listener {
+        @Override
+        public void onConnected() {
+            //Catch up on anything missed while disconnected
+            mempoolResyncRequired = true;
+            requestPoll();
+        }
+
+        @Override
+        public void onMessage(String topic, byte[] body, boolean sequenceGap) {
+            //Missed notifications can only be recovered by polling
+            boolean poll = sequenceGap;
+            if(sequenceGap) {
+                mempoolResyncRequired = true;
+            }
+
+            //Sequence notifications are the 32 byte hash, a label and for mempool changes an 8 byte mempool sequence number
+            if(ZMQ_SEQUENCE.equals(topic) && body.length >= 33) {
+                Sha256Hash hash = Sha256Hash.wrap(Arrays.copyOfRange(body, 0, 32));
+                char label = (char)body[32];
+                if(label == 'C' || label == 'D') {
+                    poll = true;
+                } else if(label == 'A') {
+                    if(mempoolEntriesState != MempoolEntriesState.UNINITIALIZED) {
+                        pendingMempoolTxids.add(hash);
+                    }
+                    requestWalletCheck(hash);
+                } else if(label == 'R') {
+                    pendingMempoolTxids.remove(hash);
+                    mempoolFeerates.remove(hash);
+                    poll |= store.containsTransaction(hash.toString());
+                }
+            } else if(ZMQ_HASHBLOCK.equals(topic)) {
+                poll = true;
+            } else if(ZMQ_HASHTX.equals(topic) && body.length == 32) {
+                Sha256Hash txid = Sha256Hash.wrap(body);
+                if(store.containsTransaction(txid.toString())) {
+                    poll = true;
+                } else {
+                    requestWalletCheck(txid);
+                }
+            }
+
+            if(poll) {
+                requestPoll();
+            }
+        }
+    }
+
+    private class WalletCheckTask extends TimerTask {
+        @Override
+        public void run() {
+            walletCheckRequested.set(false);
+            List<String> txids = new ArrayList<>(pendingWalletCheckTxids);
+            pendingWalletCheckTxids.removeAll(txids);
+
+            try {
+                //gettransaction only succeeds for transactions that involve the wallet's descriptors
+                for(List<String> batch : Lists.partition(txids, MAX_BATCH_SIZE)) {
+                    if(!executeBatch(batch, "gettransaction", txid -> new Object[] {txid, true, false}).isEmpty()) {
+                        requestPoll();
+                        return;
+                    }
+                }
+            } catch(Exception e) {
+                log.debug("Error checking mempool transactions against the wallet, polling instead", e);
+                requestPoll();
+            }
+        }
+    }
+
     private Set<Wallet> getScanningWallets() {
         Set<Wallet> scanningWallets = new HashSet<>();
         Set<Wallet> openWallets = AppServices.get().getOpenWallets().keySet();
@@ -758,6 +1307,35 @@ public class BitcoindClient {
         }
     }
 
+    private record DescriptorImport(Map<String, ScanDate> descriptors, Map<String, ImportDescriptorResult> results, CompletableFuture<Map<String, ImportDescriptorResult>> future) {
+        public DescriptorImport(Map<String, ScanDate> descriptors) {
+            this(descriptors, new HashMap<>(), new CompletableFuture<>());
+        }
+
+        public Map<String, ScanDate> getNonRescanDescriptors() {
+            return descriptors.entrySet().stream().filter(entry -> entry.getValue().rescanSince() == null)
+                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (u, v) -> u, LinkedHashMap::new));
+        }
+
+        public Map<String, ScanDate> getRescanDescriptors() {
+            return descriptors.entrySet().stream().filter(entry -> entry.getValue().rescanSince() != null)
+                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (u, v) -> u, LinkedHashMap::new));
+        }
+
+        public void addResults(Map<String, ImportDescriptorResult> importResults) {
+            for(String descriptor : descriptors.keySet()) {
+                ImportDescriptorResult result = importResults.get(descriptor);
+                if(result != null) {
+                    results.put(descriptor, result);
+                }
+            }
+        }
+
+        public void complete() {
+            future.complete(results);
+        }
+    }
+
     public class InitializeMempoolEntriesService extends Service<Void> {
         @Override
         protected Task<Void> createTask() {
@@ -61,6 +61,9 @@ public interface BitcoindClientService {
     @JsonRpcMethod("getmempoolentry")
     MempoolEntry getMempoolEntry(@JsonRpcParam("txid") String txid);
 
+    @JsonRpcMethod("getzmqnotifications")
+    List<ZmqNotification> getZmqNotifications();
+
     @JsonRpcMethod("listsinceblock")
     ListSinceBlock listSinceBlock(@JsonRpcParam("blockhash") @JsonRpcOptional String blockhash, @JsonRpcParam("target_confirmations") int targetConfirmations,
                                   @JsonRpcParam("include_watchonly") boolean includeWatchOnly, @JsonRpcParam("include_removed") boolean includeRemoved,
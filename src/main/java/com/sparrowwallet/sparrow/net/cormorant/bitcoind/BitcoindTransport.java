@@ -11,19 +11,36 @@ import org.slf4j.LoggerFactory;
 import javax.net.ssl.*;
 import java.io.*;
 import java.net.*;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 public class BitcoindTransport implements Transport {
     private static final Logger log = LoggerFactory.getLogger(BitcoindTransport.class);
     public static final String COOKIE_FILENAME = ".cookie";
 
+    private static final Pattern METHOD_PATTERN = Pattern.compile("\"method\"\\s*:\\s*\"([^\"]+)\"");
+
     private final Server bitcoindServer;
-    private URL bitcoindUrl;
+    private final Map<String, LatencyStats> latencyStats = new ConcurrentHashMap<>();
+    private final ExecutorService proxiedExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private URI bitcoindUri;
+    private volatile HttpClient httpClient;
+    private volatile SSLContext trustAllSSLContext;
     private File cookieFile;
     private Long cookieFileTimestamp;
     private String bitcoindAuthEncoded;
@@ -45,21 +62,105 @@ public class BitcoindTransport implements Transport {
             if(!bitcoindServer.getHostAndPort().hasPort()) {
                 serverUrl += ":" + Network.get().getDefaultPort();
             }
-            this.bitcoindUrl = new URI(serverUrl + "/wallet/" + bitcoindWallet).toURL();
-        } catch(MalformedURLException | URISyntaxException e) {
+            this.bitcoindUri = new URI(serverUrl + "/wallet/" + bitcoindWallet);
+        } catch(URISyntaxException e) {
             log.error("Malformed Bitcoin Core RPC URL", e);
         }
     }
 
     @Override
     public String pass(String request) throws IOException {
+        try {
+            return passAsync(request).join();
+        } catch(CompletionException e) {
+            if(e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            } else if(e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Sends a request without blocking the calling thread. Requests are sent over pooled keep-alive connections where possible,
+     * so concurrent callers do not each pay the cost of connection setup.
+     */
+    public CompletableFuture<String> passAsync(String request) {
+        String method = getMethod(request);
+        long start = System.nanoTime();
+
         Proxy proxy = AppServices.getProxy();
-        HttpURLConnection connection = proxy != null && Protocol.isOnionAddress(bitcoindServer) ? (HttpURLConnection)bitcoindUrl.openConnection(proxy) : (HttpURLConnection)bitcoindUrl.openConnection();
+        CompletableFuture<String> future;
+        if(proxy != null && Protocol.isOnionAddress(bitcoindServer)) {
+            //HttpClient does not support SOCKS proxies, so fall back to HttpURLConnection
+            future = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return passProxied(request, proxy);
+                } catch(IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, proxiedExecutor);
+        } else {
+            HttpRequest httpRequest;
+            try {
+                httpRequest = getHttpRequest(request);
+            } catch(IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+
+            log.debug("> " + request);
+            future = getHttpClient().sendAsync(httpRequest, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+                    .thenApply(httpResponse -> {
+                        if(httpResponse.statusCode() == 401) {
+                            throw new CompletionException(getAuthenticationException());
+                        }
+
+                        return getResponse(request, httpResponse.statusCode(), httpResponse.body().lines());
+                    });
+        }
+
+        return future.whenComplete((response, throwable) -> latencyStats.computeIfAbsent(method, k -> new LatencyStats()).record(System.nanoTime() - start));
+    }
+
+    private HttpRequest getHttpRequest(String request) throws IOException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(bitcoindUri)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(request, StandardCharsets.UTF_8));
+
+        String auth = getBitcoindAuthEncoded();
+        if(auth != null) {
+            builder.header("Authorization", "Basic " + auth);
+        }
+
+        return builder.build();
+    }
+
+    private HttpClient getHttpClient() {
+        if(httpClient == null) {
+            synchronized(this) {
+                if(httpClient == null) {
+                    HttpClient.Builder builder = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).proxy(HttpClient.Builder.NO_PROXY);
+                    SSLContext sslContext = getTrustAllSSLContext();
+                    if(sslContext != null) {
+                        builder.sslContext(sslContext);
+                    }
+                    httpClient = builder.build();
+                }
+            }
+        }
+
+        return httpClient;
+    }
+
+    private String passProxied(String request, Proxy proxy) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection)bitcoindUri.toURL().openConnection(proxy);
 
         if(connection instanceof HttpsURLConnection httpsURLConnection) {
-            SSLSocketFactory sslSocketFactory = getTrustAllSocketFactory();
-            if(sslSocketFactory != null) {
-                httpsURLConnection.setSSLSocketFactory(sslSocketFactory);
+            SSLContext sslContext = getTrustAllSSLContext();
+            if(sslContext != null) {
+                httpsURLConnection.setSSLSocketFactory(sslContext.getSocketFactory());
             }
         }
 
@@ -82,21 +183,26 @@ public class BitcoindTransport implements Transport {
 
         int statusCode = connection.getResponseCode();
         if(statusCode == 401) {
-            throw new IOException((cookieFile == null ? "User/pass" : "Cookie file") + " authentication failed");
+            throw getAuthenticationException();
         }
         InputStream inputStream = connection.getErrorStream() == null ? connection.getInputStream() : connection.getErrorStream();
 
-        StringBuilder res = new StringBuilder();
         try(BufferedReader br = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
-            String responseLine;
-            while((responseLine = br.readLine()) != null) {
-                if(statusCode == 500) {
-                    responseLine = responseLine.replace("\"result\":null,", "");
-                }
+            return getResponse(request, statusCode, br.lines());
+        }
+    }
 
-                res.append(responseLine.trim());
+    private String getResponse(String request, int statusCode, Stream<String> lines) {
+        StringBuilder res = new StringBuilder();
+        //Batch responses are returned as is, each element is parsed as a BatchResponse with a nullable result and error
+        boolean batch = request.startsWith("[");
+        lines.forEach(responseLine -> {
+            if(statusCode == 500 && !batch) {
+                responseLine = responseLine.replace("\"result\":null,", "");
             }
-        }
+
+            res.append(responseLine.trim());
+        });
 
         String response = res.toString();
         log.debug("< " + response);
@@ -104,7 +210,34 @@ public class BitcoindTransport implements Transport {
         return response;
     }
 
-    private String getBitcoindAuthEncoded() throws IOException {
+    private IOException getAuthenticationException() {
+        return new IOException((cookieFile == null ? "User/pass" : "Cookie file") + " authentication failed");
+    }
+
+    private static String getMethod(String request) {
+        if(request.startsWith("[")) {
+            return "batch";
+        }
+
+        Matcher matcher = METHOD_PATTERN.matcher(request);
+        return matcher.find() ? matcher.group(1) : "unknown";
+    }
+
+    /**
+     * Returns the request latencies recorded so far, keyed by RPC method name. Batch requests are recorded under "batch".
+     */
+    public Map<String, LatencyStats> getLatencyStats() {
+        return Collections.unmodifiableMap(latencyStats);
+    }
+
+    public void close() {
+        if(httpClient != null) {
+            httpClient.shutdown();
+        }
+        proxiedExecutor.shutdown();
+    }
+
+    private synchronized String getBitcoindAuthEncoded() throws IOException {
         if(cookieFile != null) {
             if(!cookieFile.exists()) {
                 throw new IOException("Cannot find Bitcoin Core cookie file at " + cookieFile.getAbsolutePath());
@@ -138,7 +271,11 @@ public class BitcoindTransport implements Transport {
         return bitcoindDir;
     }
 
-    private SSLSocketFactory getTrustAllSocketFactory() {
+    private SSLContext getTrustAllSSLContext() {
+        if(trustAllSSLContext != null) {
+            return trustAllSSLContext;
+        }
+
         TrustManager[] trustAllCerts = new TrustManager[] {
             new X509TrustManager() {
                 public X509Certificate[] getAcceptedIssuers() {
@@ -156,11 +293,41 @@ public class BitcoindTransport implements Transport {
         try {
             SSLContext sslContext = SSLContext.getInstance("TLS");
             sslContext.init(null, trustAllCerts, null);
-            return sslContext.getSocketFactory();
+            trustAllSSLContext = sslContext;
         } catch (Exception e) {
-            log.error("Error creating SSL socket factory", e);
+            log.error("Error creating SSL context", e);
+        }
+
+        return trustAllSSLContext;
+    }
+
+    public static class LatencyStats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+
+        private void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
         }
 
-        return null;
+        public long getCount() {
+            return count.sum();
+        }
+
+        public double getMeanMillis() {
+            long requests = count.sum();
+            return requests == 0 ? 0d : totalNanos.sum() / (requests * 1_000_000d);
+        }
+
+        public double getMaxMillis() {
+            return maxNanos.get() / 1_000_000d;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d requests, mean %.1fms, max %.1fms", getCount(), getMeanMillis(), getMaxMillis());
+        }
     }
 }
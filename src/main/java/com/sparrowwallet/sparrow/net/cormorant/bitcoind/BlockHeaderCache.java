@@ -0,0 +1,35 @@
+package com.sparrowwallet.sparrow.net.cormorant.bitcoind;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, least recently used cache of raw 80 byte block headers by height.
+ * Entries at and above a height are invalidated when a reorg is detected.
+ */
+public class BlockHeaderCache {
+    private static final int MAX_SIZE = 20000;
+
+    private final Map<Integer, byte[]> headers = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+
+    public synchronized byte[] get(int height) {
+        return headers.get(height);
+    }
+
+    public synchronized void put(int height, byte[] header) {
+        headers.put(height, header);
+    }
+
+    public synchronized void invalidateFrom(int height) {
+        headers.keySet().removeIf(cachedHeight -> cachedHeight >= height);
+    }
+
+    public synchronized void clear() {
+        headers.clear();
+    }
+}
@@ -0,0 +1,93 @@
+package com.sparrowwallet.sparrow.net.cormorant.bitcoind;
+
+import com.sparrowwallet.drongo.protocol.Sha256Hash;
+
+import java.util.*;
+
+/**
+ * The vsize and feerate of each transaction in the mempool, with the total vsize at each feerate maintained as entries are added and removed.
+ * As feerates are rounded to 0.1 sats/vB the number of distinct feerates is small, so the fee histogram can be built without sorting the mempool.
+ */
+public class MempoolFeerates {
+    private final Map<Sha256Hash, VsizeFeerate> entries = new HashMap<>();
+    private final TreeMap<Double, Long> vsizeByFeerate = new TreeMap<>(Comparator.reverseOrder());
+    private List<List<Number>> histogram;
+    private long histogramBinWidth;
+
+    public synchronized void put(Sha256Hash txid, VsizeFeerate vsizeFeerate) {
+        VsizeFeerate previous = entries.put(txid, vsizeFeerate);
+        if(previous != null) {
+            subtract(previous);
+        }
+
+        vsizeByFeerate.merge(vsizeFeerate.getFeerate(), (long)vsizeFeerate.getVsize(), Long::sum);
+        histogram = null;
+    }
+
+    public synchronized void putAll(Map<Sha256Hash, VsizeFeerate> vsizeFeerates) {
+        vsizeFeerates.forEach(this::put);
+    }
+
+    public synchronized void remove(Sha256Hash txid) {
+        VsizeFeerate previous = entries.remove(txid);
+        if(previous != null) {
+            subtract(previous);
+            histogram = null;
+        }
+    }
+
+    public synchronized void retainAll(Set<Sha256Hash> txids) {
+        for(Iterator<Map.Entry<Sha256Hash, VsizeFeerate>> iter = entries.entrySet().iterator(); iter.hasNext(); ) {
+            Map.Entry<Sha256Hash, VsizeFeerate> entry = iter.next();
+            if(!txids.contains(entry.getKey())) {
+                iter.remove();
+                subtract(entry.getValue());
+                histogram = null;
+            }
+        }
+    }
+
+    public synchronized boolean containsKey(Sha256Hash txid) {
+        return entries.containsKey(txid);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void subtract(VsizeFeerate vsizeFeerate) {
+        vsizeByFeerate.computeIfPresent(vsizeFeerate.getFeerate(), (feerate, vsize) -> vsize == vsizeFeerate.getVsize() ? null : vsize - vsizeFeerate.getVsize());
+    }
+
+    /**
+     * Returns the fee histogram as pairs of feerate and the vsize of transactions paying at least that feerate since the previous pair,
+     * with each bin holding more than the given vsize where possible. The result is cached until the mempool changes.
+     */
+    public synchronized List<List<Number>> getHistogram(long binWidth) {
+        if(histogram != null && histogramBinWidth == binWidth) {
+            return histogram;
+        }
+
+        List<List<Number>> bins = new ArrayList<>();
+        long binSize = 0;
+        double lastFeerate = 0.0;
+
+        for(Map.Entry<Double, Long> entry : vsizeByFeerate.entrySet()) {
+            if(binSize > binWidth && Math.abs(lastFeerate - entry.getKey()) > 0.0d) {
+                // vsize of transactions paying >= last_feerate
+                bins.add(List.of(lastFeerate, binSize));
+                binSize = 0;
+            }
+            binSize += entry.getValue();
+            lastFeerate = entry.getKey();
+        }
+
+        if(binSize > 0) {
+            bins.add(List.of(lastFeerate, binSize));
+        }
+
+        histogram = Collections.unmodifiableList(bins);
+        histogramBinWidth = binWidth;
+        return histogram;
+    }
+}
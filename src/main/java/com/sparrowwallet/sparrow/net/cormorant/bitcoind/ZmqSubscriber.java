@@ -0,0 +1,306 @@
+package com.sparrowwallet.sparrow.net.cormorant.bitcoind;
+
+import com.google.common.net.HostAndPort;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A minimal ZeroMQ SUB socket for receiving Bitcoin Core ZMQ notifications, speaking ZMTP 3.0 with the NULL security mechanism over TCP.
+ * Each Bitcoin Core notification is a three part message of topic, body and a 4 byte little endian sequence number.
+ * The subscriber reconnects with a backoff until closed, and reports gaps in the per topic sequence numbers so that missed notifications can be recovered by polling.
+ * When the publisher supports ZMTP 3.1, an idle connection is checked with a PING heartbeat, and treated as disconnected if nothing is received in reply.
+ */
+public class ZmqSubscriber implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(ZmqSubscriber.class);
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final int MAX_RECONNECT_DELAY_SECS = 60;
+    private static final long MAX_FRAME_SIZE = 64 * 1024 * 1024;
+    private static final int HEARTBEAT_INTERVAL_MILLIS = 30000;
+
+    private static final int FLAG_MORE = 0x01;
+    private static final int FLAG_LONG = 0x02;
+    private static final int FLAG_COMMAND = 0x04;
+
+    private final HostAndPort hostAndPort;
+    private final Set<String> topics;
+    private final Listener listener;
+    private final int heartbeatIntervalMillis;
+    private final Map<String, Long> lastSequences = new HashMap<>();
+
+    private volatile Socket socket;
+    private volatile boolean connected;
+    private volatile boolean closed;
+
+    public ZmqSubscriber(HostAndPort hostAndPort, Set<String> topics, Listener listener) {
+        this(hostAndPort, topics, listener, HEARTBEAT_INTERVAL_MILLIS);
+    }
+
+    ZmqSubscriber(HostAndPort hostAndPort, Set<String> topics, Listener listener, int heartbeatIntervalMillis) {
+        this.hostAndPort = hostAndPort;
+        this.topics = topics;
+        this.listener = listener;
+        this.heartbeatIntervalMillis = heartbeatIntervalMillis;
+    }
+
+    public void start() {
+        Thread.ofVirtual().name("Cormorant ZMQ " + hostAndPort).start(this::run);
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    private void run() {
+        int reconnectDelay = 1;
+        while(!closed) {
+            try(Socket zmqSocket = new Socket()) {
+                socket = zmqSocket;
+                zmqSocket.connect(new InetSocketAddress(hostAndPort.getHost(), hostAndPort.getPort()), CONNECT_TIMEOUT_MILLIS);
+                zmqSocket.setKeepAlive(true);
+                zmqSocket.setSoTimeout(heartbeatIntervalMillis);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(zmqSocket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(zmqSocket.getOutputStream()));
+
+                boolean heartbeats = handshake(in, out);
+                for(String topic : topics) {
+                    byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+                    byte[] subscription = new byte[topicBytes.length + 1];
+                    subscription[0] = 1;
+                    System.arraycopy(topicBytes, 0, subscription, 1, topicBytes.length);
+                    writeFrame(out, 0, subscription);
+                }
+                out.flush();
+
+                lastSequences.clear();
+                connected = true;
+                reconnectDelay = 1;
+                log.debug("Subscribed to " + topics + " at " + hostAndPort);
+                listener.onConnected();
+
+                boolean pingSent = false;
+                while(!closed) {
+                    List<byte[]> message = readMessage(in, out);
+                    if(message == null) {
+                        //Without heartbeat support an idle connection can only be detected by TCP keepalive
+                        if(heartbeats) {
+                            if(pingSent) {
+                                throw new IOException("No reply to heartbeat from " + hostAndPort);
+                            }
+                            writePing(out);
+                            pingSent = true;
+                        }
+                        continue;
+                    }
+
+                    pingSent = false;
+                    if(message.size() >= 2) {
+                        handleMessage(message);
+                    }
+                }
+            } catch(IOException e) {
+                if(!closed) {
+                    log.debug("ZMQ connection to " + hostAndPort + " failed, retrying in " + reconnectDelay + "s", e);
+                }
+            } finally {
+                connected = false;
+                socket = null;
+            }
+
+            if(!closed) {
+                try {
+                    Thread.sleep(reconnectDelay * 1000L);
+                } catch(InterruptedException e) {
+                    return;
+                }
+                reconnectDelay = Math.min(reconnectDelay * 2, MAX_RECONNECT_DELAY_SECS);
+            }
+        }
+    }
+
+    /**
+     * Performs the ZMTP greeting and READY exchange.
+     *
+     * @return whether the publisher supports ZMTP 3.1 heartbeats
+     */
+    private boolean handshake(DataInputStream in, DataOutputStream out) throws IOException {
+        byte[] greeting = new byte[64];
+        greeting[0] = (byte)0xFF;
+        greeting[9] = 0x7F;
+        greeting[10] = 3;
+        greeting[11] = 1;
+        byte[] mechanism = "NULL".getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(mechanism, 0, greeting, 12, mechanism.length);
+        out.write(greeting);
+        out.flush();
+
+        byte[] peerGreeting = new byte[64];
+        in.readFully(peerGreeting);
+        if((peerGreeting[0] & 0xFF) != 0xFF || peerGreeting[9] != 0x7F || peerGreeting[10] < 3) {
+            throw new IOException("Unsupported ZMTP greeting from " + hostAndPort);
+        }
+
+        ByteArrayOutputStream ready = new ByteArrayOutputStream();
+        writeCommandName(ready, "READY");
+        writeProperty(ready, "Socket-Type", "SUB");
+        writeFrame(out, FLAG_COMMAND, ready.toByteArray());
+        out.flush();
+
+        Frame peerReady = readFrame(in, in.readUnsignedByte());
+        if(!peerReady.isCommand()) {
+            throw new IOException("Expected READY command from " + hostAndPort);
+        }
+
+        return peerGreeting[10] > 3 || peerGreeting[11] >= 1;
+    }
+
+    private void handleMessage(List<byte[]> message) {
+        String topic = new String(message.get(0), StandardCharsets.UTF_8);
+        byte[] body = message.get(1);
+
+        boolean gap = false;
+        if(message.size() >= 3 && message.get(2).length == 4) {
+            long sequence = ByteBuffer.wrap(message.get(2)).order(ByteOrder.LITTLE_ENDIAN).getInt() & 0xFFFFFFFFL;
+            Long lastSequence = lastSequences.put(topic, sequence);
+            gap = lastSequence != null && sequence != ((lastSequence + 1) & 0xFFFFFFFFL);
+        }
+
+        try {
+            listener.onMessage(topic, body, gap);
+        } catch(Exception e) {
+            log.warn("Error handling ZMQ " + topic + " notification", e);
+        }
+    }
+
+    /**
+     * Reads the next message, handling any command received instead.
+     *
+     * @return the message parts, which are empty if a command was read, or null if nothing was received within the heartbeat interval
+     */
+    private List<byte[]> readMessage(DataInputStream in, DataOutputStream out) throws IOException {
+        int flags;
+        try {
+            flags = in.readUnsignedByte();
+        } catch(SocketTimeoutException e) {
+            return null;
+        }
+
+        List<byte[]> parts = new ArrayList<>();
+        Frame frame = readFrame(in, flags);
+        if(frame.isCommand()) {
+            handleCommand(frame, out);
+            return parts;
+        }
+
+        parts.add(frame.body);
+        while(frame.hasMore()) {
+            frame = readFrame(in, in.readUnsignedByte());
+            parts.add(frame.body);
+        }
+
+        return parts;
+    }
+
+    private void handleCommand(Frame frame, DataOutputStream out) throws IOException {
+        //A PING has a 2 byte TTL followed by a context that is returned in the PONG
+        if(frame.isCommand("PING") && frame.body.length >= 7) {
+            ByteArrayOutputStream pong = new ByteArrayOutputStream();
+            writeCommandName(pong, "PONG");
+            pong.write(frame.body, 7, frame.body.length - 7);
+            writeFrame(out, FLAG_COMMAND, pong.toByteArray());
+            out.flush();
+        }
+    }
+
+    private void writePing(DataOutputStream out) throws IOException {
+        ByteArrayOutputStream ping = new ByteArrayOutputStream();
+        writeCommandName(ping, "PING");
+        //TTL in tenths of a second after which the publisher may close the connection if it receives nothing further
+        int ttl = Math.min(heartbeatIntervalMillis * 2 / 100, 0xFFFF);
+        ping.write(ttl >>> 8);
+        ping.write(ttl);
+        writeFrame(out, FLAG_COMMAND, ping.toByteArray());
+        out.flush();
+    }
+
+    private Frame readFrame(DataInputStream in, int flags) throws IOException {
+        long size = (flags & FLAG_LONG) != 0 ? in.readLong() : in.readUnsignedByte();
+        if(size < 0 || size > MAX_FRAME_SIZE) {
+            throw new IOException("Invalid ZMTP frame size " + size);
+        }
+
+        byte[] body = new byte[(int)size];
+        in.readFully(body);
+        return new Frame(flags, body);
+    }
+
+    private static void writeFrame(DataOutputStream out, int flags, byte[] body) throws IOException {
+        if(body.length > 255) {
+            out.writeByte(flags | FLAG_LONG);
+            out.writeLong(body.length);
+        } else {
+            out.writeByte(flags);
+            out.writeByte(body.length);
+        }
+        out.write(body);
+    }
+
+    private static void writeCommandName(ByteArrayOutputStream out, String name) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.US_ASCII);
+        out.write(nameBytes.length);
+        out.writeBytes(nameBytes);
+    }
+
+    private static void writeProperty(ByteArrayOutputStream out, String name, String value) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.US_ASCII);
+        byte[] valueBytes = value.getBytes(StandardCharsets.US_ASCII);
+        out.write(nameBytes.length);
+        out.writeBytes(nameBytes);
+        out.writeBytes(ByteBuffer.allocate(4).putInt(valueBytes.length).array());
+        out.writeBytes(valueBytes);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Socket zmqSocket = socket;
+        if(zmqSocket != null) {
+            try {
+                zmqSocket.close();
+            } catch(IOException e) {
+                log.debug("Error closing ZMQ socket", e);
+            }
+        }
+    }
+
+    private record Frame(int flags, byte[] body) {
+        public boolean hasMore() {
+            return (flags & FLAG_MORE) != 0;
+        }
+
+        public boolean isCommand() {
+            return (flags & FLAG_COMMAND) != 0;
+        }
+
+        public boolean isCommand(String name) {
+            byte[] nameBytes = name.getBytes(StandardCharsets.US_ASCII);
+            return isCommand() && body.length > nameBytes.length && body[0] == nameBytes.length
+                    && Arrays.equals(body, 1, 1 + nameBytes.length, nameBytes, 0, nameBytes.length);
+        }
+    }
+
+    public interface Listener {
+        void onConnected();
+
+        void onMessage(String topic, byte[] body, boolean sequenceGap);
+    }
+}
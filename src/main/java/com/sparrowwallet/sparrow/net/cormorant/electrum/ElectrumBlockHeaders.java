@@ -0,0 +1,5 @@
+package com.sparrowwallet.sparrow.net.cormorant.electrum;
+
+public record ElectrumBlockHeaders(int count, String hex, int max) {
+
+}
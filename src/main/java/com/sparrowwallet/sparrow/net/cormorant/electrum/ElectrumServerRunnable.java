@@ -18,11 +18,7 @@ public class ElectrumServerRunnable implements Runnable {
     protected ServerSocket serverSocket = null;
     protected boolean stopped = false;
     protected Thread runningThread = null;
-    protected ExecutorService threadPool = Executors.newFixedThreadPool(10, r -> {
-        Thread t = Executors.defaultThreadFactory().newThread(r);
-        t.setDaemon(true);
-        return t;
-    });
+    protected ExecutorService threadPool = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("Cormorant Electrum Client-", 0).factory());
 
     public ElectrumServerRunnable(BitcoindClient bitcoindClient) {
         this.bitcoindClient = bitcoindClient;
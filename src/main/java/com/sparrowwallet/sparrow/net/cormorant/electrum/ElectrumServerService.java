@@ -5,7 +5,6 @@ import com.github.arteam.simplejsonrpc.core.annotation.JsonRpcMethod;
 import com.github.arteam.simplejsonrpc.core.annotation.JsonRpcOptional;
 import com.github.arteam.simplejsonrpc.core.annotation.JsonRpcParam;
 import com.github.arteam.simplejsonrpc.core.annotation.JsonRpcService;
-import com.sparrowwallet.drongo.protocol.Sha256Hash;
 import com.sparrowwallet.sparrow.EventManager;
 import com.sparrowwallet.sparrow.SparrowWallet;
 import com.sparrowwallet.sparrow.event.MempoolEntriesInitializedEvent;
@@ -24,6 +23,7 @@ public class ElectrumServerService {
     private static final Logger log = LoggerFactory.getLogger(ElectrumServerService.class);
     private static final Version VERSION = new Version("1.4");
     private static final long VSIZE_BIN_WIDTH = 50000;
+    private static final int MAX_HEADERS_COUNT = 2016;
     private static final double DEFAULT_FEE_RATE = 0.00001d;
 
     private final BitcoindClient bitcoindClient;
@@ -81,29 +81,7 @@ public class ElectrumServerService {
 
             return Collections.emptyList();
         } else {
-            Map<Sha256Hash, VsizeFeerate> mempoolEntries = bitcoindClient.getMempoolEntries();
-            List<VsizeFeerate> vsizeFeerates = new ArrayList<>(mempoolEntries.values());
-            Collections.sort(vsizeFeerates);
-
-            List<List<Number>> histogram = new ArrayList<>();
-            long binSize = 0;
-            double lastFeerate = 0.0;
-
-            for(VsizeFeerate vsizeFeerate : vsizeFeerates) {
-                if(binSize > VSIZE_BIN_WIDTH && Math.abs(lastFeerate - vsizeFeerate.getFeerate()) > 0.0d) {
-                    // vsize of transactions paying >= last_feerate
-                    histogram.add(List.of(lastFeerate, binSize));
-                    binSize = 0;
-                }
-                binSize += vsizeFeerate.getVsize();
-                lastFeerate = vsizeFeerate.getFeerate();
-            }
-
-            if(binSize > 0) {
-                histogram.add(List.of(lastFeerate, binSize));
-            }
-
-            return histogram;
+            return bitcoindClient.getMempoolFeerates().getHistogram(VSIZE_BIN_WIDTH);
         }
     }
 
@@ -146,12 +124,20 @@ public class ElectrumServerService {
     @JsonRpcMethod("blockchain.block.header")
     public String getBlockHeader(@JsonRpcParam("height") int height) throws BitcoindIOException, BlockNotFoundException {
         try {
-            String blockHash = bitcoindClient.getStore().getBlockHash(height);
-            if(blockHash == null) {
-                blockHash = bitcoindClient.getBitcoindService().getBlockHash(height);
-            }
+            return bitcoindClient.getBlockHeader(height);
+        } catch(JsonRpcException e) {
+            throw new BlockNotFoundException(e.getErrorMessage());
+        } catch(IllegalStateException e) {
+            throw new BitcoindIOException(e);
+        }
+    }
 
-            return bitcoindClient.getBitcoindService().getBlockHeader(blockHash, false);
+    //Checkpoint merkle proofs are not supported, so cp_height is ignored
+    @JsonRpcMethod("blockchain.block.headers")
+    public ElectrumBlockHeaders getBlockHeaders(@JsonRpcParam("start_height") int startHeight, @JsonRpcParam("count") int count, @JsonRpcParam("cp_height") @JsonRpcOptional int cpHeight) throws BitcoindIOException, BlockNotFoundException {
+        try {
+            List<String> headers = bitcoindClient.getBlockHeaders(startHeight, Math.min(count, MAX_HEADERS_COUNT));
+            return new ElectrumBlockHeaders(headers.size(), String.join("", headers), MAX_HEADERS_COUNT);
         } catch(JsonRpcException e) {
             throw new BlockNotFoundException(e.getErrorMessage());
         } catch(IllegalStateException e) {
@@ -11,17 +11,30 @@ import org.slf4j.LoggerFactory;
 import java.io.*;
 import java.net.Socket;
 import java.nio.charset.StandardCharsets;
-import java.util.HashSet;
 import java.util.Set;
-
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Handles a single Electrum client connection. Requests are read and answered in order, while all output
+ * (responses and subscription notifications) is placed on a bounded per-connection queue and written by a separate thread,
+ * so that notifying a slow client never blocks the bitcoind poller. A client that falls too far behind is disconnected.
+ */
 public class RequestHandler implements Runnable {
     private static final Logger log = LoggerFactory.getLogger(RequestHandler.class);
+    private static final int MAX_QUEUED_MESSAGES = 10000;
+    //Sentinel compared by identity, so it cannot be confused with a real message
+    private static final String CLOSE_MESSAGE = new String();
+
     private final Socket clientSocket;
     private final ElectrumServerService electrumServerService;
     private final JsonRpcServer rpcServer = new JsonRpcServer();
+    private final BlockingQueue<String> writeQueue = new LinkedBlockingQueue<>(MAX_QUEUED_MESSAGES);
+    private volatile boolean closed;
 
-    private boolean headersSubscribed;
-    private final Set<String> scriptHashesSubscribed = new HashSet<>();
+    private volatile boolean headersSubscribed;
+    private final Set<String> scriptHashesSubscribed = ConcurrentHashMap.newKeySet();
 
     public RequestHandler(Socket clientSocket, BitcoindClient bitcoindClient) {
         this.clientSocket = clientSocket;
@@ -37,22 +50,88 @@ public class RequestHandler implements Runnable {
 
             OutputStream output = clientSocket.getOutputStream();
             PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8)));
+            Thread writerThread = Thread.ofVirtual().name("Cormorant Electrum Writer").start(() -> writeLoop(out));
 
-            while(true) {
+            while(!closed) {
                 String request = reader.readLine();
                 if(request == null) {
                     break;
                 }
 
                 String response = rpcServer.handle(request, electrumServerService);
-                out.println(response);
-                out.flush();
+                send(response);
             }
+
+            close();
+            writerThread.join();
         } catch(IOException e) {
-            log.error("Could not communicate with client socket", e);
+            if(!closed) {
+                log.error("Could not communicate with client socket", e);
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            close();
+            Cormorant.getEventBus().unregister(this);
         }
+    }
 
-        Cormorant.getEventBus().unregister(this);
+    private void writeLoop(PrintWriter out) {
+        try {
+            while(true) {
+                String message = writeQueue.take();
+                if(message == CLOSE_MESSAGE) {
+                    break;
+                }
+
+                out.println(message);
+                //Batch up any further queued messages before flushing
+                if(writeQueue.isEmpty()) {
+                    out.flush();
+                }
+
+                if(out.checkError()) {
+                    log.debug("Error writing to client socket, closing");
+                    break;
+                }
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            out.flush();
+            closed = true;
+            try {
+                clientSocket.close();
+            } catch(IOException e) {
+                //ignore
+            }
+        }
+    }
+
+    public void send(String message) {
+        if(!closed && !writeQueue.offer(message)) {
+            log.warn("Client at " + clientSocket.getRemoteSocketAddress() + " is not reading responses, disconnecting");
+            disconnect();
+        }
+    }
+
+    private void close() {
+        closed = true;
+        if(!writeQueue.offer(CLOSE_MESSAGE)) {
+            writeQueue.clear();
+            writeQueue.offer(CLOSE_MESSAGE);
+        }
+    }
+
+    private void disconnect() {
+        closed = true;
+        writeQueue.clear();
+        writeQueue.offer(CLOSE_MESSAGE);
+        try {
+            clientSocket.close();
+        } catch(IOException e) {
+            //ignore
+        }
     }
 
     public void setHeadersSubscribed(boolean headersSubscribed) {
@@ -70,7 +149,7 @@ public class RequestHandler implements Runnable {
     @Subscribe
     public void newBlock(ElectrumBlockHeader electrumBlockHeader) {
         if(headersSubscribed) {
-            ElectrumNotificationTransport electrumNotificationTransport = new ElectrumNotificationTransport(clientSocket);
+            ElectrumNotificationTransport electrumNotificationTransport = new ElectrumNotificationTransport(this);
             JsonRpcClient jsonRpcClient = new JsonRpcClient(electrumNotificationTransport);
             jsonRpcClient.onDemand(ElectrumNotificationService.class).notifyHeaders(electrumBlockHeader);
         }
@@ -79,7 +158,7 @@ public class RequestHandler implements Runnable {
     @Subscribe
     public void scriptHashStatus(ScriptHashStatus scriptHashStatus) {
         if(isScriptHashSubscribed(scriptHashStatus.scriptHash())) {
-            ElectrumNotificationTransport electrumNotificationTransport = new ElectrumNotificationTransport(clientSocket);
+            ElectrumNotificationTransport electrumNotificationTransport = new ElectrumNotificationTransport(this);
             JsonRpcClient jsonRpcClient = new JsonRpcClient(electrumNotificationTransport);
             jsonRpcClient.onDemand(ElectrumNotificationService.class).notifyScriptHash(scriptHashStatus.scriptHash(), scriptHashStatus.status());
         }
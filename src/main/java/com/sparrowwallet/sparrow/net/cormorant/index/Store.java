@@ -1,6 +1,7 @@
 package com.sparrowwallet.sparrow.net.cormorant.index;
 
 import com.sparrowwallet.drongo.address.Address;
+import com.sparrowwallet.drongo.address.InvalidAddressException;
 import com.sparrowwallet.sparrow.net.cormorant.bitcoind.Category;
 import com.sparrowwallet.sparrow.net.cormorant.bitcoind.ListTransaction;
 import com.sparrowwallet.sparrow.net.cormorant.bitcoind.MempoolEntry;
@@ -8,52 +9,85 @@ import com.sparrowwallet.drongo.protocol.HashIndex;
 import com.sparrowwallet.drongo.protocol.Sha256Hash;
 import com.sparrowwallet.drongo.Utils;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Index of wallet transactions by script hash. Updates are applied by a single writer (the bitcoind poller),
+ * while Electrum clients read immutable per script hash snapshots that are published atomically after each change,
+ * so readers never block on or observe a partially applied update.
+ */
 public class Store {
     private final Map<String, Set<TxEntry>> scriptHashEntries = new HashMap<>();
     private final Map<HashIndex, Address> fundingAddresses = new HashMap<>();
     private final Map<String, Set<HashIndex>> spentOutputs = new HashMap<>();
-    private final Map<Integer, String> blockHeightHashes = new HashMap<>();
+    private final Map<Integer, String> blockHeightHashes = new ConcurrentHashMap<>();
     private final Map<String, MempoolEntry> mempoolEntries = new HashMap<>();
+    private final Map<String, ScriptHashSnapshot> scriptHashSnapshots = new ConcurrentHashMap<>();
 
-    public String addAddressTransaction(Address address, ListTransaction listTransaction) {
+    //Secondary indexes to avoid scanning all script hashes when a transaction changes
+    private final Map<String, Set<String>> txidScriptHashes = new HashMap<>();
+    private final Map<String, Set<HashIndex>> txidFundingOutputs = new HashMap<>();
+    private final Set<String> mempoolScriptHashes = new HashSet<>();
+
+    public synchronized String addAddressTransaction(Address address, ListTransaction listTransaction) {
         if(listTransaction.category() == Category.receive || listTransaction.category() == Category.immature || listTransaction.category() == Category.generate) {
-            fundingAddresses.put(new HashIndex(Sha256Hash.wrap(listTransaction.txid()), listTransaction.vout()), address);
+            HashIndex fundingOutput = new HashIndex(Sha256Hash.wrap(listTransaction.txid()), listTransaction.vout());
+            fundingAddresses.put(fundingOutput, address);
+            txidFundingOutputs.computeIfAbsent(listTransaction.txid(), k -> new HashSet<>()).add(fundingOutput);
         }
 
-        blockHeightHashes.put(listTransaction.blockheight(), listTransaction.blockhash());
+        if(listTransaction.blockhash() != null) {
+            blockHeightHashes.put(listTransaction.blockheight(), listTransaction.blockhash());
+        }
 
         String scriptHash = getScriptHash(address);
         Set<TxEntry> entries = scriptHashEntries.computeIfAbsent(scriptHash, k -> new TreeSet<>());
         TxEntry txEntry;
+        boolean removed;
         String txid = listTransaction.txid();
 
         if(listTransaction.confirmations() == 0) {
             if(!mempoolEntries.containsKey(txid)) {
                 mempoolEntries.put(txid, null);
             }
-            entries.removeIf(txe -> txe.height > 0 && txe.tx_hash.equals(listTransaction.txid()));
+            removed = entries.removeIf(txe -> txe.height > 0 && txe.tx_hash.equals(listTransaction.txid()));
             txEntry = new TxEntry(0, 0, listTransaction.txid(), listTransaction.fee());
         } else {
             mempoolEntries.remove(txid);
-            entries.removeIf(txe -> txe.height != listTransaction.blockheight() && txe.tx_hash.equals(listTransaction.txid()));
+            removed = entries.removeIf(txe -> txe.height != listTransaction.blockheight() && txe.tx_hash.equals(listTransaction.txid()));
             txEntry = new TxEntry(listTransaction.blockheight(), listTransaction.blockindex(), listTransaction.txid());
         }
 
-        if(entries.add(txEntry)) {
+        boolean added = entries.add(txEntry);
+        txidScriptHashes.computeIfAbsent(txid, k -> new HashSet<>()).add(scriptHash);
+        updateMempoolScriptHash(scriptHash, entries);
+
+        if(added || removed) {
+            publishSnapshot(scriptHash, entries);
+        }
+
+        if(added) {
             return scriptHash;
         }
 
         return null;
     }
 
-    public Set<String> updateMempoolTransactions() {
+    public synchronized Set<String> updateMempoolTransactions() {
         Set<String> updatedScriptHashes = new HashSet<>();
 
-        for(Map.Entry<String, Set<TxEntry>> scriptHashEntry : scriptHashEntries.entrySet()) {
-            Set<TxEntry> txEntries = scriptHashEntry.getValue();
+        for(String scriptHash : new ArrayList<>(mempoolScriptHashes)) {
+            Set<TxEntry> txEntries = scriptHashEntries.get(scriptHash);
+            if(txEntries == null) {
+                mempoolScriptHashes.remove(scriptHash);
+                continue;
+            }
+
             Set<TxEntry> oldEntries = new HashSet<>();
             Set<TxEntry> newEntries = new HashSet<>();
             for(TxEntry txEntry : txEntries) {
@@ -73,43 +107,198 @@ public class Store {
             boolean added = txEntries.addAll(newEntries);
 
             if(added || removed) {
-                updatedScriptHashes.add(scriptHashEntry.getKey());
+                for(TxEntry oldEntry : oldEntries) {
+                    if(txEntries.stream().noneMatch(txEntry -> txEntry.tx_hash.equals(oldEntry.tx_hash))) {
+                        removeTxidScriptHash(oldEntry.tx_hash, scriptHash);
+                    }
+                }
+
+                updateMempoolScriptHash(scriptHash, txEntries);
+                publishSnapshot(scriptHash, txEntries);
+                updatedScriptHashes.add(scriptHash);
             }
         }
 
         return updatedScriptHashes;
     }
 
-    public Set<String> purgeTransaction(String txid) {
+    public synchronized Set<String> purgeTransaction(String txid) {
         Set<String> updatedScriptHashes = new HashSet<>();
 
-        for(Map.Entry<String, Set<TxEntry>> scriptHashEntry : scriptHashEntries.entrySet()) {
-            Set<TxEntry> txEntries = scriptHashEntry.getValue();
-            if(txEntries.removeIf(txEntry -> txEntry.tx_hash.equals(txid))) {
-                updatedScriptHashes.add(scriptHashEntry.getKey());
+        Set<String> scriptHashes = txidScriptHashes.remove(txid);
+        if(scriptHashes != null) {
+            for(String scriptHash : scriptHashes) {
+                Set<TxEntry> txEntries = scriptHashEntries.get(scriptHash);
+                if(txEntries != null && txEntries.removeIf(txEntry -> txEntry.tx_hash.equals(txid))) {
+                    updateMempoolScriptHash(scriptHash, txEntries);
+                    publishSnapshot(scriptHash, txEntries);
+                    updatedScriptHashes.add(scriptHash);
+                }
             }
         }
 
-        Sha256Hash txHash = Sha256Hash.wrap(txid);
-        fundingAddresses.keySet().removeIf(hashIndex -> hashIndex.getHash().equals(txHash));
+        Set<HashIndex> fundingOutputs = txidFundingOutputs.remove(txid);
+        if(fundingOutputs != null) {
+            fundingAddresses.keySet().removeAll(fundingOutputs);
+        }
         spentOutputs.remove(txid);
         mempoolEntries.remove(txid);
 
         return updatedScriptHashes;
     }
 
+    public synchronized void clear() {
+        scriptHashEntries.clear();
+        fundingAddresses.clear();
+        spentOutputs.clear();
+        blockHeightHashes.clear();
+        mempoolEntries.clear();
+        scriptHashSnapshots.clear();
+        txidScriptHashes.clear();
+        txidFundingOutputs.clear();
+        mempoolScriptHashes.clear();
+    }
+
+    /**
+     * Writes the confirmed part of the index. Unconfirmed transactions are omitted, as they are returned again by listsinceblock on resume.
+     */
+    synchronized void writeConfirmed(DataOutput out) throws IOException {
+        Set<String> confirmedTxids = new HashSet<>();
+        Map<String, List<TxEntry>> confirmedEntries = new HashMap<>();
+        for(Map.Entry<String, Set<TxEntry>> entry : scriptHashEntries.entrySet()) {
+            List<TxEntry> txEntries = entry.getValue().stream().filter(txEntry -> txEntry.height > 0).toList();
+            if(!txEntries.isEmpty()) {
+                confirmedEntries.put(entry.getKey(), txEntries);
+                txEntries.forEach(txEntry -> confirmedTxids.add(txEntry.tx_hash));
+            }
+        }
+
+        out.writeInt(confirmedEntries.size());
+        for(Map.Entry<String, List<TxEntry>> entry : confirmedEntries.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for(TxEntry txEntry : entry.getValue()) {
+                out.writeInt(txEntry.height);
+                out.writeInt(txEntry.getIndex());
+                out.writeUTF(txEntry.tx_hash);
+            }
+        }
+
+        List<Map.Entry<HashIndex, Address>> confirmedFundingAddresses = fundingAddresses.entrySet().stream()
+                .filter(entry -> confirmedTxids.contains(entry.getKey().getHash().toString())).toList();
+        out.writeInt(confirmedFundingAddresses.size());
+        for(Map.Entry<HashIndex, Address> entry : confirmedFundingAddresses) {
+            out.writeUTF(entry.getKey().getHash().toString());
+            out.writeLong(entry.getKey().getIndex());
+            out.writeUTF(entry.getValue().toString());
+        }
+
+        List<Map.Entry<String, Set<HashIndex>>> confirmedSpentOutputs = spentOutputs.entrySet().stream().filter(entry -> confirmedTxids.contains(entry.getKey())).toList();
+        out.writeInt(confirmedSpentOutputs.size());
+        for(Map.Entry<String, Set<HashIndex>> entry : confirmedSpentOutputs) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for(HashIndex hashIndex : entry.getValue()) {
+                out.writeUTF(hashIndex.getHash().toString());
+                out.writeLong(hashIndex.getIndex());
+            }
+        }
+
+        Map<Integer, String> heightHashes = new HashMap<>(blockHeightHashes);
+        out.writeInt(heightHashes.size());
+        for(Map.Entry<Integer, String> entry : heightHashes.entrySet()) {
+            out.writeInt(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+    }
+
+    /**
+     * Replaces the contents of the index with data previously written by {@link #writeConfirmed(DataOutput)}.
+     */
+    synchronized void readConfirmed(DataInput in) throws IOException {
+        clear();
+
+        int scriptHashCount = in.readInt();
+        for(int i = 0; i < scriptHashCount; i++) {
+            String scriptHash = in.readUTF();
+            Set<TxEntry> entries = new TreeSet<>();
+            int entryCount = in.readInt();
+            for(int j = 0; j < entryCount; j++) {
+                int height = in.readInt();
+                int index = in.readInt();
+                String txid = in.readUTF();
+                entries.add(new TxEntry(height, index, txid));
+                txidScriptHashes.computeIfAbsent(txid, k -> new HashSet<>()).add(scriptHash);
+            }
+            scriptHashEntries.put(scriptHash, entries);
+            publishSnapshot(scriptHash, entries);
+        }
+
+        int fundingCount = in.readInt();
+        for(int i = 0; i < fundingCount; i++) {
+            String txid = in.readUTF();
+            HashIndex fundingOutput = new HashIndex(Sha256Hash.wrap(txid), in.readLong());
+            try {
+                fundingAddresses.put(fundingOutput, Address.fromString(in.readUTF()));
+                txidFundingOutputs.computeIfAbsent(txid, k -> new HashSet<>()).add(fundingOutput);
+            } catch(InvalidAddressException e) {
+                throw new IOException("Invalid funding address for " + fundingOutput, e);
+            }
+        }
+
+        int spentCount = in.readInt();
+        for(int i = 0; i < spentCount; i++) {
+            String txid = in.readUTF();
+            Set<HashIndex> outputs = new HashSet<>();
+            int outputCount = in.readInt();
+            for(int j = 0; j < outputCount; j++) {
+                outputs.add(new HashIndex(Sha256Hash.wrap(in.readUTF()), in.readLong()));
+            }
+            spentOutputs.put(txid, outputs);
+        }
+
+        int heightCount = in.readInt();
+        for(int i = 0; i < heightCount; i++) {
+            blockHeightHashes.put(in.readInt(), in.readUTF());
+        }
+    }
+
     public String getStatus(String scriptHash) {
-        Set<TxEntry> entries = scriptHashEntries.get(scriptHash);
-        if(entries == null || entries.isEmpty()) {
-            return null;
+        ScriptHashSnapshot snapshot = scriptHashSnapshots.get(scriptHash);
+        return snapshot == null ? null : snapshot.getStatus();
+    }
+
+    private void publishSnapshot(String scriptHash, Set<TxEntry> txEntries) {
+        if(txEntries.isEmpty()) {
+            scriptHashSnapshots.remove(scriptHash);
+        } else {
+            scriptHashSnapshots.put(scriptHash, new ScriptHashSnapshot(List.copyOf(txEntries)));
+        }
+    }
+
+    private void updateMempoolScriptHash(String scriptHash, Set<TxEntry> txEntries) {
+        if(txEntries.stream().anyMatch(txEntry -> txEntry.height <= 0)) {
+            mempoolScriptHashes.add(scriptHash);
+        } else {
+            mempoolScriptHashes.remove(scriptHash);
         }
+    }
 
-        StringBuilder scriptHashStatus = new StringBuilder();
-        for(TxEntry entry : entries) {
-            scriptHashStatus.append(entry.tx_hash).append(":").append(entry.height).append(":");
+    private void removeTxidScriptHash(String txid, String scriptHash) {
+        Set<String> scriptHashes = txidScriptHashes.get(txid);
+        if(scriptHashes != null) {
+            scriptHashes.remove(scriptHash);
+            if(scriptHashes.isEmpty()) {
+                txidScriptHashes.remove(txid);
+            }
         }
+    }
 
-        return Utils.bytesToHex(Sha256Hash.hash(scriptHashStatus.toString().getBytes(StandardCharsets.UTF_8)));
+    /**
+     * Returns whether the transaction is in the history of any script hash in the index
+     */
+    public synchronized boolean containsTransaction(String txid) {
+        return txidScriptHashes.containsKey(txid);
     }
 
     public Address getFundingAddress(HashIndex spentOutput) {
@@ -124,13 +313,13 @@ public class Store {
         return mempoolEntries;
     }
 
-    public Set<TxEntry> getHistory(String scriptHash) {
-        Set<TxEntry> entries = scriptHashEntries.get(scriptHash);
-        if(entries == null) {
-            return Collections.emptySet();
+    public Collection<TxEntry> getHistory(String scriptHash) {
+        ScriptHashSnapshot snapshot = scriptHashSnapshots.get(scriptHash);
+        if(snapshot == null) {
+            return Collections.emptyList();
         }
 
-        return entries;
+        return snapshot.history;
     }
 
     public String getBlockHash(int height) {
@@ -142,4 +331,26 @@ public class Store {
         byte[] reversed = Utils.reverseBytes(hash);
         return Utils.bytesToHex(reversed);
     }
+
+    private static class ScriptHashSnapshot {
+        private final List<TxEntry> history;
+        private volatile String status;
+
+        public ScriptHashSnapshot(List<TxEntry> history) {
+            this.history = history;
+        }
+
+        public String getStatus() {
+            if(status == null) {
+                StringBuilder scriptHashStatus = new StringBuilder();
+                for(TxEntry entry : history) {
+                    scriptHashStatus.append(entry.tx_hash).append(":").append(entry.height).append(":");
+                }
+
+                status = Utils.bytesToHex(Sha256Hash.hash(scriptHashStatus.toString().getBytes(StandardCharsets.UTF_8)));
+            }
+
+            return status;
+        }
+    }
 }
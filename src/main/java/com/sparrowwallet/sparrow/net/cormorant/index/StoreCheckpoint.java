@@ -0,0 +1,124 @@
+package com.sparrowwallet.sparrow.net.cormorant.index;
+
+import com.sparrowwallet.drongo.Network;
+import com.sparrowwallet.drongo.protocol.Sha256Hash;
+import com.sparrowwallet.sparrow.io.Server;
+import com.sparrowwallet.sparrow.io.Storage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A compressed on-disk copy of the confirmed contents of a {@link Store}, keyed by the last block hash it was synced to.
+ * This allows the store to be restored on startup and updated with listsinceblock from the checkpoint, rather than replaying the entire wallet history.
+ * Each checkpoint belongs to a network, Bitcoin Core host and port, and Core wallet, which are recorded in the file and checked on load.
+ */
+public class StoreCheckpoint {
+    private static final Logger log = LoggerFactory.getLogger(StoreCheckpoint.class);
+
+    private static final int MAGIC = 0x434f524d;
+    private static final int VERSION = 2;
+
+    private final File checkpointFile;
+    private final String identity;
+
+    public StoreCheckpoint(File checkpointFile, String identity) {
+        this.checkpointFile = checkpointFile;
+        this.identity = identity;
+    }
+
+    public static StoreCheckpoint get(Server coreServer, String walletName) {
+        //Checkpoints from earlier versions are not tied to a server or wallet, so they cannot be safely resumed from
+        File legacyFile = new File(Storage.getCacheDir(), "cormorant-" + Network.get().getName() + ".checkpoint");
+        if(legacyFile.exists() && !legacyFile.delete()) {
+            log.warn("Could not delete checkpoint file " + legacyFile.getAbsolutePath());
+        }
+
+        String identity = Network.get().getName() + "|" + (coreServer == null ? "" : coreServer.getHostAndPort().toString()) + "|" + walletName;
+        String identityHash = Sha256Hash.of(identity.getBytes(StandardCharsets.UTF_8)).toString().substring(0, 16);
+        return new StoreCheckpoint(new File(Storage.getCacheDir(), "cormorant-" + Network.get().getName() + "-" + identityHash + ".checkpoint"), identity);
+    }
+
+    /**
+     * Restores the store from the checkpoint file.
+     *
+     * @return the block hash the checkpoint was synced to, or null if there is no usable checkpoint, in which case the store is left empty
+     */
+    public String load(Store store) {
+        if(!checkpointFile.exists()) {
+            return null;
+        }
+
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(checkpointFile))))) {
+            if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+                log.warn("Ignoring unsupported checkpoint file " + checkpointFile.getAbsolutePath());
+                return null;
+            }
+
+            String checkpointIdentity = in.readUTF();
+            if(!identity.equals(checkpointIdentity)) {
+                log.warn("Ignoring checkpoint file " + checkpointFile.getAbsolutePath() + " created for " + checkpointIdentity);
+                return null;
+            }
+
+            String lastBlock = in.readUTF();
+            store.readConfirmed(in);
+            return lastBlock;
+        } catch(IOException e) {
+            log.warn("Error reading checkpoint file " + checkpointFile.getAbsolutePath(), e);
+            store.clear();
+            return null;
+        }
+    }
+
+    /**
+     * Copies the confirmed contents of the store in serialized form, so that it can be compressed and written without holding up store updates.
+     *
+     * @return the snapshot, or null if the store could not be serialized
+     */
+    public Snapshot snapshot(Store store, String lastBlock) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try(DataOutputStream out = new DataOutputStream(bytes)) {
+                store.writeConfirmed(out);
+            }
+
+            return new Snapshot(lastBlock, bytes.toByteArray());
+        } catch(IOException e) {
+            log.error("Error creating checkpoint snapshot", e);
+            return null;
+        }
+    }
+
+    public void save(Snapshot snapshot) {
+        File tempFile = new File(checkpointFile.getParentFile(), checkpointFile.getName() + ".tmp");
+        try {
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tempFile))))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(identity);
+                out.writeUTF(snapshot.lastBlock());
+                out.write(snapshot.data());
+            }
+
+            Files.move(tempFile.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch(IOException e) {
+            log.error("Error writing checkpoint file " + checkpointFile.getAbsolutePath(), e);
+            tempFile.delete();
+        }
+    }
+
+    public void delete() {
+        if(checkpointFile.exists() && !checkpointFile.delete()) {
+            log.warn("Could not delete checkpoint file " + checkpointFile.getAbsolutePath());
+        }
+    }
+
+    public record Snapshot(String lastBlock, byte[] data) {}
+}
@@ -26,6 +26,10 @@ public class TxEntry implements Comparable<TxEntry> {
         this.fee = btcFee > 0.0 ? (long)(btcFee * Transaction.SATOSHIS_PER_BITCOIN) : null;
     }
 
+    int getIndex() {
+        return index;
+    }
+
     @Override
     public boolean equals(Object o) {
         if(this == o) {
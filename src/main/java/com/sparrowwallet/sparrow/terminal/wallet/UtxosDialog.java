@@ -164,7 +164,7 @@ public class UtxosDialog extends WalletDialog {
     public void walletHistoryChanged(WalletHistoryChangedEvent event) {
         if(event.getWallet().equals(getWalletForm().getWallet())) {
             WalletUtxosEntry walletUtxosEntry = getWalletForm().getWalletUtxosEntry();
-            walletUtxosEntry.updateUtxos();
+            walletUtxosEntry.updateUtxos(event.getAllHistoryChangedNodes());
             updateHistory(walletUtxosEntry);
             updateLabels(walletUtxosEntry);
         }
@@ -165,7 +165,7 @@ public class TransactionsController extends WalletFormController implements Init
             WalletTransactionsEntry walletTransactionsEntry = getWalletForm().getWalletTransactionsEntry();
 
             //Will automatically update transactionsTable transactions and recalculate balances
-            walletTransactionsEntry.updateTransactions();
+            walletTransactionsEntry.updateTransactions(event);
 
             transactionsTable.updateHistory();
             balance.setValue(walletTransactionsEntry.getBalance());
@@ -264,6 +264,8 @@ public class TransactionsController extends WalletFormController implements Init
 
     @Subscribe
     public void includeMempoolOutputsChangedEvent(IncludeMempoolOutputsChangedEvent event) {
+        //No transactions have changed, so the balances must be recalculated explicitly
+        getWalletForm().getWalletTransactionsEntry().recalculateBalances();
         walletHistoryChanged(new WalletHistoryChangedEvent(getWalletForm().getWallet(), getWalletForm().getStorage(), Collections.emptyList(), Collections.emptyList()));
     }
 
@@ -237,7 +237,7 @@ public class UtxosController extends WalletFormController implements Initializab
             List<Entry> selectedEntries = utxosTable.getSelectionModel().getSelectedItems().stream().map(TreeItem::getValue).filter(Objects::nonNull).toList();
 
             //Will automatically update utxosTable
-            walletUtxosEntry.updateUtxos();
+            walletUtxosEntry.updateUtxos(event.getAllHistoryChangedNodes());
 
             if(!walletUtxosEntry.getChildren().containsAll(selectedEntries)) {
                 utxosTable.getSelectionModel().clearSelection();
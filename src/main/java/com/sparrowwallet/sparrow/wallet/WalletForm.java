@@ -45,6 +45,7 @@ public class WalletForm {
     private final List<WalletForm> nestedWalletForms = new ArrayList<>();
 
     private WalletTransactionsEntry walletTransactionsEntry;
+    private WalletSearchIndex searchIndex;
     private WalletUtxosEntry walletUtxosEntry;
     private final List<NodeEntry> accountEntries = new ArrayList<>();
     private final List<Set<WalletNode>> walletTransactionNodes = new ArrayList<>();
@@ -149,7 +150,6 @@ public class WalletForm {
     }
 
     public void refreshHistory(Integer blockHeight, List<Wallet> filterToWallets, Set<WalletNode> nodes) {
-        Wallet previousWallet = wallet.copy();
         if(wallet.isValid() && AppServices.isConnected()) {
             if(log.isDebugEnabled()) {
                 log.debug(nodes == null ? wallet.getFullName() + " refreshing full wallet history" : wallet.getFullName() + " requesting node wallet history for " + nodeRangesToString(nodes));
@@ -157,11 +157,12 @@ public class WalletForm {
 
             Set<WalletNode> walletTransactionNodes = getWalletTransactionNodes(nodes);
             if(!wallet.isNested() && (walletTransactionNodes == null || !walletTransactionNodes.isEmpty())) {
+                HistorySnapshot previousSnapshot = new HistorySnapshot(wallet);
                 ElectrumServer.TransactionHistoryService historyService = new ElectrumServer.TransactionHistoryService(wallet, filterToWallets, walletTransactionNodes);
                 historyService.setOnSucceeded(workerStateEvent -> {
                     if(historyService.getValue()) {
                         EventManager.get().post(new WalletHistoryFinishedEvent(wallet));
-                        updateWallets(blockHeight, previousWallet);
+                        updateWallets(blockHeight, previousSnapshot, historyService.getHistoryChangedNodes());
                     }
                 });
                 historyService.setOnFailed(workerStateEvent -> {
@@ -186,9 +187,10 @@ public class WalletForm {
                             log.error("Error backing up wallet", e);
                         }
 
+                        Wallet pastWallet = wallet.copy();
                         wallet.clearHistory();
                         AppServices.clearTransactionHistoryCache(wallet);
-                        EventManager.get().post(new WalletHistoryClearedEvent(wallet, previousWallet, getWalletId()));
+                        EventManager.get().post(new WalletHistoryClearedEvent(wallet, pastWallet, getWalletId()));
                     } else {
                         if(AppServices.isConnected()) {
                             log.error("Error retrieving wallet history", workerStateEvent.getSource().getException());
@@ -231,32 +233,32 @@ public class WalletForm {
         }
     }
 
-    private void updateWallets(Integer blockHeight, Wallet previousWallet) {
+    private void updateWallets(Integer blockHeight, HistorySnapshot previousSnapshot, Set<WalletNode> historyChangedNodes) {
         List<WalletNode> nestedHistoryChangedNodes = new ArrayList<>();
         for(Wallet childWallet : new ArrayList<>(wallet.getChildWallets())) {
             if(childWallet.isNested()) {
-                Wallet previousChildWallet = previousWallet.getChildWallet(childWallet.getName());
-                if(previousChildWallet != null) {
-                    nestedHistoryChangedNodes.addAll(updateWallet(blockHeight, childWallet, previousChildWallet, Collections.emptyList()));
+                HistorySnapshot previousChildSnapshot = previousSnapshot.getNestedSnapshot(childWallet.getName());
+                if(previousChildSnapshot != null) {
+                    nestedHistoryChangedNodes.addAll(updateWallet(blockHeight, childWallet, previousChildSnapshot, historyChangedNodes, Collections.emptyList()));
                 }
             }
         }
 
-        updateWallet(blockHeight, wallet, previousWallet, nestedHistoryChangedNodes);
+        updateWallet(blockHeight, wallet, previousSnapshot, historyChangedNodes, nestedHistoryChangedNodes);
     }
 
-    private List<WalletNode> updateWallet(Integer blockHeight, Wallet currentWallet, Wallet previousWallet, List<WalletNode> nestedHistoryChangedNodes) {
+    private List<WalletNode> updateWallet(Integer blockHeight, Wallet currentWallet, HistorySnapshot previousSnapshot, Set<WalletNode> historyChangedNodes, List<WalletNode> nestedHistoryChangedNodes) {
         if(blockHeight != null) {
             currentWallet.setStoredBlockHeight(blockHeight);
         }
 
-        return notifyIfChanged(blockHeight, currentWallet, previousWallet, nestedHistoryChangedNodes);
+        return notifyIfChanged(blockHeight, currentWallet, previousSnapshot, historyChangedNodes, nestedHistoryChangedNodes);
     }
 
-    private List<WalletNode> notifyIfChanged(Integer blockHeight, Wallet currentWallet, Wallet previousWallet, List<WalletNode> nestedHistoryChangedNodes) {
+    private List<WalletNode> notifyIfChanged(Integer blockHeight, Wallet currentWallet, HistorySnapshot previousSnapshot, Set<WalletNode> changedNodes, List<WalletNode> nestedHistoryChangedNodes) {
         List<WalletNode> historyChangedNodes = new ArrayList<>();
-        historyChangedNodes.addAll(getHistoryChangedNodes(previousWallet.getNode(KeyPurpose.RECEIVE).getChildren(), currentWallet.getNode(KeyPurpose.RECEIVE).getChildren()));
-        historyChangedNodes.addAll(getHistoryChangedNodes(previousWallet.getNode(KeyPurpose.CHANGE).getChildren(), currentWallet.getNode(KeyPurpose.CHANGE).getChildren()));
+        historyChangedNodes.addAll(getHistoryChangedNodes(previousSnapshot.getChildCount(KeyPurpose.RECEIVE), currentWallet.getNode(KeyPurpose.RECEIVE).getChildren(), changedNodes));
+        historyChangedNodes.addAll(getHistoryChangedNodes(previousSnapshot.getChildCount(KeyPurpose.CHANGE), currentWallet.getNode(KeyPurpose.CHANGE).getChildren(), changedNodes));
 
         boolean changed = false;
         if(!historyChangedNodes.isEmpty() || !nestedHistoryChangedNodes.isEmpty()) {
@@ -266,7 +268,7 @@ public class WalletForm {
             }
         }
 
-        if(blockHeight != null && !blockHeight.equals(previousWallet.getStoredBlockHeight())) {
+        if(blockHeight != null && !blockHeight.equals(previousSnapshot.getStoredBlockHeight())) {
             Platform.runLater(() -> EventManager.get().post(new WalletBlockHeightChangedEvent(currentWallet, blockHeight)));
             changed = true;
         }
@@ -278,23 +280,16 @@ public class WalletForm {
         return historyChangedNodes;
     }
 
-    private List<WalletNode> getHistoryChangedNodes(Set<WalletNode> previousNodes, Set<WalletNode> currentNodes) {
-        Map<String, WalletNode> previousNodeMap = new HashMap<>(previousNodes.size());
-        previousNodes.forEach(walletNode -> previousNodeMap.put(walletNode.getDerivationPath(), walletNode));
-
-        List<WalletNode> changedNodes = new ArrayList<>();
+    private List<WalletNode> getHistoryChangedNodes(int previousChildCount, Set<WalletNode> currentNodes, Set<WalletNode> changedNodes) {
+        //Because node children are added sequentially, any node at or above the previous number of children has been added since the snapshot
+        List<WalletNode> historyChangedNodes = new ArrayList<>();
         for(WalletNode currentNode : currentNodes) {
-            WalletNode previousNode = previousNodeMap.get(currentNode.getDerivationPath());
-            if(previousNode != null) {
-                if(!currentNode.getTransactionOutputs().equals(previousNode.getTransactionOutputs())) {
-                    changedNodes.add(currentNode);
-                }
-            } else {
-                changedNodes.add(currentNode);
+            if(currentNode.getIndex() >= previousChildCount || changedNodes.contains(currentNode)) {
+                historyChangedNodes.add(currentNode);
             }
         }
 
-        return changedNodes;
+        return historyChangedNodes;
     }
 
     public void addWalletTransactionNodes(Set<WalletNode> transactionNodes) {
@@ -377,6 +372,18 @@ public class WalletForm {
         return walletTransactionsEntry;
     }
 
+    /**
+     * Returns the search index for this wallet's entries, which is recreated on first use after the wallet's history or labels change.
+     * This copies the searchable fields of the entries and must be called on the JavaFX thread, while the index itself is built on the first search.
+     */
+    public WalletSearchIndex getSearchIndex() {
+        if(searchIndex == null) {
+            searchIndex = new WalletSearchIndex(this);
+        }
+
+        return searchIndex;
+    }
+
     public WalletUtxosEntry getWalletUtxosEntry() {
         if(walletUtxosEntry == null) {
             walletUtxosEntry = new WalletUtxosEntry(wallet);
@@ -416,6 +423,7 @@ public class WalletForm {
 
             walletTransactionsEntry = null;
             walletUtxosEntry = null;
+            searchIndex = null;
             accountEntries.clear();
             EventManager.get().post(new WalletNodesChangedEvent(wallet));
 
@@ -457,7 +465,7 @@ public class WalletForm {
     public void newBlock(NewBlockEvent event) {
         //Check if wallet is valid to avoid saving wallets in initial setup
         if(wallet.isValid()) {
-            updateWallet(event.getHeight(), wallet, wallet.copy(), Collections.emptyList());
+            updateWallet(event.getHeight(), wallet, new HistorySnapshot(wallet), Collections.emptySet(), Collections.emptyList());
         }
     }
 
@@ -484,6 +492,13 @@ public class WalletForm {
     @Subscribe
     public void walletHistoryChanged(WalletHistoryChangedEvent event) {
         if(event.getWalletId().equals(getWalletId())) {
+            searchIndex = null;
+
+            //Keep the transactions entry current even when no transactions view is open to update it, as updates are applied incrementally
+            if(walletTransactionsEntry != null && event.getWallet().equals(wallet)) {
+                walletTransactionsEntry.updateTransactions(event);
+            }
+
             for(WalletNode changedNode : event.getHistoryChangedNodes()) {
                 if(changedNode.getLabel() != null && !changedNode.getLabel().isEmpty()) {
                     List<Entry> changedLabelEntries = new ArrayList<>();
@@ -511,6 +526,7 @@ public class WalletForm {
     @Subscribe
     public void walletLabelsChanged(WalletEntryLabelsChangedEvent event) {
         if(event.toThisOrNested(wallet)) {
+            searchIndex = null;
             Map<Entry, Entry> labelChangedEntries = new LinkedHashMap<>();
             Collection<Entry> entries = event.propagate() ? event.getEntries() : Collections.emptyList();
             for(Entry entry : entries) {
@@ -675,6 +691,7 @@ public class WalletForm {
     @Subscribe
     public void hideEmptyUsedAddressesStatusChanged(HideEmptyUsedAddressesStatusEvent event) {
         accountEntries.clear();
+        searchIndex = null;
         EventManager.get().post(new WalletAddressesStatusEvent(wallet));
     }
 
@@ -701,4 +718,38 @@ public class WalletForm {
             }
         }
     }
+
+    /**
+     * The state of a wallet needed to determine what a history refresh has changed, recorded in place of a full copy of the wallet.
+     * Nodes with changed transaction outputs are reported by the history service, so only the stored block height and number of address nodes are kept.
+     */
+    private static class HistorySnapshot {
+        private final Integer storedBlockHeight;
+        private final Map<KeyPurpose, Integer> childCounts = new HashMap<>();
+        private final Map<String, HistorySnapshot> nestedSnapshots = new HashMap<>();
+
+        public HistorySnapshot(Wallet wallet) {
+            this.storedBlockHeight = wallet.getStoredBlockHeight();
+            for(KeyPurpose keyPurpose : KeyPurpose.DEFAULT_PURPOSES) {
+                childCounts.put(keyPurpose, wallet.getNode(keyPurpose).getChildren().size());
+            }
+            for(Wallet childWallet : wallet.getChildWallets()) {
+                if(childWallet.isNested()) {
+                    nestedSnapshots.put(childWallet.getName(), new HistorySnapshot(childWallet));
+                }
+            }
+        }
+
+        public Integer getStoredBlockHeight() {
+            return storedBlockHeight;
+        }
+
+        public int getChildCount(KeyPurpose keyPurpose) {
+            return childCounts.getOrDefault(keyPurpose, 0);
+        }
+
+        public HistorySnapshot getNestedSnapshot(String name) {
+            return nestedSnapshots.get(name);
+        }
+    }
 }
@@ -0,0 +1,239 @@
+package com.sparrowwallet.sparrow.wallet;
+
+import com.sparrowwallet.drongo.KeyPurpose;
+import com.sparrowwallet.drongo.address.Address;
+import com.sparrowwallet.drongo.protocol.Sha256Hash;
+import com.sparrowwallet.drongo.protocol.Transaction;
+import com.sparrowwallet.drongo.protocol.TransactionOutput;
+import com.sparrowwallet.drongo.wallet.BlockTransaction;
+import com.sparrowwallet.drongo.wallet.BlockTransactionHashIndex;
+
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * An index of the searchable fields of the transaction, address and UTXO entries of a wallet form, including its nested wallets.
+ * Transaction IDs, outputs, values and output addresses are found by hash lookup, and labels and addresses by trigram lookup followed by a substring check.
+ * The fields are copied from the entries when the index is created on the JavaFX thread, and the index is built from these copies on the first search,
+ * so that building happens on the search thread. It may be searched from any thread.
+ */
+public class WalletSearchIndex {
+    private static final int GRAM_LENGTH = 3;
+
+    private List<Source> sources;
+    private final List<Document> documents = new ArrayList<>();
+    private final Map<String, List<Integer>> hashDocuments = new HashMap<>();
+    private final Map<String, List<Integer>> hashIndexDocuments = new HashMap<>();
+    private final Map<Long, List<Integer>> valueDocuments = new HashMap<>();
+    private final Map<String, List<Integer>> outputAddressDocuments = new HashMap<>();
+    private final Map<String, List<Integer>> gramDocuments = new HashMap<>();
+
+    public WalletSearchIndex(WalletForm walletForm) {
+        this(getSources(walletForm));
+    }
+
+    WalletSearchIndex(List<Source> sources) {
+        this.sources = sources;
+    }
+
+    private static List<Source> getSources(WalletForm walletForm) {
+        List<Source> sources = new ArrayList<>();
+        for(Entry entry : walletForm.getWalletTransactionsEntry().getChildren()) {
+            if(entry instanceof TransactionEntry transactionEntry) {
+                BlockTransaction blockTransaction = transactionEntry.getBlockTransaction();
+                sources.add(new Source(entry, transactionEntry.getLabel(), null, blockTransaction.getHash(), null, transactionEntry.getValue(), blockTransaction));
+            }
+        }
+
+        for(KeyPurpose keyPurpose : KeyPurpose.DEFAULT_PURPOSES) {
+            addNodeSources(sources, walletForm.getNodeEntry(keyPurpose));
+        }
+
+        for(WalletForm nestedWalletForm : walletForm.getNestedWalletForms()) {
+            for(KeyPurpose keyPurpose : nestedWalletForm.getWallet().getWalletKeyPurposes()) {
+                addNodeSources(sources, nestedWalletForm.getNodeEntry(keyPurpose));
+            }
+        }
+
+        for(Entry entry : walletForm.getWalletUtxosEntry().getChildren()) {
+            if(entry instanceof HashIndexEntry hashIndexEntry) {
+                sources.add(new Source(entry, hashIndexEntry.getLabel(), null, hashIndexEntry.getHashIndex().getHash(), hashIndexEntry.getHashIndex(), hashIndexEntry.getValue(), null));
+            }
+        }
+
+        return sources;
+    }
+
+    private static void addNodeSources(List<Source> sources, NodeEntry purposeEntry) {
+        for(Entry entry : purposeEntry.getChildren()) {
+            if(entry instanceof NodeEntry nodeEntry) {
+                sources.add(new Source(entry, nodeEntry.getLabel(), nodeEntry.getAddress(), null, null, nodeEntry.getValue(), null));
+            }
+        }
+    }
+
+    private synchronized void build() {
+        if(sources == null) {
+            return;
+        }
+
+        for(Source source : sources) {
+            int id = addDocument(source.entry(), source.label(), source.address() == null ? null : source.address().toString());
+            if(source.txid() != null) {
+                addPosting(hashDocuments, source.txid().toString().toLowerCase(Locale.ROOT), id);
+            }
+            if(source.hashIndex() != null) {
+                addPosting(hashIndexDocuments, source.hashIndex().toString().toLowerCase(Locale.ROOT), id);
+            }
+            if(source.value() != null) {
+                addPosting(valueDocuments, Math.abs(source.value()), id);
+            }
+            Transaction transaction = source.blockTransaction() == null ? null : source.blockTransaction().getTransaction();
+            if(transaction != null) {
+                for(TransactionOutput output : transaction.getOutputs()) {
+                    Address address = output.getScript().getToAddress();
+                    if(address != null) {
+                        addPosting(outputAddressDocuments, address.toString(), id);
+                    }
+                }
+            }
+        }
+
+        sources = null;
+    }
+
+    private int addDocument(Entry entry, String label, String address) {
+        int id = documents.size();
+        Document document = new Document(entry, label == null ? null : label.toLowerCase(Locale.ROOT), address == null ? null : address.toLowerCase(Locale.ROOT));
+        documents.add(document);
+
+        Set<String> grams = new HashSet<>();
+        addGrams(grams, document.label());
+        addGrams(grams, document.address());
+        for(String gram : grams) {
+            addPosting(gramDocuments, gram, id);
+        }
+
+        return id;
+    }
+
+    private static void addGrams(Set<String> grams, String text) {
+        if(text != null) {
+            for(int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+                grams.add(text.substring(i, i + GRAM_LENGTH));
+            }
+        }
+    }
+
+    private static <K> void addPosting(Map<K, List<Integer>> postings, K key, int id) {
+        List<Integer> ids = postings.computeIfAbsent(key, k -> new ArrayList<>(1));
+        if(ids.isEmpty() || ids.get(ids.size() - 1) != id) {
+            ids.add(id);
+        }
+    }
+
+    /**
+     * Returns the entries matching the search text, which should be in lower case, in the order they appear in the wallet form.
+     * The cancelled check is polled while searching, and a CancellationException is thrown once it returns true.
+     */
+    public List<Entry> search(String searchText, Long searchValue, Address searchAddress, BooleanSupplier cancelled) {
+        build();
+
+        BitSet matches = new BitSet(documents.size());
+        hashDocuments.getOrDefault(searchText, Collections.emptyList()).forEach(matches::set);
+        hashIndexDocuments.getOrDefault(searchText, Collections.emptyList()).forEach(matches::set);
+        if(searchValue != null) {
+            valueDocuments.getOrDefault(searchValue, Collections.emptyList()).forEach(matches::set);
+        }
+        if(searchAddress != null) {
+            outputAddressDocuments.getOrDefault(searchAddress.toString(), Collections.emptyList()).forEach(matches::set);
+        }
+
+        for(int id : getTextCandidates(searchText)) {
+            if(cancelled.getAsBoolean()) {
+                throw new CancellationException();
+            }
+
+            if(!matches.get(id) && documents.get(id).contains(searchText)) {
+                matches.set(id);
+            }
+        }
+
+        List<Entry> entries = new ArrayList<>(matches.cardinality());
+        for(int id = matches.nextSetBit(0); id >= 0; id = matches.nextSetBit(id + 1)) {
+            entries.add(documents.get(id).entry());
+        }
+
+        return entries;
+    }
+
+    private Iterable<Integer> getTextCandidates(String searchText) {
+        if(searchText.length() < GRAM_LENGTH) {
+            return () -> new Iterator<>() {
+                private int id;
+
+                @Override
+                public boolean hasNext() {
+                    return id < documents.size();
+                }
+
+                @Override
+                public Integer next() {
+                    return id++;
+                }
+            };
+        }
+
+        Set<String> grams = new HashSet<>();
+        addGrams(grams, searchText);
+        List<List<Integer>> postings = new ArrayList<>(grams.size());
+        for(String gram : grams) {
+            List<Integer> ids = gramDocuments.get(gram);
+            if(ids == null) {
+                return Collections.emptyList();
+            }
+            postings.add(ids);
+        }
+
+        //Posting lists are in ascending order, so intersect starting from the shortest
+        postings.sort(Comparator.comparingInt(List::size));
+        List<Integer> candidates = postings.get(0);
+        for(int i = 1; i < postings.size() && !candidates.isEmpty(); i++) {
+            candidates = intersect(candidates, postings.get(i));
+        }
+
+        return candidates;
+    }
+
+    private static List<Integer> intersect(List<Integer> first, List<Integer> second) {
+        List<Integer> intersection = new ArrayList<>(Math.min(first.size(), second.size()));
+        int i = 0, j = 0;
+        while(i < first.size() && j < second.size()) {
+            int compare = Integer.compare(first.get(i), second.get(j));
+            if(compare == 0) {
+                intersection.add(first.get(i));
+                i++;
+                j++;
+            } else if(compare < 0) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+
+        return intersection;
+    }
+
+    /**
+     * The searchable fields of an entry, copied from it on the JavaFX thread. Output references are immutable once added to the wallet,
+     * and the raw transaction is read from the block transaction when building, as it may not yet have been loaded from the wallet database.
+     */
+    record Source(Entry entry, String label, Address address, Sha256Hash txid, BlockTransactionHashIndex hashIndex, Long value, BlockTransaction blockTransaction) {}
+
+    private record Document(Entry entry, String label, String address) {
+        public boolean contains(String searchText) {
+            return (label != null && label.contains(searchText)) || (address != null && address.contains(searchText));
+        }
+    }
+}
@@ -1,14 +1,16 @@
 package com.sparrowwallet.sparrow.wallet;
 
-import com.google.common.collect.Sets;
 import com.sparrowwallet.drongo.KeyPurpose;
 import com.sparrowwallet.drongo.protocol.HashIndex;
+import com.sparrowwallet.drongo.protocol.Sha256Hash;
+import com.sparrowwallet.drongo.protocol.TransactionInput;
 import com.sparrowwallet.drongo.wallet.BlockTransaction;
 import com.sparrowwallet.drongo.wallet.BlockTransactionHashIndex;
 import com.sparrowwallet.drongo.wallet.Wallet;
 import com.sparrowwallet.drongo.wallet.WalletNode;
 import com.sparrowwallet.sparrow.EventManager;
 import com.sparrowwallet.sparrow.event.NewWalletTransactionsEvent;
+import com.sparrowwallet.sparrow.event.WalletHistoryChangedEvent;
 import com.sparrowwallet.sparrow.io.Config;
 import javafx.beans.property.LongProperty;
 import javafx.beans.property.LongPropertyBase;
@@ -22,13 +24,37 @@ import java.util.stream.Collectors;
 public class WalletTransactionsEntry extends Entry {
     private static final Logger log = LoggerFactory.getLogger(WalletTransactionsEntry.class);
 
+    private final boolean includeAllChildWallets;
+
+    //The transactions creating or spending the outputs of each address node, and the reverse, so that only transactions of changed nodes are recalculated
+    private final Map<WalletNode, Set<Sha256Hash>> nodeTransactions = new HashMap<>();
+    private final Map<Sha256Hash, Set<WalletNode>> transactionNodes = new HashMap<>();
+    private final Map<Sha256Hash, TransactionEntry> transactionEntries = new HashMap<>();
+    private final Set<Sha256Hash> incompleteTransactions = new HashSet<>();
+    private WalletHistoryChangedEvent lastHistoryChangedEvent;
+
     public WalletTransactionsEntry(Wallet wallet) {
         this(wallet, false);
     }
 
     public WalletTransactionsEntry(Wallet wallet, boolean includeAllChildWallets) {
         super(wallet, wallet.getDisplayName(), getWalletTransactions(wallet, includeAllChildWallets).stream().map(WalletTransaction::getTransactionEntry).collect(Collectors.toList()));
-        calculateBalances(false); //No need to resort
+        this.includeAllChildWallets = includeAllChildWallets;
+
+        for(Wallet includedWallet : getIncludedWallets()) {
+            for(KeyPurpose keyPurpose : includedWallet.getWalletKeyPurposes()) {
+                for(WalletNode addressNode : includedWallet.getNode(keyPurpose).getChildren()) {
+                    reindexNode(addressNode);
+                }
+            }
+        }
+
+        for(Entry entry : getChildren()) {
+            TransactionEntry transactionEntry = (TransactionEntry)entry;
+            transactionEntries.put(transactionEntry.getBlockTransaction().getHash(), transactionEntry);
+        }
+
+        calculateBalances(0); //No need to resort
     }
 
     @Override
@@ -46,23 +72,47 @@ public class WalletTransactionsEntry extends Entry {
         return Function.TRANSACTIONS;
     }
 
-    private void calculateBalances(boolean resort) {
-        long balance = 0L;
+    private List<Wallet> getIncludedWallets() {
+        List<Wallet> includedWallets = new ArrayList<>();
+        includedWallets.add(getWallet());
+        for(Wallet childWallet : getWallet().getChildWallets()) {
+            if(includeAllChildWallets || childWallet.isNested()) {
+                includedWallets.add(childWallet);
+            }
+        }
+
+        return includedWallets;
+    }
+
+    /**
+     * Recalculates all running balances, for when a setting affecting the balance has changed but the transactions have not
+     */
+    public void recalculateBalances() {
+        calculateBalances(0);
+    }
+
+    /**
+     * Recalculates running balances from the given position onwards, as those before it are unaffected by a change at or after it
+     */
+    private void calculateBalances(int fromIndex) {
+        //Note transaction entries must be in ascending order. This sorting is ultimately done according to BlockTransactions' comparator
+        List<Entry> children = getChildren();
+        long balance = fromIndex > 0 ? ((TransactionEntry)children.get(fromIndex - 1)).getBalance() : 0L;
         long mempoolBalance = 0L;
 
-        if(resort) {
-            //Note transaction entries must be in ascending order. This sorting is ultimately done according to BlockTransactions' comparator
-            getChildren().sort(Comparator.comparing(TransactionEntry.class::cast));
+        //Unconfirmed transactions sort last, so any before the starting position are found by walking back from it
+        for(int i = fromIndex - 1; i >= 0 && ((TransactionEntry)children.get(i)).getConfirmations() == 0; i--) {
+            mempoolBalance += children.get(i).getValue();
         }
 
-        for(Entry entry : getChildren()) {
-            TransactionEntry transactionEntry = (TransactionEntry)entry;
+        for(int i = fromIndex; i < children.size(); i++) {
+            TransactionEntry transactionEntry = (TransactionEntry)children.get(i);
             if(transactionEntry.getConfirmations() != 0 || transactionEntry.getValue() < 0 || Config.get().isIncludeMempoolOutputs()) {
-                balance += entry.getValue();
+                balance += transactionEntry.getValue();
             }
 
             if(transactionEntry.getConfirmations() == 0) {
-                mempoolBalance += entry.getValue();
+                mempoolBalance += transactionEntry.getValue();
             }
 
             transactionEntry.setBalance(balance);
@@ -72,38 +122,173 @@ public class WalletTransactionsEntry extends Entry {
         setMempoolBalance(mempoolBalance);
     }
 
-    public void updateTransactions() {
-        Map<HashIndex, BlockTransactionHashIndex> walletTxos = getWallet().getWalletTxos().entrySet().stream()
-                .collect(Collectors.toUnmodifiableMap(entry -> new HashIndex(entry.getKey().getHash(), entry.getKey().getIndex()), Map.Entry::getKey,
-                        BinaryOperator.maxBy(BlockTransactionHashIndex::compareTo)));
+    /**
+     * Updates the transaction entries affected by the nodes changed in the event, inserting and removing entries in sorted position.
+     * The entry may be updated by several subscribers to the same event, so an event that has already been applied is ignored.
+     */
+    public void updateTransactions(WalletHistoryChangedEvent event) {
+        if(event == lastHistoryChangedEvent) {
+            return;
+        }
 
-        Collection<WalletTransactionsEntry.WalletTransaction> entries = getWalletTransactions(getWallet(), false);
-        Set<Entry> current = entries.stream().map(WalletTransaction::getTransactionEntry).collect(Collectors.toCollection(LinkedHashSet::new));
-        Set<Entry> previous = new LinkedHashSet<>(getChildren());
+        lastHistoryChangedEvent = event;
+        updateTransactions(event.getAllHistoryChangedNodes());
+    }
 
-        Set<Entry> entriesAdded = Sets.difference(current, previous);
-        getChildren().addAll(entriesAdded);
+    private void updateTransactions(Collection<WalletNode> changedNodes) {
+        List<Wallet> includedWallets = getIncludedWallets();
+        Set<Sha256Hash> affectedTxids = new LinkedHashSet<>(incompleteTransactions);
+        incompleteTransactions.clear();
+        for(WalletNode changedNode : changedNodes) {
+            if(includedWallets.contains(changedNode.getWallet())) {
+                affectedTxids.addAll(reindexNode(changedNode));
+            }
+        }
 
-        Set<Entry> entriesRemoved = Sets.difference(previous, current);
-        getChildren().removeAll(entriesRemoved);
+        Comparator<Entry> comparator = Comparator.comparing(TransactionEntry.class::cast);
+        int fromIndex = getChildren().size();
+        List<TransactionEntry> entriesAdded = new ArrayList<>();
+        for(Sha256Hash txid : affectedTxids) {
+            TransactionEntry previousEntry = transactionEntries.get(txid);
+            TransactionEntry currentEntry = createTransactionEntry(txid);
+            if(previousEntry != null && previousEntry.equals(currentEntry)) {
+                continue;
+            }
 
-        calculateBalances(true);
+            if(previousEntry != null) {
+                int index = Collections.binarySearch(getChildren(), previousEntry, comparator);
+                if(index < 0 || getChildren().get(index) != previousEntry) {
+                    index = getChildren().indexOf(previousEntry);
+                }
+                if(index >= 0) {
+                    getChildren().remove(index);
+                    fromIndex = Math.min(fromIndex, index);
+                }
+                transactionEntries.remove(txid);
+            }
+
+            if(currentEntry != null) {
+                entriesAdded.add(currentEntry);
+            } else if(transactionNodes.containsKey(txid)) {
+                //Still referenced by wallet nodes, so the wallet transaction has not yet been added - retry on the next update
+                incompleteTransactions.add(txid);
+            }
+        }
+
+        Map<HashIndex, BlockTransactionHashIndex> walletTxos = getWalletTxos(entriesAdded);
+        List<TransactionEntry> entriesComplete = new ArrayList<>();
+        for(TransactionEntry txEntry : entriesAdded) {
+            if(txEntry.isComplete(walletTxos)) {
+                int index = Collections.binarySearch(getChildren(), txEntry, comparator);
+                index = (index < 0 ? -index - 1 : index);
+                getChildren().add(index, txEntry);
+                transactionEntries.put(txEntry.getBlockTransaction().getHash(), txEntry);
+                fromIndex = Math.min(fromIndex, index);
+                entriesComplete.add(txEntry);
+            } else {
+                //Retry on the next update, by which time the wallet may have finished updating
+                incompleteTransactions.add(txEntry.getBlockTransaction().getHash());
+                log.warn("Removing and not notifying incomplete entry " + txEntry.getBlockTransaction().getHashAsString() + " value " + txEntry.getValue()
+                        + " children " + txEntry.getChildren().stream().map(e -> e.getEntryType() + " " + ((HashIndexEntry)e).getHashIndex()).collect(Collectors.toList()));
+            }
+        }
+
+        calculateBalances(fromIndex);
 
-        List<Entry> entriesComplete = entriesAdded.stream().filter(txEntry -> ((TransactionEntry)txEntry).isComplete(walletTxos)).collect(Collectors.toList());
         if(!entriesComplete.isEmpty()) {
-            EventManager.get().post(new NewWalletTransactionsEvent(getWallet(), entriesAdded.stream().map(entry -> (TransactionEntry)entry).collect(Collectors.toList())));
+            EventManager.get().post(new NewWalletTransactionsEvent(getWallet(), entriesAdded));
+        }
+    }
+
+    /**
+     * Records the transactions referenced by the node's outputs, returning those it referenced before or references now
+     */
+    private Set<Sha256Hash> reindexNode(WalletNode node) {
+        Set<Sha256Hash> txids = new HashSet<>();
+        for(BlockTransactionHashIndex hashIndex : node.getTransactionOutputs()) {
+            txids.add(hashIndex.getHash());
+            if(hashIndex.getSpentBy() != null) {
+                txids.add(hashIndex.getSpentBy().getHash());
+            }
+        }
+
+        Set<Sha256Hash> previousTxids = (txids.isEmpty() ? nodeTransactions.remove(node) : nodeTransactions.put(node, txids));
+        Set<Sha256Hash> affectedTxids = new HashSet<>(txids);
+        if(previousTxids != null) {
+            for(Sha256Hash previousTxid : previousTxids) {
+                if(!txids.contains(previousTxid)) {
+                    transactionNodes.computeIfPresent(previousTxid, (txid, nodes) -> {
+                        nodes.remove(node);
+                        return nodes.isEmpty() ? null : nodes;
+                    });
+                }
+            }
+            affectedTxids.addAll(previousTxids);
+        }
+
+        for(Sha256Hash txid : txids) {
+            transactionNodes.computeIfAbsent(txid, k -> new LinkedHashSet<>()).add(node);
+        }
+
+        return affectedTxids;
+    }
+
+    private TransactionEntry createTransactionEntry(Sha256Hash txid) {
+        Set<WalletNode> nodes = transactionNodes.get(txid);
+        if(nodes == null) {
+            return null;
         }
 
-        if(entriesAdded.size() > entriesComplete.size()) {
-            Set<Entry> incompleteEntries = new HashSet<>(entriesAdded);
-            entriesComplete.forEach(incompleteEntries::remove);
-            for(Entry entry : incompleteEntries) {
-                TransactionEntry txEntry = (TransactionEntry)entry;
-                getChildren().remove(txEntry);
-                log.warn("Removing and not notifying incomplete entry " + ((TransactionEntry)entry).getBlockTransaction().getHashAsString() + " value " + txEntry.getValue()
-                        + " children " + entry.getChildren().stream().map(e -> e.getEntryType() + " " + ((HashIndexEntry)e).getHashIndex()).collect(Collectors.toList()));
+        Wallet entryWallet = nodes.stream().anyMatch(node -> node.getWallet().equals(getWallet())) ? getWallet() : nodes.iterator().next().getWallet();
+        WalletTransaction walletTransaction = null;
+        for(WalletNode addressNode : nodes) {
+            Wallet transactionsWallet = addressNode.getWallet().isNested() ? addressNode.getWallet().getMasterWallet() : addressNode.getWallet();
+            BlockTransaction blockTransaction = transactionsWallet.getWalletTransaction(txid);
+            //A null transaction here means the wallet is still updating - ignore as the WalletHistoryChangedEvent will include this node again
+            if(blockTransaction == null) {
+                continue;
+            }
+
+            for(BlockTransactionHashIndex hashIndex : addressNode.getTransactionOutputs()) {
+                if(hashIndex.getHash().equals(txid)) {
+                    if(walletTransaction == null) {
+                        walletTransaction = new WalletTransaction(entryWallet, blockTransaction);
+                    }
+                    walletTransaction.incoming.put(hashIndex, addressNode.getKeyPurpose());
+                }
+
+                if(hashIndex.getSpentBy() != null && hashIndex.getSpentBy().getHash().equals(txid) && transactionsWallet.getWalletTransaction(hashIndex.getHash()) != null) {
+                    if(walletTransaction == null) {
+                        walletTransaction = new WalletTransaction(entryWallet, blockTransaction);
+                    }
+                    walletTransaction.outgoing.put(hashIndex.getSpentBy(), addressNode.getKeyPurpose());
+                }
             }
         }
+
+        return walletTransaction == null ? null : walletTransaction.getTransactionEntry();
+    }
+
+    /**
+     * Returns the wallet outputs that may be referenced by the given transactions, being those of the nodes referencing the transactions or their inputs
+     */
+    private Map<HashIndex, BlockTransactionHashIndex> getWalletTxos(Collection<TransactionEntry> entries) {
+        Set<WalletNode> nodes = new LinkedHashSet<>();
+        for(TransactionEntry transactionEntry : entries) {
+            nodes.addAll(transactionNodes.getOrDefault(transactionEntry.getBlockTransaction().getHash(), Collections.emptySet()));
+            for(TransactionInput txInput : transactionEntry.getBlockTransaction().getTransaction().getInputs()) {
+                nodes.addAll(transactionNodes.getOrDefault(txInput.getOutpoint().getHash(), Collections.emptySet()));
+            }
+        }
+
+        Map<HashIndex, BlockTransactionHashIndex> walletTxos = new HashMap<>();
+        for(WalletNode node : nodes) {
+            for(BlockTransactionHashIndex txo : node.getTransactionOutputs()) {
+                walletTxos.merge(new HashIndex(txo.getHash(), txo.getIndex()), txo, BinaryOperator.maxBy(BlockTransactionHashIndex::compareTo));
+            }
+        }
+
+        return walletTxos;
     }
 
     private static Collection<WalletTransaction> getWalletTransactions(Wallet wallet, boolean includeAllChildWallets) {
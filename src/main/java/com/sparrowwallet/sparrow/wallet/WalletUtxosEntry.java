@@ -1,5 +1,9 @@
 package com.sparrowwallet.sparrow.wallet;
 
+import com.sparrowwallet.drongo.KeyPurpose;
+import com.sparrowwallet.drongo.protocol.Sha256Hash;
+import com.sparrowwallet.drongo.wallet.BlockTransaction;
+import com.sparrowwallet.drongo.wallet.BlockTransactionHashIndex;
 import com.sparrowwallet.drongo.wallet.Wallet;
 import com.sparrowwallet.drongo.wallet.WalletNode;
 import com.sparrowwallet.sparrow.io.Config;
@@ -10,10 +14,35 @@ import java.util.stream.Collectors;
 public class WalletUtxosEntry extends Entry {
     public static final int DUST_ATTACK_THRESHOLD_SATS = 1000;
 
+    //Entries are keyed by output reference identity, as a confirmed output is replaced by a new reference and requires a new entry
+    private final Map<BlockTransactionHashIndex, UtxoEntry> utxoEntries = new IdentityHashMap<>();
+    private final Map<String, List<UtxoEntry>> addressEntries = new HashMap<>();
+    private final Map<WalletNode, Integer> nodeTxoCounts = new HashMap<>();
+    //Whether the inputs of a dust candidate are all from the wallet depends on the transaction creating it and the wallet outputs that transaction spends,
+    //either of which may arrive after the candidate itself, so the state each candidate was checked against is kept to re-check it when that changes
+    private final Map<UtxoEntry, DustCheck> dustChecks = new IdentityHashMap<>();
+    //The number of wallet outputs spent by each transaction, kept with the spending txids counted per node so only changed nodes are recounted
+    private final Map<Sha256Hash, Integer> spentTxoCounts = new HashMap<>();
+    private final Map<WalletNode, List<Sha256Hash>> nodeSpentTxids = new HashMap<>();
+
     public WalletUtxosEntry(Wallet wallet) {
         super(wallet, wallet.getName(), wallet.getWalletUtxos().entrySet().stream().map(entry -> new UtxoEntry(entry.getValue().getWallet(), entry.getKey(), HashIndexEntry.Type.OUTPUT, entry.getValue())).collect(Collectors.toList()));
-        calculateDuplicates();
-        calculateDust();
+
+        for(Entry entry : getChildren()) {
+            UtxoEntry utxoEntry = (UtxoEntry)entry;
+            utxoEntries.put(utxoEntry.getHashIndex(), utxoEntry);
+            addressEntries.computeIfAbsent(utxoEntry.getAddress().toString(), k -> new ArrayList<>()).add(utxoEntry);
+            nodeTxoCounts.put(utxoEntry.getNode(), utxoEntry.getNode().getTransactionOutputs().size());
+        }
+
+        for(Wallet txoWallet : getTxoWallets()) {
+            for(KeyPurpose keyPurpose : txoWallet.getWalletKeyPurposes()) {
+                txoWallet.getNode(keyPurpose).getChildren().forEach(this::countSpentTxos);
+            }
+        }
+
+        calculateDuplicates(addressEntries.keySet());
+        calculateDust(getChildren().stream().map(UtxoEntry.class::cast).collect(Collectors.toList()));
     }
 
     @Override
@@ -31,50 +60,156 @@ public class WalletUtxosEntry extends Entry {
         return Function.UTXOS;
     }
 
-    protected void calculateDuplicates() {
-        Map<String, UtxoEntry> addressMap = new HashMap<>();
-
-        for(Entry entry : getChildren()) {
-            UtxoEntry utxoEntry = (UtxoEntry)entry;
-            String address = utxoEntry.getAddress().toString();
+    protected void calculateDuplicates(Collection<String> addresses) {
+        for(String address : addresses) {
+            List<UtxoEntry> entries = addressEntries.getOrDefault(address, Collections.emptyList());
+            for(UtxoEntry utxoEntry : entries) {
+                utxoEntry.setDuplicateAddress(entries.size() > 1);
+            }
+        }
+    }
 
-            UtxoEntry duplicate = addressMap.get(address);
-            if(duplicate != null) {
-                duplicate.setDuplicateAddress(true);
-                utxoEntry.setDuplicateAddress(true);
+    protected void calculateDust(Collection<UtxoEntry> entries) {
+        //A node is a candidate for a dust attack if it has received more than one output, spent or unspent
+        long dustAttackThreshold = Config.get().getDustAttackThreshold();
+        List<UtxoEntry> candidates = new ArrayList<>();
+        for(UtxoEntry utxoEntry : entries) {
+            if(utxoEntry.getValue() <= dustAttackThreshold && utxoEntry.getNode().getTransactionOutputs().size() > 1) {
+                candidates.add(utxoEntry);
             } else {
-                addressMap.put(address, utxoEntry);
-                utxoEntry.setDuplicateAddress(false);
+                utxoEntry.setDustAttack(false);
+                dustChecks.remove(utxoEntry);
             }
         }
+
+        for(UtxoEntry utxoEntry : candidates) {
+            utxoEntry.setDustAttack(!utxoEntry.getWallet().allInputsFromWallet(utxoEntry.getHashIndex().getHash()));
+            dustChecks.put(utxoEntry, getDustCheck(utxoEntry));
+        }
     }
 
-    protected void calculateDust() {
-        long dustAttackThreshold = Config.get().getDustAttackThreshold();
-        Set<WalletNode> duplicateNodes = getWallet().getWalletTxos().values().stream()
-                .collect(Collectors.groupingBy(e -> e, Collectors.counting()))
-                .entrySet().stream().filter(e -> e.getValue() > 1).map(Map.Entry::getKey).collect(Collectors.toSet());
+    private DustCheck getDustCheck(UtxoEntry utxoEntry) {
+        Sha256Hash txid = utxoEntry.getHashIndex().getHash();
+        Wallet transactionsWallet = utxoEntry.getWallet().isNested() ? utxoEntry.getWallet().getMasterWallet() : utxoEntry.getWallet();
+        return new DustCheck(transactionsWallet.getWalletTransaction(txid), spentTxoCounts.getOrDefault(txid, 0));
+    }
 
-        for(Entry entry : getChildren()) {
-            UtxoEntry utxoEntry = (UtxoEntry) entry;
-            utxoEntry.setDustAttack(utxoEntry.getValue() <= dustAttackThreshold && duplicateNodes.contains(utxoEntry.getNode()) && !utxoEntry.getWallet().allInputsFromWallet(utxoEntry.getHashIndex().getHash()));
+    private List<Wallet> getTxoWallets() {
+        Wallet masterWallet = getWallet().isNested() ? getWallet().getMasterWallet() : getWallet();
+        List<Wallet> wallets = new ArrayList<>();
+        wallets.add(masterWallet);
+        masterWallet.getChildWallets().stream().filter(Wallet::isNested).forEach(wallets::add);
+        return wallets;
+    }
+
+    /**
+     * Replaces the spent output counts previously taken from the given node with its current ones, returning the spending txids counted before or after
+     */
+    private Set<Sha256Hash> countSpentTxos(WalletNode node) {
+        Set<Sha256Hash> changedTxids = new HashSet<>();
+        List<Sha256Hash> previousTxids = nodeSpentTxids.remove(node);
+        if(previousTxids != null) {
+            for(Sha256Hash txid : previousTxids) {
+                spentTxoCounts.computeIfPresent(txid, (k, count) -> count > 1 ? count - 1 : null);
+                changedTxids.add(txid);
+            }
+        }
+
+        List<Sha256Hash> spentTxids = new ArrayList<>();
+        for(BlockTransactionHashIndex txo : node.getTransactionOutputs()) {
+            if(txo.getSpentBy() != null) {
+                spentTxids.add(txo.getSpentBy().getHash());
+                spentTxoCounts.merge(txo.getSpentBy().getHash(), 1, Integer::sum);
+                changedTxids.add(txo.getSpentBy().getHash());
+            }
+        }
+        if(!spentTxids.isEmpty()) {
+            nodeSpentTxids.put(node, spentTxids);
         }
+
+        return changedTxids;
     }
 
+    /**
+     * Adds and removes entries by comparing output references against the wallet UTXOs, and recalculates duplicate and dust flags
+     * only for entries sharing an address with an added or removed entry, on a node that has since received another output,
+     * or that are dust candidates on a changed node or whose creating transaction spends outputs of a changed node
+     */
     public void updateUtxos() {
-        List<Entry> current = getWallet().getWalletUtxos().entrySet().stream().map(entry -> new UtxoEntry(entry.getValue().getWallet(), entry.getKey(), HashIndexEntry.Type.OUTPUT, entry.getValue())).collect(Collectors.toList());
-        List<Entry> previous = new ArrayList<>(getChildren());
+        updateUtxos(Collections.emptyList());
+    }
 
-        List<Entry> entriesAdded = new ArrayList<>(current);
-        entriesAdded.removeAll(previous);
-        getChildren().addAll(entriesAdded);
+    /**
+     * As above, additionally recounting the wallet outputs spent from the given nodes, such as those with changed history.
+     * Spent outputs are otherwise only recounted for nodes with an added or removed entry, or a changed number of outputs
+     */
+    public void updateUtxos(Collection<WalletNode> changedNodes) {
+        Map<BlockTransactionHashIndex, WalletNode> walletUtxos = getWallet().getWalletUtxos();
+        Map<BlockTransactionHashIndex, WalletNode> currentUtxos = new IdentityHashMap<>(walletUtxos.size());
+        currentUtxos.putAll(walletUtxos);
+
+        Set<String> affectedAddresses = new HashSet<>();
+        Set<Entry> entriesRemoved = Collections.newSetFromMap(new IdentityHashMap<>());
+        for(Iterator<Map.Entry<BlockTransactionHashIndex, UtxoEntry>> iter = utxoEntries.entrySet().iterator(); iter.hasNext(); ) {
+            UtxoEntry utxoEntry = iter.next().getValue();
+            if(!currentUtxos.containsKey(utxoEntry.getHashIndex())) {
+                iter.remove();
+                entriesRemoved.add(utxoEntry);
+                dustChecks.remove(utxoEntry);
+                String address = utxoEntry.getAddress().toString();
+                addressEntries.computeIfPresent(address, (k, entries) -> {
+                    entries.remove(utxoEntry);
+                    return entries.isEmpty() ? null : entries;
+                });
+                affectedAddresses.add(address);
+            }
+        }
+
+        List<Entry> entriesAdded = new ArrayList<>();
+        for(Map.Entry<BlockTransactionHashIndex, WalletNode> utxo : currentUtxos.entrySet()) {
+            if(!utxoEntries.containsKey(utxo.getKey())) {
+                UtxoEntry utxoEntry = new UtxoEntry(utxo.getValue().getWallet(), utxo.getKey(), HashIndexEntry.Type.OUTPUT, utxo.getValue());
+                utxoEntries.put(utxo.getKey(), utxoEntry);
+                entriesAdded.add(utxoEntry);
+                String address = utxoEntry.getAddress().toString();
+                addressEntries.computeIfAbsent(address, k -> new ArrayList<>()).add(utxoEntry);
+                affectedAddresses.add(address);
+            }
+        }
 
-        List<Entry> entriesRemoved = new ArrayList<>(previous);
-        entriesRemoved.removeAll(current);
+        getChildren().addAll(entriesAdded);
         getChildren().removeAll(entriesRemoved);
 
-        calculateDuplicates();
-        calculateDust();
+        Set<WalletNode> affectedNodes = new HashSet<>();
+        Set<WalletNode> spentCountNodes = new HashSet<>(changedNodes);
+        entriesAdded.forEach(entry -> spentCountNodes.add(((UtxoEntry)entry).getNode()));
+        entriesRemoved.forEach(entry -> spentCountNodes.add(((UtxoEntry)entry).getNode()));
+        Map<WalletNode, Integer> currentNodeTxoCounts = new HashMap<>();
+        for(UtxoEntry utxoEntry : utxoEntries.values()) {
+            int txoCount = utxoEntry.getNode().getTransactionOutputs().size();
+            if(currentNodeTxoCounts.put(utxoEntry.getNode(), txoCount) == null && !Objects.equals(nodeTxoCounts.get(utxoEntry.getNode()), txoCount)) {
+                affectedNodes.add(utxoEntry.getNode());
+            }
+        }
+        nodeTxoCounts.clear();
+        nodeTxoCounts.putAll(currentNodeTxoCounts);
+        spentCountNodes.addAll(affectedNodes);
+
+        Set<Sha256Hash> changedTxids = new HashSet<>();
+        spentCountNodes.forEach(node -> changedTxids.addAll(countSpentTxos(node)));
+
+        calculateDuplicates(affectedAddresses);
+
+        Set<UtxoEntry> dustEntries = Collections.newSetFromMap(new IdentityHashMap<>());
+        affectedAddresses.forEach(address -> dustEntries.addAll(addressEntries.getOrDefault(address, Collections.emptyList())));
+        utxoEntries.values().stream().filter(utxoEntry -> affectedNodes.contains(utxoEntry.getNode())).forEach(dustEntries::add);
+        dustChecks.forEach((utxoEntry, dustCheck) -> {
+            boolean touched = changedTxids.contains(utxoEntry.getHashIndex().getHash()) || spentCountNodes.contains(utxoEntry.getNode());
+            if(touched && !dustCheck.equals(getDustCheck(utxoEntry))) {
+                dustEntries.add(utxoEntry);
+            }
+        });
+        calculateDust(dustEntries);
     }
 
     public long getBalance() {
@@ -84,4 +219,6 @@ public class WalletUtxosEntry extends Entry {
     public long getMempoolBalance() {
         return getChildren().stream().filter(entry -> ((UtxoEntry)entry).getHashIndex().getHeight() <= 0).mapToLong(Entry::getValue).sum();
     }
+
+    private record DustCheck(BlockTransaction transaction, int spentTxoCount) {}
 }
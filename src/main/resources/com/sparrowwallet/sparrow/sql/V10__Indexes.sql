@@ -0,0 +1,2 @@
+create index walletNode_wallet_parent on walletNode(wallet, parent);
+create index blockTransactionHashIndex_node_spentBy on blockTransactionHashIndex(node, spentBy);
\ No newline at end of file
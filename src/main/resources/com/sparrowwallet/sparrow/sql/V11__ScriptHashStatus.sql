@@ -0,0 +1 @@
+alter table walletNode add column scriptHashStatus varchar(64) after addressData;
\ No newline at end of file
@@ -0,0 +1,243 @@
+package com.sparrowwallet.sparrow.io;
+
+import com.sparrowwallet.drongo.KeyPurpose;
+import com.sparrowwallet.drongo.protocol.Script;
+import com.sparrowwallet.drongo.protocol.Sha256Hash;
+import com.sparrowwallet.drongo.protocol.Transaction;
+import com.sparrowwallet.drongo.protocol.TransactionOutput;
+import com.sparrowwallet.drongo.wallet.BlockTransaction;
+import com.sparrowwallet.drongo.wallet.BlockTransactionHashIndex;
+import com.sparrowwallet.drongo.wallet.MnemonicException;
+import com.sparrowwallet.drongo.wallet.Wallet;
+import com.sparrowwallet.drongo.wallet.WalletNode;
+import com.sparrowwallet.sparrow.io.db.LazyBlockTransaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.*;
+
+public class DbPersistenceTest extends IoTest {
+    private static final int NODE_COUNT = 500;
+    private static final int LARGE_NODE_COUNT = 5000;
+
+    @Test
+    public void saveWalletNodes() throws IOException, MnemonicException, StorageException {
+        Storage storage = new Storage(getFile("sparrow-single-wallet"));
+        Wallet wallet = loadWallet(storage);
+        addHistory(wallet, NODE_COUNT);
+
+        Storage dbStorage = saveWallet(storage, wallet);
+        Wallet reloaded = new Storage(dbStorage.getWalletFile()).loadEncryptedWallet("pass").getWallet();
+        Assertions.assertTrue(reloaded.isValid());
+
+        for(KeyPurpose keyPurpose : KeyPurpose.DEFAULT_PURPOSES) {
+            WalletNode purposeNode = wallet.getNode(keyPurpose);
+            WalletNode reloadedPurposeNode = reloaded.getNode(keyPurpose);
+            Assertions.assertNotNull(purposeNode.getId());
+            Assertions.assertEquals(purposeNode.getId(), reloadedPurposeNode.getId());
+
+            //Nodes are reloaded under their parent by the parent column, so matching children confirm the parent links
+            Map<String, WalletNode> reloadedChildren = new HashMap<>();
+            for(WalletNode childNode : reloadedPurposeNode.getChildren()) {
+                reloadedChildren.put(childNode.getDerivationPath(), childNode);
+            }
+            Assertions.assertEquals(purposeNode.getChildren().size(), reloadedChildren.size());
+
+            for(WalletNode childNode : purposeNode.getChildren()) {
+                WalletNode reloadedChild = reloadedChildren.get(childNode.getDerivationPath());
+                Assertions.assertNotNull(reloadedChild, "Missing node " + childNode.getDerivationPath());
+                Assertions.assertNotNull(childNode.getId());
+                Assertions.assertEquals(childNode.getId(), reloadedChild.getId(), "Id mismatch for " + childNode.getDerivationPath());
+                Assertions.assertEquals(childNode.getLabel(), reloadedChild.getLabel());
+                assertTxosEqual(childNode, reloadedChild);
+            }
+        }
+    }
+
+    @Test
+    public void truncateLabels() throws IOException, MnemonicException, StorageException {
+        Storage storage = new Storage(getFile("sparrow-single-wallet"));
+        Wallet wallet = loadWallet(storage);
+        addHistory(wallet, 1);
+        String longLabel = "a".repeat(WalletNode.MAX_LABEL_LENGTH + 10);
+        wallet.getNode(KeyPurpose.RECEIVE).getChildren().iterator().next().getTransactionOutputs().iterator().next().setLabel(longLabel);
+
+        Storage dbStorage = saveWallet(storage, wallet);
+        Wallet reloaded = new Storage(dbStorage.getWalletFile()).loadEncryptedWallet("pass").getWallet();
+        BlockTransactionHashIndex reloadedTxo = reloaded.getNode(KeyPurpose.RECEIVE).getChildren().iterator().next().getTransactionOutputs().iterator().next();
+        Assertions.assertEquals(longLabel.substring(0, WalletNode.MAX_LABEL_LENGTH), reloadedTxo.getLabel());
+    }
+
+    @Test
+    public void saveLargeWallet() throws IOException, MnemonicException, StorageException {
+        Storage storage = new Storage(getFile("sparrow-single-wallet"));
+        Wallet wallet = loadWallet(storage);
+        addHistory(wallet, LARGE_NODE_COUNT);
+        saveWallet(storage, wallet);
+
+        //Generated keys from each batch insert must be mapped back to the node or output at the same position in the batch
+        Set<Long> nodeIds = new HashSet<>();
+        Set<Long> txoIds = new HashSet<>();
+        int txoCount = 0;
+        for(KeyPurpose keyPurpose : KeyPurpose.DEFAULT_PURPOSES) {
+            WalletNode purposeNode = wallet.getNode(keyPurpose);
+            Assertions.assertTrue(nodeIds.add(purposeNode.getId()));
+            for(WalletNode childNode : purposeNode.getChildren()) {
+                Assertions.assertNotNull(childNode.getId());
+                Assertions.assertTrue(nodeIds.add(childNode.getId()), "Duplicate id for " + childNode.getDerivationPath());
+                for(BlockTransactionHashIndex txo : childNode.getTransactionOutputs()) {
+                    Assertions.assertNotNull(txo.getId());
+                    Assertions.assertTrue(txoIds.add(txo.getId()), "Duplicate id for " + txo);
+                    txoCount++;
+                    if(txo.isSpent()) {
+                        Assertions.assertNotNull(txo.getSpentBy().getId());
+                        Assertions.assertTrue(txoIds.add(txo.getSpentBy().getId()), "Duplicate id for " + txo.getSpentBy());
+                        txoCount++;
+                    }
+                }
+            }
+        }
+
+        Assertions.assertEquals(KeyPurpose.DEFAULT_PURPOSES.size() * (LARGE_NODE_COUNT + 1), nodeIds.size());
+        Assertions.assertEquals(txoCount, txoIds.size());
+    }
+
+    @Test
+    public void loadLargeWallet() throws IOException, MnemonicException, StorageException {
+        Storage storage = new Storage(getFile("sparrow-single-wallet"));
+        Wallet wallet = loadWallet(storage);
+        addHistory(wallet, LARGE_NODE_COUNT);
+        Storage dbStorage = saveWallet(storage, wallet);
+
+        Wallet reloaded = new Storage(dbStorage.getWalletFile()).loadEncryptedWallet("pass").getWallet();
+        for(KeyPurpose keyPurpose : KeyPurpose.DEFAULT_PURPOSES) {
+            Assertions.assertEquals(wallet.getNode(keyPurpose).getChildren().size(), reloaded.getNode(keyPurpose).getChildren().size());
+        }
+    }
+
+    @Test
+    public void loadTransactionsLazily() throws IOException, MnemonicException, StorageException {
+        Storage storage = new Storage(getFile("sparrow-single-wallet"));
+        Wallet wallet = loadWallet(storage);
+        wallet.clearHistory();
+        wallet.getNode(KeyPurpose.RECEIVE).fillToIndex(wallet, 1);
+        Iterator<WalletNode> receiveNodes = wallet.getNode(KeyPurpose.RECEIVE).getChildren().iterator();
+        WalletNode firstNode = receiveNodes.next();
+        WalletNode secondNode = receiveNodes.next();
+        WalletNode changeNode = wallet.getFreshNode(KeyPurpose.CHANGE);
+
+        BlockTransaction spentTx = addTransaction(wallet, firstNode, 0, 100);
+        BlockTransaction utxoTx = addTransaction(wallet, changeNode, 1, 110);
+        spend(firstNode, spentTx, utxoTx);
+        BlockTransaction olderSpentTx = addTransaction(wallet, secondNode, 2, 120);
+        BlockTransaction unconfirmedTx = addTransaction(wallet, changeNode, 3, 0);
+        spend(secondNode, olderSpentTx, unconfirmedTx);
+
+        Storage dbStorage = saveWallet(storage, wallet);
+        Wallet reloaded = new Storage(dbStorage.getWalletFile()).loadEncryptedWallet("pass").getWallet();
+
+        //Only transactions creating unspent outputs, or that are unconfirmed, are read when the wallet is opened
+        Assertions.assertFalse(reloaded.getTransactions().get(utxoTx.getHash()) instanceof LazyBlockTransaction);
+        Assertions.assertFalse(reloaded.getTransactions().get(unconfirmedTx.getHash()) instanceof LazyBlockTransaction);
+        LazyBlockTransaction lazySpentTx = (LazyBlockTransaction)reloaded.getTransactions().get(spentTx.getHash());
+        LazyBlockTransaction lazyOlderSpentTx = (LazyBlockTransaction)reloaded.getTransactions().get(olderSpentTx.getHash());
+        Assertions.assertFalse(lazySpentTx.isLoaded());
+        Assertions.assertFalse(lazyOlderSpentTx.isLoaded());
+        Assertions.assertEquals(spentTx.getHeight(), lazySpentTx.getHeight());
+
+        //Reading one transaction loads the others in the same page
+        Assertions.assertArrayEquals(spentTx.getTransaction().bitcoinSerialize(), lazySpentTx.getTransaction().bitcoinSerialize());
+        Assertions.assertTrue(lazyOlderSpentTx.isLoaded());
+        Assertions.assertArrayEquals(olderSpentTx.getTransaction().bitcoinSerialize(), lazyOlderSpentTx.getTransaction().bitcoinSerialize());
+    }
+
+    private Wallet loadWallet(Storage storage) throws IOException, MnemonicException, StorageException {
+        System.setProperty(Wallet.ALLOW_DERIVATIONS_MATCHING_OTHER_NETWORKS_PROPERTY, "true");
+        Wallet wallet = storage.loadEncryptedWallet("pass").getWallet();
+        Assertions.assertTrue(wallet.isValid());
+        return wallet;
+    }
+
+    private Storage saveWallet(Storage storage, Wallet wallet) throws IOException, StorageException {
+        File tempDir = Files.createTempDirectory(null).toFile();
+        tempDir.deleteOnExit();
+        Storage dbStorage = new Storage(new File(tempDir, "wallet.db"));
+        dbStorage.setKeyDeriver(storage.getKeyDeriver());
+        dbStorage.setEncryptionPubKey(storage.getEncryptionPubKey());
+        dbStorage.saveWallet(wallet);
+        dbStorage.getWalletFile().deleteOnExit();
+        return dbStorage;
+    }
+
+    private static void addHistory(Wallet wallet, int nodeCount) {
+        int txCounter = 0;
+        for(KeyPurpose keyPurpose : KeyPurpose.DEFAULT_PURPOSES) {
+            WalletNode purposeNode = wallet.getNode(keyPurpose);
+            purposeNode.fillToIndex(wallet, nodeCount - 1);
+            for(WalletNode childNode : purposeNode.getChildren()) {
+                childNode.setLabel("Node " + childNode.getDerivationPath());
+                Date date = new Date();
+                BlockTransactionHashIndex spendingTxi = new BlockTransactionHashIndex(getHash(txCounter++), 200, date, 100L, 0, 1000L);
+                BlockTransactionHashIndex spentTxo = new BlockTransactionHashIndex(getHash(txCounter++), 100, date, 100L, 1, 1000L, spendingTxi);
+                BlockTransactionHashIndex unspentTxo = new BlockTransactionHashIndex(getHash(txCounter++), 150, date, 100L, 0, 2000L);
+                unspentTxo.setLabel("Output " + childNode.getDerivationPath());
+                childNode.getTransactionOutputs().add(spentTxo);
+                childNode.getTransactionOutputs().add(unspentTxo);
+            }
+        }
+    }
+
+    private static BlockTransaction addTransaction(Wallet wallet, WalletNode node, int i, int height) {
+        Transaction transaction = new Transaction();
+        transaction.addInput(getHash(-i - 1), 0, new Script(new byte[0]));
+        transaction.addOutput(new TransactionOutput(transaction, 10000L, node.getAddress().getOutputScript()));
+        BlockTransaction blockTransaction = new BlockTransaction(transaction.getTxId(), height, null, 100L, transaction);
+        wallet.getTransactions().put(blockTransaction.getHash(), blockTransaction);
+        node.getTransactionOutputs().add(new BlockTransactionHashIndex(blockTransaction.getHash(), height, null, 100L, 0, 10000L));
+        return blockTransaction;
+    }
+
+    private static void spend(WalletNode node, BlockTransaction fundingTx, BlockTransaction spendingTx) {
+        for(BlockTransactionHashIndex txo : node.getTransactionOutputs()) {
+            if(txo.getHash().equals(fundingTx.getHash())) {
+                txo.setSpentBy(new BlockTransactionHashIndex(spendingTx.getHash(), spendingTx.getHeight(), null, 100L, 0, txo.getValue()));
+            }
+        }
+    }
+
+    private static void assertTxosEqual(WalletNode node, WalletNode reloadedNode) {
+        Map<Long, BlockTransactionHashIndex> reloadedTxos = new HashMap<>();
+        for(BlockTransactionHashIndex txo : reloadedNode.getTransactionOutputs()) {
+            reloadedTxos.put(txo.getId(), txo);
+        }
+        Assertions.assertEquals(node.getTransactionOutputs().size(), reloadedTxos.size());
+
+        for(BlockTransactionHashIndex txo : node.getTransactionOutputs()) {
+            BlockTransactionHashIndex reloadedTxo = reloadedTxos.get(txo.getId());
+            Assertions.assertNotNull(reloadedTxo, "Missing txo " + txo);
+            Assertions.assertEquals(txo.getHash(), reloadedTxo.getHash());
+            Assertions.assertEquals(txo.getIndex(), reloadedTxo.getIndex());
+            Assertions.assertEquals(txo.getValue(), reloadedTxo.getValue());
+            Assertions.assertEquals(txo.getLabel(), reloadedTxo.getLabel());
+            Assertions.assertEquals(txo.isSpent(), reloadedTxo.isSpent());
+            if(txo.isSpent()) {
+                Assertions.assertEquals(txo.getSpentBy().getId(), reloadedTxo.getSpentBy().getId());
+                Assertions.assertEquals(txo.getSpentBy().getHash(), reloadedTxo.getSpentBy().getHash());
+            }
+        }
+    }
+
+    private static Sha256Hash getHash(int i) {
+        return Sha256Hash.of(ByteBuffer.allocate(4).putInt(i).array());
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.setProperty(Wallet.ALLOW_DERIVATIONS_MATCHING_OTHER_NETWORKS_PROPERTY, "false");
+    }
+}
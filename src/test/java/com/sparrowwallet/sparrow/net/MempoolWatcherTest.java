@@ -0,0 +1,147 @@
+package com.sparrowwallet.sparrow.net;
+
+import com.sparrowwallet.drongo.protocol.Sha256Hash;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class MempoolWatcherTest {
+    private static final Sha256Hash TX1 = getTxid(1);
+    private static final Sha256Hash TX2 = getTxid(2);
+
+    private final AtomicLong clock = new AtomicLong(1000000);
+    private final Set<String> unsubscribed = new HashSet<>();
+    private MempoolWatcher mempoolWatcher;
+    private ProbeServer server;
+
+    @BeforeEach
+    void setUp() {
+        mempoolWatcher = new MempoolWatcher(clock::get, scriptHash -> !unsubscribed.contains(scriptHash));
+        server = new ProbeServer();
+    }
+
+    @Test
+    public void probeDueWatchesTogether() throws ServerException {
+        mempoolWatcher.watchScriptHashes(TX1, List.of("a", "b"));
+        mempoolWatcher.watchScriptHashes(TX2, List.of("b", "c"));
+        server.mempool.put(TX1, Set.of("a"));
+
+        Assertions.assertEquals(Set.of("a"), mempoolWatcher.getMempoolScriptHashes(server, TX1));
+        Assertions.assertEquals(1, server.probes.size());
+        Assertions.assertEquals(Map.of(TX1, Set.of("a", "b"), TX2, Set.of("b", "c")), server.probes.get(0));
+
+        //The second watch was probed in the same batch, so its check does not query the server again
+        Assertions.assertTrue(mempoolWatcher.getMempoolScriptHashes(server, TX2).isEmpty());
+        Assertions.assertEquals(1, server.probes.size());
+
+        //A watch that has been found is not probed again
+        clock.addAndGet(60000);
+        Assertions.assertEquals(Set.of("a"), mempoolWatcher.getMempoolScriptHashes(server, TX1));
+        Assertions.assertEquals(1, server.probes.size());
+
+        Assertions.assertTrue(mempoolWatcher.getMempoolScriptHashes(server, TX2).isEmpty());
+        Assertions.assertEquals(2, server.probes.size());
+        Assertions.assertEquals(Map.of(TX2, Set.of("b", "c")), server.probes.get(1));
+    }
+
+    @Test
+    public void backoffWhileSubscribed() throws ServerException {
+        mempoolWatcher.watchScriptHashes(TX1, List.of("a"));
+
+        mempoolWatcher.getMempoolScriptHashes(server, TX1);
+        Assertions.assertEquals(1, server.probes.size());
+
+        //Each probe that does not find the transaction doubles the interval up to the maximum
+        long[] intervals = {10000, 20000, 20000};
+        for(int i = 0; i < intervals.length; i++) {
+            clock.addAndGet(intervals[i] - 1);
+            mempoolWatcher.getMempoolScriptHashes(server, TX1);
+            Assertions.assertEquals(i + 1, server.probes.size(), "Unexpected probe before " + intervals[i] + "ms");
+            clock.addAndGet(1);
+            mempoolWatcher.getMempoolScriptHashes(server, TX1);
+            Assertions.assertEquals(i + 2, server.probes.size(), "Expected probe after " + intervals[i] + "ms");
+        }
+        Assertions.assertEquals(4, server.probes.size());
+    }
+
+    @Test
+    public void notificationTriggersProbe() throws ServerException {
+        mempoolWatcher.watchScriptHashes(TX1, List.of("a"));
+        mempoolWatcher.getMempoolScriptHashes(server, TX1);
+
+        clock.addAndGet(1000);
+        mempoolWatcher.getMempoolScriptHashes(server, TX1);
+        Assertions.assertEquals(1, server.probes.size());
+
+        mempoolWatcher.scriptHashUpdated("a");
+        server.mempool.put(TX1, Set.of("a"));
+        Assertions.assertEquals(Set.of("a"), mempoolWatcher.getMempoolScriptHashes(server, TX1));
+        Assertions.assertEquals(2, server.probes.size());
+
+        Assertions.assertEquals(1, mempoolWatcher.getDetectedCount());
+        Assertions.assertEquals(1000, mempoolWatcher.getMeanDetectionMillis());
+        Assertions.assertEquals(1000, mempoolWatcher.getMaxDetectionMillis());
+    }
+
+    @Test
+    public void unsubscribedProbesEveryCheck() throws ServerException {
+        unsubscribed.add("b");
+        mempoolWatcher.watchScriptHashes(TX1, List.of("a", "b"));
+
+        for(int i = 0; i < 3; i++) {
+            mempoolWatcher.getMempoolScriptHashes(server, TX1);
+            clock.addAndGet(1000);
+        }
+        Assertions.assertEquals(3, server.probes.size());
+    }
+
+    @Test
+    public void unwatchAndExpiry() throws ServerException {
+        mempoolWatcher.watchScriptHashes(TX1, List.of("a"));
+        mempoolWatcher.watchScriptHashes(TX1, List.of("a"));
+        mempoolWatcher.unwatch(TX1);
+
+        //The watch is shared, so it remains until every watcher has released it
+        mempoolWatcher.getMempoolScriptHashes(server, TX1);
+        Assertions.assertEquals(1, server.probes.size());
+
+        mempoolWatcher.unwatch(TX1);
+        clock.addAndGet(60000);
+        Assertions.assertTrue(mempoolWatcher.getMempoolScriptHashes(server, TX1).isEmpty());
+        Assertions.assertEquals(1, server.probes.size());
+
+        mempoolWatcher.watchScriptHashes(TX2, List.of("c"));
+        clock.addAndGet(10 * 60 * 1000 + 1);
+        Assertions.assertTrue(mempoolWatcher.getMempoolScriptHashes(server, TX2).isEmpty());
+        Assertions.assertEquals(1, server.probes.size());
+    }
+
+    private static Sha256Hash getTxid(int i) {
+        return Sha256Hash.of(ByteBuffer.allocate(4).putInt(i).array());
+    }
+
+    private static class ProbeServer extends ElectrumServer {
+        private final List<Map<Sha256Hash, Set<String>>> probes = new ArrayList<>();
+        private final Map<Sha256Hash, Set<String>> mempool = new HashMap<>();
+
+        @Override
+        public Map<Sha256Hash, Set<String>> getMempoolScriptHashes(Map<Sha256Hash, Set<String>> txidScriptHashes) {
+            Map<Sha256Hash, Set<String>> probe = new HashMap<>();
+            txidScriptHashes.forEach((txid, scriptHashes) -> probe.put(txid, new HashSet<>(scriptHashes)));
+            probes.add(probe);
+
+            Map<Sha256Hash, Set<String>> result = new HashMap<>();
+            for(Sha256Hash txid : txidScriptHashes.keySet()) {
+                if(mempool.containsKey(txid)) {
+                    result.put(txid, mempool.get(txid));
+                }
+            }
+
+            return result;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.sparrowwallet.sparrow.net.cormorant.bitcoind;
+
+import com.sparrowwallet.drongo.protocol.Sha256Hash;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+public class MempoolFeeratesTest {
+    private static final long BIN_WIDTH = 100000;
+    private static final int MEMPOOL_SIZE = 50000;
+    private static final int UPDATE_COUNT = 1000;
+    private static final int CHECK_INTERVAL = 100;
+
+    @Test
+    public void histogram() {
+        Map<Sha256Hash, VsizeFeerate> entries = new HashMap<>();
+        entries.put(getTxid(1), new VsizeFeerate(100, 0.00001));
+        entries.put(getTxid(2), new VsizeFeerate(200, 0.00001));
+        entries.put(getTxid(3), new VsizeFeerate(100, 0.00010));
+
+        MempoolFeerates mempoolFeerates = new MempoolFeerates();
+        mempoolFeerates.putAll(entries);
+
+        List<List<Number>> histogram = mempoolFeerates.getHistogram(1000);
+        Assertions.assertEquals(getReferenceHistogram(entries, 1000), histogram);
+        Assertions.assertEquals(1, histogram.size());
+        Assertions.assertEquals(400L, histogram.get(0).get(1));
+
+        histogram = mempoolFeerates.getHistogram(50);
+        Assertions.assertEquals(getReferenceHistogram(entries, 50), histogram);
+        Assertions.assertEquals(List.of(100L, 300L), histogram.stream().map(bin -> bin.get(1)).toList());
+        Assertions.assertSame(histogram, mempoolFeerates.getHistogram(50));
+
+        //Replacing an entry moves its vsize to the new feerate
+        mempoolFeerates.remove(getTxid(3));
+        entries.remove(getTxid(3));
+        mempoolFeerates.put(getTxid(2), new VsizeFeerate(200, 0.00010));
+        entries.put(getTxid(2), new VsizeFeerate(200, 0.00010));
+        Assertions.assertEquals(2, mempoolFeerates.size());
+        histogram = mempoolFeerates.getHistogram(50);
+        Assertions.assertEquals(getReferenceHistogram(entries, 50), histogram);
+        Assertions.assertEquals(List.of(200L, 100L), histogram.stream().map(bin -> bin.get(1)).toList());
+
+        mempoolFeerates.retainAll(Set.of(getTxid(2)));
+        entries.keySet().retainAll(Set.of(getTxid(2)));
+        Assertions.assertEquals(1, mempoolFeerates.size());
+        Assertions.assertFalse(mempoolFeerates.containsKey(getTxid(1)));
+        Assertions.assertEquals(getReferenceHistogram(entries, 50), mempoolFeerates.getHistogram(50));
+
+        mempoolFeerates.remove(getTxid(2));
+        Assertions.assertTrue(mempoolFeerates.getHistogram(50).isEmpty());
+    }
+
+    @Test
+    public void updateMempool() {
+        Random random = new Random(1);
+        Map<Sha256Hash, VsizeFeerate> reference = new HashMap<>();
+        for(int i = 0; i < MEMPOOL_SIZE; i++) {
+            reference.put(getTxid(i), getVsizeFeerate(random));
+        }
+
+        MempoolFeerates mempoolFeerates = new MempoolFeerates();
+        mempoolFeerates.putAll(reference);
+        Assertions.assertEquals(getReferenceHistogram(reference, BIN_WIDTH), mempoolFeerates.getHistogram(BIN_WIDTH));
+
+        //Each update is followed by a histogram request, as when Electrum clients query fees between mempool changes
+        for(int i = 0; i < UPDATE_COUNT; i++) {
+            Sha256Hash removed = getTxid(random.nextInt(MEMPOOL_SIZE));
+            mempoolFeerates.remove(removed);
+            reference.remove(removed);
+
+            Sha256Hash added = getTxid(MEMPOOL_SIZE + i);
+            VsizeFeerate vsizeFeerate = getVsizeFeerate(random);
+            mempoolFeerates.put(added, vsizeFeerate);
+            reference.put(added, vsizeFeerate);
+
+            List<List<Number>> histogram = mempoolFeerates.getHistogram(BIN_WIDTH);
+            if(i % CHECK_INTERVAL == 0) {
+                Assertions.assertEquals(getReferenceHistogram(reference, BIN_WIDTH), histogram, "Histogram differs after update " + i);
+            }
+        }
+
+        Assertions.assertEquals(reference.size(), mempoolFeerates.size());
+        Assertions.assertEquals(getReferenceHistogram(reference, BIN_WIDTH), mempoolFeerates.getHistogram(BIN_WIDTH));
+    }
+
+    private static List<List<Number>> getReferenceHistogram(Map<Sha256Hash, VsizeFeerate> entries, long binWidth) {
+        List<VsizeFeerate> sorted = new ArrayList<>(entries.values());
+        Collections.sort(sorted);
+
+        List<List<Number>> bins = new ArrayList<>();
+        long binSize = 0;
+        double lastFeerate = 0.0;
+        for(VsizeFeerate vsizeFeerate : sorted) {
+            if(binSize > binWidth && Math.abs(lastFeerate - vsizeFeerate.getFeerate()) > 0.0d) {
+                bins.add(List.of(lastFeerate, binSize));
+                binSize = 0;
+            }
+            binSize += vsizeFeerate.getVsize();
+            lastFeerate = vsizeFeerate.getFeerate();
+        }
+
+        if(binSize > 0) {
+            bins.add(List.of(lastFeerate, binSize));
+        }
+
+        return bins;
+    }
+
+    private static VsizeFeerate getVsizeFeerate(Random random) {
+        int vsize = 100 + random.nextInt(1000);
+        double fee = vsize * (1 + random.nextInt(5000)) / 100.0d / 100000000.0d;
+        return new VsizeFeerate(vsize, fee);
+    }
+
+    private static Sha256Hash getTxid(int i) {
+        return Sha256Hash.of(ByteBuffer.allocate(4).putInt(i).array());
+    }
+}
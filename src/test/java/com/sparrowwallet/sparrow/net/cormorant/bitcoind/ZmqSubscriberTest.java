@@ -0,0 +1,235 @@
+package com.sparrowwallet.sparrow.net.cormorant.bitcoind;
+
+import com.google.common.net.HostAndPort;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class ZmqSubscriberTest {
+    private static final int TIMEOUT_SECS = 10;
+
+    @Test
+    public void receiveNotifications() throws Exception {
+        try(ServerSocket serverSocket = new ServerSocket(0)) {
+            RecordingListener listener = new RecordingListener();
+            ZmqSubscriber subscriber = new ZmqSubscriber(HostAndPort.fromParts("127.0.0.1", serverSocket.getLocalPort()), Set.of("sequence"), listener);
+            subscriber.start();
+
+            try(Socket socket = serverSocket.accept()) {
+                Publisher publisher = new Publisher(socket, 0);
+                Assertions.assertEquals(List.of("sequence"), publisher.handshake(1));
+                Assertions.assertTrue(listener.connected.await(TIMEOUT_SECS, TimeUnit.SECONDS));
+                Assertions.assertTrue(subscriber.isConnected());
+
+                byte[] body = new byte[33];
+                body[32] = 'A';
+                publisher.publish("sequence", body, 1);
+                publisher.publish("sequence", body, 2);
+                //A skipped sequence number is reported as a gap
+                publisher.publish("sequence", body, 4);
+                //Bodies over 255 bytes use the long frame format
+                byte[] longBody = new byte[300];
+                longBody[32] = 'C';
+                publisher.publish("sequence", longBody, 5);
+
+                Assertions.assertFalse(listener.take().gap());
+                Assertions.assertFalse(listener.take().gap());
+                Assertions.assertTrue(listener.take().gap());
+                Message longMessage = listener.take();
+                Assertions.assertEquals("sequence", longMessage.topic());
+                Assertions.assertEquals(300, longMessage.body().length);
+                Assertions.assertEquals('C', (char)longMessage.body()[32]);
+                Assertions.assertFalse(longMessage.gap());
+            } finally {
+                subscriber.close();
+            }
+        }
+    }
+
+    @Test
+    public void heartbeat() throws Exception {
+        try(ServerSocket serverSocket = new ServerSocket(0)) {
+            RecordingListener listener = new RecordingListener();
+            ZmqSubscriber subscriber = new ZmqSubscriber(HostAndPort.fromParts("127.0.0.1", serverSocket.getLocalPort()), Set.of("sequence"), listener, 200);
+            subscriber.start();
+
+            try(Socket socket = serverSocket.accept()) {
+                Publisher publisher = new Publisher(socket, 2000);
+                publisher.handshake(1);
+                Assertions.assertTrue(listener.connected.await(TIMEOUT_SECS, TimeUnit.SECONDS));
+
+                //An idle subscriber pings, and stays connected while the publisher replies
+                for(int i = 0; i < 3; i++) {
+                    byte[] ping = publisher.readCommand("PING");
+                    publisher.pong(Arrays.copyOfRange(ping, 7, ping.length));
+                }
+                Assertions.assertTrue(subscriber.isConnected());
+
+                //Once the publisher stops replying the connection is treated as lost
+                publisher.readCommand("PING");
+                long deadline = System.currentTimeMillis() + TIMEOUT_SECS * 1000L;
+                while(subscriber.isConnected() && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(50);
+                }
+                Assertions.assertFalse(subscriber.isConnected());
+            } finally {
+                subscriber.close();
+            }
+        }
+    }
+
+    @Test
+    public void noHeartbeatWithZmtp30() throws Exception {
+        try(ServerSocket serverSocket = new ServerSocket(0)) {
+            RecordingListener listener = new RecordingListener();
+            ZmqSubscriber subscriber = new ZmqSubscriber(HostAndPort.fromParts("127.0.0.1", serverSocket.getLocalPort()), Set.of("hashblock"), listener, 100);
+            subscriber.start();
+
+            try(Socket socket = serverSocket.accept()) {
+                Publisher publisher = new Publisher(socket, 1000);
+                publisher.handshake(0);
+                Assertions.assertTrue(listener.connected.await(TIMEOUT_SECS, TimeUnit.SECONDS));
+
+                //A ZMTP 3.0 publisher does not support PING, so an idle connection is left open
+                Assertions.assertThrows(IOException.class, () -> publisher.readCommand("PING"));
+                Assertions.assertTrue(subscriber.isConnected());
+
+                publisher.publish("hashblock", new byte[32], 0);
+                Message message = listener.take();
+                Assertions.assertEquals("hashblock", message.topic());
+                Assertions.assertEquals(32, message.body().length);
+            } finally {
+                subscriber.close();
+            }
+        }
+    }
+
+    private record Message(String topic, byte[] body, boolean gap) {}
+
+    private static class RecordingListener implements ZmqSubscriber.Listener {
+        private final CountDownLatch connected = new CountDownLatch(1);
+        private final BlockingQueue<Message> messages = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onConnected() {
+            connected.countDown();
+        }
+
+        @Override
+        public void onMessage(String topic, byte[] body, boolean sequenceGap) {
+            messages.add(new Message(topic, body, sequenceGap));
+        }
+
+        public Message take() throws InterruptedException {
+            Message message = messages.poll(TIMEOUT_SECS, TimeUnit.SECONDS);
+            Assertions.assertNotNull(message, "No message received");
+            return message;
+        }
+    }
+
+    /**
+     * A stand-in for a Bitcoin Core ZMQ PUB socket, speaking the ZMTP 3.x framing used by libzmq
+     */
+    private static class Publisher {
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        public Publisher(Socket socket, int readTimeoutMillis) throws IOException {
+            socket.setSoTimeout(readTimeoutMillis);
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        /**
+         * Exchanges greetings and READY commands, and returns the topics subscribed to
+         */
+        public List<String> handshake(int minorVersion) throws IOException {
+            byte[] greeting = new byte[64];
+            in.readFully(greeting);
+            Assertions.assertEquals(0xFF, greeting[0] & 0xFF);
+            Assertions.assertEquals(0x7F, greeting[9]);
+            Assertions.assertEquals(3, greeting[10]);
+            Assertions.assertEquals("NULL", new String(greeting, 12, 4, StandardCharsets.US_ASCII));
+
+            byte[] peerGreeting = new byte[64];
+            peerGreeting[0] = (byte)0xFF;
+            peerGreeting[9] = 0x7F;
+            peerGreeting[10] = 3;
+            peerGreeting[11] = (byte)minorVersion;
+            System.arraycopy("NULL".getBytes(StandardCharsets.US_ASCII), 0, peerGreeting, 12, 4);
+            out.write(peerGreeting);
+            out.flush();
+
+            byte[] ready = readCommand("READY");
+            Assertions.assertTrue(new String(ready, StandardCharsets.US_ASCII).contains("Socket-Type"));
+            Assertions.assertTrue(new String(ready, StandardCharsets.US_ASCII).contains("SUB"));
+
+            ByteArrayOutputStream peerReady = new ByteArrayOutputStream();
+            peerReady.write(5);
+            peerReady.writeBytes("READY".getBytes(StandardCharsets.US_ASCII));
+            peerReady.write(11);
+            peerReady.writeBytes("Socket-Type".getBytes(StandardCharsets.US_ASCII));
+            peerReady.writeBytes(new byte[] {0, 0, 0, 3});
+            peerReady.writeBytes("PUB".getBytes(StandardCharsets.US_ASCII));
+            writeFrame(0x04, peerReady.toByteArray());
+            out.flush();
+
+            //Each subscription is a message frame starting with 1 followed by the topic
+            List<String> topics = new ArrayList<>();
+            byte[] subscription = readFrame(0);
+            Assertions.assertEquals(1, subscription[0]);
+            topics.add(new String(subscription, 1, subscription.length - 1, StandardCharsets.UTF_8));
+            return topics;
+        }
+
+        public void publish(String topic, byte[] body, int sequence) throws IOException {
+            writeFrame(0x01, topic.getBytes(StandardCharsets.UTF_8));
+            writeFrame(0x01, body);
+            writeFrame(0x00, ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(sequence).array());
+            out.flush();
+        }
+
+        public void pong(byte[] context) throws IOException {
+            ByteArrayOutputStream pong = new ByteArrayOutputStream();
+            pong.write(4);
+            pong.writeBytes("PONG".getBytes(StandardCharsets.US_ASCII));
+            pong.writeBytes(context);
+            writeFrame(0x04, pong.toByteArray());
+            out.flush();
+        }
+
+        public byte[] readCommand(String name) throws IOException {
+            byte[] command = readFrame(0x04);
+            Assertions.assertEquals(name, new String(command, 1, command[0], StandardCharsets.US_ASCII));
+            return command;
+        }
+
+        private byte[] readFrame(int expectedFlags) throws IOException {
+            int flags = in.readUnsignedByte();
+            Assertions.assertEquals(expectedFlags, flags & ~0x02);
+            long size = (flags & 0x02) != 0 ? in.readLong() : in.readUnsignedByte();
+            byte[] body = new byte[(int)size];
+            in.readFully(body);
+            return body;
+        }
+
+        private void writeFrame(int flags, byte[] body) throws IOException {
+            if(body.length > 255) {
+                out.writeByte(flags | 0x02);
+                out.writeLong(body.length);
+            } else {
+                out.writeByte(flags);
+                out.writeByte(body.length);
+            }
+            out.write(body);
+        }
+    }
+}
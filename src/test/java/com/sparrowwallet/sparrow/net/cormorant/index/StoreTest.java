@@ -0,0 +1,120 @@
+package com.sparrowwallet.sparrow.net.cormorant.index;
+
+import com.sparrowwallet.drongo.address.Address;
+import com.sparrowwallet.drongo.address.P2WPKHAddress;
+import com.sparrowwallet.drongo.protocol.Sha256Hash;
+import com.sparrowwallet.sparrow.net.cormorant.bitcoind.Category;
+import com.sparrowwallet.sparrow.net.cormorant.bitcoind.ListTransaction;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+public class StoreTest {
+    private static final int ADDRESS_COUNT = 2000;
+    private static final int TRANSACTIONS_PER_ADDRESS = 5;
+    private static final int MEMPOOL_TRANSACTIONS = 100;
+    private static final int PURGE_COUNT = 500;
+
+    @Test
+    public void purgeTransaction() {
+        Store store = new Store();
+        Address address = getAddress(0);
+        String confirmedTxid = getTxid(1);
+        String unconfirmedTxid = getTxid(2);
+        String scriptHash = store.addAddressTransaction(address, getListTransaction(address, confirmedTxid, 100, 1));
+        store.addAddressTransaction(address, getListTransaction(address, unconfirmedTxid, 0, 0));
+        String status = store.getStatus(scriptHash);
+
+        Assertions.assertEquals(2, store.getHistory(scriptHash).size());
+        Assertions.assertEquals(Set.of(scriptHash), store.purgeTransaction(unconfirmedTxid));
+        Assertions.assertEquals(1, store.getHistory(scriptHash).size());
+        Assertions.assertEquals(confirmedTxid, store.getHistory(scriptHash).iterator().next().tx_hash);
+        Assertions.assertNotEquals(status, store.getStatus(scriptHash));
+        Assertions.assertTrue(store.purgeTransaction(unconfirmedTxid).isEmpty());
+
+        store.purgeTransaction(confirmedTxid);
+        Assertions.assertTrue(store.getHistory(scriptHash).isEmpty());
+        Assertions.assertNull(store.getStatus(scriptHash));
+    }
+
+    @Test
+    public void confirmTransaction() {
+        Store store = new Store();
+        Address address = getAddress(0);
+        String txid = getTxid(1);
+        String scriptHash = store.addAddressTransaction(address, getListTransaction(address, txid, 0, 0));
+        Assertions.assertEquals(0, store.getHistory(scriptHash).iterator().next().height);
+
+        store.addAddressTransaction(address, getListTransaction(address, txid, 100, 1));
+        Assertions.assertEquals(1, store.getHistory(scriptHash).size());
+        Assertions.assertEquals(100, store.getHistory(scriptHash).iterator().next().height);
+
+        //Once no unconfirmed entries remain, mempool updates do not revisit the script hash
+        Assertions.assertTrue(store.updateMempoolTransactions().isEmpty());
+    }
+
+    @Test
+    public void updateIndexes() {
+        Store store = new Store();
+        List<String> scriptHashes = new ArrayList<>(ADDRESS_COUNT);
+        List<String> confirmedTxids = new ArrayList<>();
+        int txCounter = 0;
+        for(int i = 0; i < ADDRESS_COUNT; i++) {
+            Address address = getAddress(i);
+            String scriptHash = null;
+            for(int j = 0; j < TRANSACTIONS_PER_ADDRESS; j++) {
+                String txid = getTxid(txCounter++);
+                scriptHash = store.addAddressTransaction(address, getListTransaction(address, txid, 1000 + j, j));
+                confirmedTxids.add(txid);
+            }
+            scriptHashes.add(scriptHash);
+        }
+
+        List<String> mempoolTxids = new ArrayList<>();
+        for(int i = 0; i < MEMPOOL_TRANSACTIONS; i++) {
+            Address address = getAddress(i);
+            String txid = getTxid(txCounter++);
+            store.addAddressTransaction(address, getListTransaction(address, txid, 0, 0));
+            mempoolTxids.add(txid);
+        }
+
+        //Each purge only touches the script hash of the purged transaction
+        for(int i = 0; i < PURGE_COUNT; i++) {
+            Assertions.assertEquals(Set.of(scriptHashes.get(i)), store.purgeTransaction(confirmedTxids.get(i * TRANSACTIONS_PER_ADDRESS)));
+        }
+
+        //The unconfirmed transactions have no mempool entries, so they are all removed on the mempool update
+        Set<String> updatedScriptHashes = store.updateMempoolTransactions();
+
+        Assertions.assertEquals(new HashSet<>(scriptHashes.subList(0, MEMPOOL_TRANSACTIONS)), updatedScriptHashes);
+        Assertions.assertEquals(TRANSACTIONS_PER_ADDRESS - 1, store.getHistory(scriptHashes.get(0)).size());
+        Assertions.assertEquals(TRANSACTIONS_PER_ADDRESS, store.getHistory(scriptHashes.get(ADDRESS_COUNT - 1)).size());
+        Assertions.assertTrue(store.purgeTransaction(mempoolTxids.get(0)).isEmpty());
+
+        Assertions.assertEquals(TRANSACTIONS_PER_ADDRESS - 1, store.getHistory(scriptHashes.get(PURGE_COUNT - 1)).size());
+        Assertions.assertEquals(TRANSACTIONS_PER_ADDRESS, store.getHistory(scriptHashes.get(PURGE_COUNT)).size());
+        Assertions.assertTrue(store.updateMempoolTransactions().isEmpty());
+
+        for(String scriptHash : scriptHashes) {
+            Assertions.assertNotNull(store.getStatus(scriptHash));
+        }
+    }
+
+    private static Address getAddress(int i) {
+        byte[] hash = new byte[20];
+        ByteBuffer.wrap(hash).putInt(i);
+        return new P2WPKHAddress(hash);
+    }
+
+    private static String getTxid(int i) {
+        return Sha256Hash.of(ByteBuffer.allocate(4).putInt(i).array()).toString();
+    }
+
+    private static ListTransaction getListTransaction(Address address, String txid, int height, int blockIndex) {
+        int confirmations = height > 0 ? 1 : 0;
+        String blockHash = height > 0 ? getTxid(-height) : null;
+        return new ListTransaction(address.toString(), Collections.emptyList(), Category.receive, 0.001, 0, 0.00001, confirmations, blockHash, blockIndex, 0L, height, txid, 0L, 0L, Collections.emptyList());
+    }
+}
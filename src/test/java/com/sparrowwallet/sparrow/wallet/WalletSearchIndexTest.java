@@ -0,0 +1,109 @@
+package com.sparrowwallet.sparrow.wallet;
+
+import com.sparrowwallet.drongo.address.Address;
+import com.sparrowwallet.drongo.address.P2WPKHAddress;
+import com.sparrowwallet.drongo.protocol.Sha256Hash;
+import com.sparrowwallet.drongo.protocol.Transaction;
+import com.sparrowwallet.drongo.protocol.TransactionOutput;
+import com.sparrowwallet.drongo.wallet.BlockTransaction;
+import com.sparrowwallet.drongo.wallet.BlockTransactionHashIndex;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+
+public class WalletSearchIndexTest {
+    private static final Address ADDRESS = new P2WPKHAddress(new byte[20]);
+
+    @Test
+    public void trigramIntersection() {
+        List<WalletSearchIndex.Source> sources = List.of(label("Coffee shop"), label("Coffee beans"), label("Tea shop"), label("abc-bcd"));
+        WalletSearchIndex searchIndex = new WalletSearchIndex(sources);
+
+        assertResults(sources, searchIndex.search("coffee", null, null, () -> false), 0, 1);
+        assertResults(sources, searchIndex.search("shop", null, null, () -> false), 0, 2);
+        assertResults(sources, searchIndex.search("ee sh", null, null, () -> false), 0);
+        assertResults(sources, searchIndex.search("zzz", null, null, () -> false));
+
+        //Both trigrams of the search text are in the label, but not together
+        assertResults(sources, searchIndex.search("abcd", null, null, () -> false));
+    }
+
+    @Test
+    public void shortTermFallback() {
+        List<WalletSearchIndex.Source> sources = List.of(label("Coffee shop"), label("Coffee beans"), label("Tea shop"), label(null),
+                new WalletSearchIndex.Source(new SearchEntry(), null, ADDRESS, null, null, null, null));
+        WalletSearchIndex searchIndex = new WalletSearchIndex(sources);
+
+        //Text shorter than a trigram is checked against every label and address
+        assertResults(sources, searchIndex.search("ea", null, null, () -> false), 1, 2);
+        assertResults(sources, searchIndex.search("1q", null, null, () -> false), 4);
+        assertResults(sources, searchIndex.search("x", null, null, () -> false));
+    }
+
+    @Test
+    public void resultOrder() {
+        Sha256Hash txid = getHash(1);
+        BlockTransactionHashIndex txo = new BlockTransactionHashIndex(getHash(2), 100, null, 100L, 3, 5000L);
+        Transaction transaction = new Transaction();
+        transaction.addOutput(new TransactionOutput(transaction, 1000L, ADDRESS.getOutputScript()));
+
+        List<WalletSearchIndex.Source> sources = List.of(
+                new WalletSearchIndex.Source(new SearchEntry(), "Rent " + txid, null, null, null, -5000L, null),
+                new WalletSearchIndex.Source(new SearchEntry(), "Payment", null, txid, null, -1000L, new BlockTransaction(txid, 100, null, 100L, transaction)),
+                new WalletSearchIndex.Source(new SearchEntry(), null, null, txo.getHash(), txo, 5000L, null),
+                label("Unrelated"));
+        WalletSearchIndex searchIndex = new WalletSearchIndex(sources);
+
+        //Matches by hash and by label are returned once each, in source order
+        assertResults(sources, searchIndex.search(txid.toString(), null, null, () -> false), 0, 1);
+        assertResults(sources, searchIndex.search(txo.toString(), null, null, () -> false), 2);
+        assertResults(sources, searchIndex.search("5000", 5000L, null, () -> false), 0, 2);
+        assertResults(sources, searchIndex.search(ADDRESS.toString(), null, ADDRESS, () -> false), 1);
+    }
+
+    @Test
+    public void cancelSearch() {
+        WalletSearchIndex searchIndex = new WalletSearchIndex(List.of(label("Coffee shop")));
+        Assertions.assertThrows(CancellationException.class, () -> searchIndex.search("coffee", null, null, () -> true));
+    }
+
+    private static WalletSearchIndex.Source label(String label) {
+        return new WalletSearchIndex.Source(new SearchEntry(), label, null, null, null, null, null);
+    }
+
+    private static void assertResults(List<WalletSearchIndex.Source> sources, List<Entry> results, int... indexes) {
+        List<Entry> expected = Arrays.stream(indexes).mapToObj(i -> sources.get(i).entry()).toList();
+        Assertions.assertEquals(expected.size(), results.size());
+        for(int i = 0; i < expected.size(); i++) {
+            Assertions.assertSame(expected.get(i), results.get(i));
+        }
+    }
+
+    private static Sha256Hash getHash(int i) {
+        return Sha256Hash.of(ByteBuffer.allocate(4).putInt(i).array());
+    }
+
+    private static class SearchEntry extends Entry {
+        public SearchEntry() {
+            super(null, (String)null, new ArrayList<>());
+        }
+
+        @Override
+        public Long getValue() {
+            return 0L;
+        }
+
+        @Override
+        public String getEntryType() {
+            return "Search";
+        }
+
+        @Override
+        public Function getWalletFunction() {
+            return Function.TRANSACTIONS;
+        }
+    }
+}
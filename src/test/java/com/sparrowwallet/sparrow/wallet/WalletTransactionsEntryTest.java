@@ -0,0 +1,186 @@
+package com.sparrowwallet.sparrow.wallet;
+
+import com.sparrowwallet.drongo.KeyPurpose;
+import com.sparrowwallet.drongo.address.Address;
+import com.sparrowwallet.drongo.address.P2WPKHAddress;
+import com.sparrowwallet.drongo.protocol.*;
+import com.sparrowwallet.drongo.wallet.BlockTransaction;
+import com.sparrowwallet.drongo.wallet.BlockTransactionHashIndex;
+import com.sparrowwallet.drongo.wallet.Wallet;
+import com.sparrowwallet.drongo.wallet.WalletNode;
+import com.sparrowwallet.sparrow.event.WalletHistoryChangedEvent;
+import com.sparrowwallet.sparrow.io.Config;
+import com.sparrowwallet.sparrow.io.IoTest;
+import com.sparrowwallet.sparrow.io.Storage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+public class WalletTransactionsEntryTest extends IoTest {
+    private static final long FUNDING_VALUE = 100000L;
+    private static final long SPEND_VALUE = 60000L;
+    private static final long CHANGE_VALUE = 39000L;
+
+    private Storage storage;
+    private Wallet wallet;
+    private WalletNode receiveNode;
+    private WalletNode changeNode;
+    private Address externalAddress;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        System.setProperty(Wallet.ALLOW_DERIVATIONS_MATCHING_OTHER_NETWORKS_PROPERTY, "true");
+        storage = new Storage(getFile("sparrow-single-wallet"));
+        wallet = storage.loadEncryptedWallet("pass").getWallet();
+        wallet.clearHistory();
+        wallet.setStoredBlockHeight(200);
+        receiveNode = wallet.getFreshNode(KeyPurpose.RECEIVE);
+        changeNode = wallet.getFreshNode(KeyPurpose.CHANGE);
+        externalAddress = new P2WPKHAddress(new byte[20]);
+    }
+
+    @Test
+    public void insertAndRemoveTransactions() {
+        WalletTransactionsEntry entry = new WalletTransactionsEntry(wallet);
+        Assertions.assertTrue(entry.getChildren().isEmpty());
+
+        BlockTransaction fundingTx = addFundingTransaction(100);
+        entry.updateTransactions(historyChanged(receiveNode));
+        Assertions.assertEquals(1, entry.getChildren().size());
+        Assertions.assertEquals(FUNDING_VALUE, entry.getBalance());
+        Assertions.assertEquals(0L, entry.getMempoolBalance());
+
+        BlockTransaction spendTx = addSpendTransaction(fundingTx);
+        entry.updateTransactions(historyChanged(receiveNode, changeNode));
+        Assertions.assertEquals(2, entry.getChildren().size());
+        Assertions.assertEquals(fundingTx.getHash(), getTransactionEntry(entry, 0).getBlockTransaction().getHash());
+        Assertions.assertEquals(spendTx.getHash(), getTransactionEntry(entry, 1).getBlockTransaction().getHash());
+        Assertions.assertEquals(FUNDING_VALUE, getTransactionEntry(entry, 0).getBalance());
+        Assertions.assertEquals(CHANGE_VALUE, getTransactionEntry(entry, 1).getBalance());
+        Assertions.assertEquals(CHANGE_VALUE, entry.getBalance());
+        Assertions.assertEquals(CHANGE_VALUE - FUNDING_VALUE, entry.getMempoolBalance());
+        assertMatchesRebuilt(entry);
+
+        //The spend is evicted from the mempool, so its entry is removed and the funding output is unspent again
+        receiveNode.getTransactionOutputs().iterator().next().setSpentBy(null);
+        changeNode.getTransactionOutputs().clear();
+        wallet.getTransactions().remove(spendTx.getHash());
+        entry.updateTransactions(historyChanged(receiveNode, changeNode));
+        Assertions.assertEquals(1, entry.getChildren().size());
+        Assertions.assertEquals(FUNDING_VALUE, entry.getBalance());
+        Assertions.assertEquals(0L, entry.getMempoolBalance());
+        assertMatchesRebuilt(entry);
+    }
+
+    @Test
+    public void insertBeforeExistingTransactions() {
+        BlockTransaction laterTx = addFundingTransaction(150);
+        WalletTransactionsEntry entry = new WalletTransactionsEntry(wallet);
+        Assertions.assertEquals(1, entry.getChildren().size());
+
+        //A transaction confirmed earlier is inserted ahead of the existing entry, and the balances after it are recalculated
+        BlockTransaction earlierTx = addFundingTransaction(100);
+        entry.updateTransactions(historyChanged(receiveNode));
+        Assertions.assertEquals(2, entry.getChildren().size());
+        Assertions.assertEquals(earlierTx.getHash(), getTransactionEntry(entry, 0).getBlockTransaction().getHash());
+        Assertions.assertEquals(laterTx.getHash(), getTransactionEntry(entry, 1).getBlockTransaction().getHash());
+        Assertions.assertEquals(FUNDING_VALUE, getTransactionEntry(entry, 0).getBalance());
+        Assertions.assertEquals(FUNDING_VALUE * 2, getTransactionEntry(entry, 1).getBalance());
+        assertMatchesRebuilt(entry);
+    }
+
+    @Test
+    public void retryMissingWalletTransaction() {
+        WalletTransactionsEntry entry = new WalletTransactionsEntry(wallet);
+
+        //The node references the transaction before the wallet has been updated with it
+        BlockTransaction fundingTx = addFundingTransaction(100);
+        wallet.getTransactions().remove(fundingTx.getHash());
+        entry.updateTransactions(historyChanged(receiveNode));
+        Assertions.assertTrue(entry.getChildren().isEmpty());
+
+        //The next update includes the transaction even though the node has not changed again
+        wallet.getTransactions().put(fundingTx.getHash(), fundingTx);
+        entry.updateTransactions(historyChanged());
+        Assertions.assertEquals(1, entry.getChildren().size());
+        Assertions.assertEquals(FUNDING_VALUE, entry.getBalance());
+    }
+
+    @Test
+    public void recalculateBalances() {
+        boolean includeMempoolOutputs = Config.get().isIncludeMempoolOutputs();
+        try {
+            Config.get().setIncludeMempoolOutputs(false);
+            addFundingTransaction(0);
+            WalletTransactionsEntry entry = new WalletTransactionsEntry(wallet);
+            Assertions.assertEquals(0L, entry.getBalance());
+            Assertions.assertEquals(FUNDING_VALUE, entry.getMempoolBalance());
+
+            Config.get().setIncludeMempoolOutputs(true);
+            entry.recalculateBalances();
+            Assertions.assertEquals(FUNDING_VALUE, entry.getBalance());
+            Assertions.assertEquals(FUNDING_VALUE, getTransactionEntry(entry, 0).getBalance());
+        } finally {
+            Config.get().setIncludeMempoolOutputs(includeMempoolOutputs);
+        }
+    }
+
+    private BlockTransaction addFundingTransaction(int height) {
+        Transaction transaction = new Transaction();
+        transaction.addInput(getHash(wallet.getTransactions().size()), 0, new Script(new byte[0]));
+        transaction.addOutput(new TransactionOutput(transaction, FUNDING_VALUE, receiveNode.getAddress().getOutputScript()));
+        BlockTransaction blockTransaction = addTransaction(transaction, height);
+        receiveNode.getTransactionOutputs().add(new BlockTransactionHashIndex(blockTransaction.getHash(), height, null, 100L, 0, FUNDING_VALUE));
+        return blockTransaction;
+    }
+
+    private BlockTransaction addSpendTransaction(BlockTransaction fundingTx) {
+        Transaction transaction = new Transaction();
+        transaction.addInput(fundingTx.getHash(), 0, new Script(new byte[0]));
+        transaction.addOutput(new TransactionOutput(transaction, SPEND_VALUE, externalAddress.getOutputScript()));
+        transaction.addOutput(new TransactionOutput(transaction, CHANGE_VALUE, changeNode.getAddress().getOutputScript()));
+        BlockTransaction blockTransaction = addTransaction(transaction, 0);
+
+        BlockTransactionHashIndex fundingTxo = receiveNode.getTransactionOutputs().iterator().next();
+        fundingTxo.setSpentBy(new BlockTransactionHashIndex(blockTransaction.getHash(), 0, null, 1000L, 0, FUNDING_VALUE));
+        changeNode.getTransactionOutputs().add(new BlockTransactionHashIndex(blockTransaction.getHash(), 0, null, 1000L, 1, CHANGE_VALUE));
+        return blockTransaction;
+    }
+
+    private BlockTransaction addTransaction(Transaction transaction, int height) {
+        BlockTransaction blockTransaction = new BlockTransaction(transaction.getTxId(), height, null, 0L, transaction);
+        wallet.getTransactions().put(blockTransaction.getHash(), blockTransaction);
+        return blockTransaction;
+    }
+
+    private WalletHistoryChangedEvent historyChanged(WalletNode... nodes) {
+        return new WalletHistoryChangedEvent(wallet, storage, List.of(nodes), Collections.emptyList());
+    }
+
+    private static TransactionEntry getTransactionEntry(WalletTransactionsEntry entry, int index) {
+        return (TransactionEntry)entry.getChildren().get(index);
+    }
+
+    private void assertMatchesRebuilt(WalletTransactionsEntry entry) {
+        WalletTransactionsEntry rebuilt = new WalletTransactionsEntry(wallet);
+        Assertions.assertEquals(rebuilt.getChildren(), entry.getChildren());
+        for(int i = 0; i < rebuilt.getChildren().size(); i++) {
+            Assertions.assertEquals(getTransactionEntry(rebuilt, i).getBalance(), getTransactionEntry(entry, i).getBalance());
+        }
+        Assertions.assertEquals(rebuilt.getBalance(), entry.getBalance());
+        Assertions.assertEquals(rebuilt.getMempoolBalance(), entry.getMempoolBalance());
+    }
+
+    private static Sha256Hash getHash(int i) {
+        return Sha256Hash.of(ByteBuffer.allocate(4).putInt(i).array());
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.setProperty(Wallet.ALLOW_DERIVATIONS_MATCHING_OTHER_NETWORKS_PROPERTY, "false");
+    }
+}
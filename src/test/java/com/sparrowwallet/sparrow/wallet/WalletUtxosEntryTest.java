@@ -0,0 +1,200 @@
+package com.sparrowwallet.sparrow.wallet;
+
+import com.sparrowwallet.drongo.KeyPurpose;
+import com.sparrowwallet.drongo.address.P2WPKHAddress;
+import com.sparrowwallet.drongo.protocol.*;
+import com.sparrowwallet.drongo.wallet.BlockTransaction;
+import com.sparrowwallet.drongo.wallet.BlockTransactionHashIndex;
+import com.sparrowwallet.drongo.wallet.Wallet;
+import com.sparrowwallet.drongo.wallet.WalletNode;
+import com.sparrowwallet.sparrow.io.IoTest;
+import com.sparrowwallet.sparrow.io.Storage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+public class WalletUtxosEntryTest extends IoTest {
+    private static final int LARGE_NODE_COUNT = 10000;
+    private static final int LARGE_NODE_UTXOS = 5;
+    private static final long DUST_VALUE = 500L;
+
+    private Wallet wallet;
+    private int txCounter;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        System.setProperty(Wallet.ALLOW_DERIVATIONS_MATCHING_OTHER_NETWORKS_PROPERTY, "true");
+        Storage storage = new Storage(getFile("sparrow-single-wallet"));
+        wallet = storage.loadEncryptedWallet("pass").getWallet();
+        wallet.clearHistory();
+        wallet.setStoredBlockHeight(200);
+    }
+
+    @Test
+    public void diffByReference() {
+        WalletNode firstNode = getNode(0);
+        BlockTransactionHashIndex unconfirmedTxo = addTxo(firstNode, 0, 10000L);
+        WalletUtxosEntry entry = new WalletUtxosEntry(wallet);
+        Assertions.assertEquals(1, entry.getChildren().size());
+        UtxoEntry unconfirmedEntry = getUtxoEntry(entry, unconfirmedTxo);
+
+        //Confirmation replaces the output reference, so its entry is replaced even though the output is the same
+        BlockTransactionHashIndex confirmedTxo = new BlockTransactionHashIndex(unconfirmedTxo.getHash(), 150, null, 100L, unconfirmedTxo.getIndex(), unconfirmedTxo.getValue());
+        firstNode.getTransactionOutputs().remove(unconfirmedTxo);
+        firstNode.getTransactionOutputs().add(confirmedTxo);
+        BlockTransactionHashIndex otherTxo = addTxo(getNode(1), 150, 20000L);
+        entry.updateUtxos();
+
+        Assertions.assertEquals(2, entry.getChildren().size());
+        Assertions.assertFalse(entry.getChildren().contains(unconfirmedEntry));
+        Assertions.assertEquals(150, getUtxoEntry(entry, confirmedTxo).getHashIndex().getHeight());
+        UtxoEntry otherEntry = getUtxoEntry(entry, otherTxo);
+
+        //Unchanged outputs keep their entries
+        entry.updateUtxos();
+        Assertions.assertEquals(2, entry.getChildren().size());
+        Assertions.assertSame(otherEntry, getUtxoEntry(entry, otherTxo));
+        Assertions.assertEquals(30000L, entry.getBalance());
+    }
+
+    @Test
+    public void duplicateAddresses() {
+        WalletNode firstNode = getNode(0);
+        BlockTransactionHashIndex firstTxo = addTxo(firstNode, 100, 10000L);
+        BlockTransactionHashIndex otherTxo = addTxo(getNode(1), 100, 10000L);
+        WalletUtxosEntry entry = new WalletUtxosEntry(wallet);
+        Assertions.assertFalse(getUtxoEntry(entry, firstTxo).isDuplicateAddress());
+
+        BlockTransactionHashIndex secondTxo = addTxo(firstNode, 150, 20000L);
+        entry.updateUtxos();
+        Assertions.assertTrue(getUtxoEntry(entry, firstTxo).isDuplicateAddress());
+        Assertions.assertTrue(getUtxoEntry(entry, secondTxo).isDuplicateAddress());
+        Assertions.assertFalse(getUtxoEntry(entry, otherTxo).isDuplicateAddress());
+
+        secondTxo.setSpentBy(new BlockTransactionHashIndex(getHash(txCounter++), 0, null, 100L, 0, secondTxo.getValue()));
+        entry.updateUtxos();
+        Assertions.assertEquals(2, entry.getChildren().size());
+        Assertions.assertFalse(getUtxoEntry(entry, firstTxo).isDuplicateAddress());
+    }
+
+    @Test
+    public void dustFromOtherWallet() {
+        WalletNode dustNode = getNode(0);
+        BlockTransactionHashIndex receivedTxo = addTxo(dustNode, 100, 10000L);
+        WalletUtxosEntry entry = new WalletUtxosEntry(wallet);
+        Assertions.assertFalse(isDustAttack(getUtxoEntry(entry, receivedTxo)));
+
+        //A small output sent to a used address by another wallet is flagged
+        Transaction transaction = new Transaction();
+        transaction.addInput(getHash(txCounter++), 0, new Script(new byte[0]));
+        transaction.addOutput(new TransactionOutput(transaction, DUST_VALUE, dustNode.getAddress().getOutputScript()));
+        BlockTransactionHashIndex dustTxo = addTransactionTxo(dustNode, addTransaction(transaction, 0));
+        entry.updateUtxos();
+        Assertions.assertTrue(isDustAttack(getUtxoEntry(entry, dustTxo)));
+        Assertions.assertFalse(isDustAttack(getUtxoEntry(entry, receivedTxo)));
+    }
+
+    @Test
+    public void recheckDustWhenSpentOutputsArrive() {
+        WalletNode fundingNode = getNode(0);
+        WalletNode changeNode = wallet.getFreshNode(KeyPurpose.CHANGE);
+        BlockTransactionHashIndex previousTxo = addTxo(changeNode, 100, 10000L);
+        previousTxo.setSpentBy(new BlockTransactionHashIndex(getHash(txCounter++), 110, null, 100L, 0, previousTxo.getValue()));
+
+        Transaction fundingTransaction = new Transaction();
+        fundingTransaction.addInput(getHash(txCounter++), 0, new Script(new byte[0]));
+        fundingTransaction.addOutput(new TransactionOutput(fundingTransaction, 20000L, fundingNode.getAddress().getOutputScript()));
+        BlockTransaction fundingTx = addTransaction(fundingTransaction, 120);
+        BlockTransactionHashIndex fundingTxo = new BlockTransactionHashIndex(fundingTx.getHash(), 120, null, 100L, 0, 20000L);
+
+        //Small change from spending a wallet output, where the spent output has not yet been added to the wallet
+        Transaction spendTransaction = new Transaction();
+        spendTransaction.addInput(fundingTxo.getHash(), fundingTxo.getIndex(), new Script(new byte[0]));
+        spendTransaction.addOutput(new TransactionOutput(spendTransaction, 19000L, new P2WPKHAddress(new byte[20]).getOutputScript()));
+        spendTransaction.addOutput(new TransactionOutput(spendTransaction, DUST_VALUE, changeNode.getAddress().getOutputScript()));
+        BlockTransaction spendTx = addTransaction(spendTransaction, 0);
+        BlockTransactionHashIndex changeTxo = new BlockTransactionHashIndex(spendTx.getHash(), 0, null, 500L, 1, DUST_VALUE);
+        changeNode.getTransactionOutputs().add(changeTxo);
+
+        WalletUtxosEntry entry = new WalletUtxosEntry(wallet);
+        Assertions.assertTrue(isDustAttack(getUtxoEntry(entry, changeTxo)));
+
+        //The spent output arrives without changing the change node, and the change is re-checked once the funding node history is reported
+        fundingTxo.setSpentBy(new BlockTransactionHashIndex(spendTx.getHash(), 0, null, 500L, 0, fundingTxo.getValue()));
+        fundingNode.getTransactionOutputs().add(fundingTxo);
+        entry.updateUtxos();
+        Assertions.assertTrue(isDustAttack(getUtxoEntry(entry, changeTxo)));
+        entry.updateUtxos(List.of(fundingNode));
+        Assertions.assertFalse(isDustAttack(getUtxoEntry(entry, changeTxo)));
+    }
+
+    @Test
+    public void updateLargeWallet() {
+        WalletNode purposeNode = wallet.getNode(KeyPurpose.RECEIVE);
+        purposeNode.fillToIndex(wallet, LARGE_NODE_COUNT - 1);
+        for(WalletNode addressNode : purposeNode.getChildren()) {
+            for(int i = 0; i < LARGE_NODE_UTXOS; i++) {
+                addTxo(addressNode, 100, 10000L + i);
+            }
+        }
+
+        WalletUtxosEntry entry = new WalletUtxosEntry(wallet);
+        Assertions.assertEquals(LARGE_NODE_COUNT * LARGE_NODE_UTXOS, entry.getChildren().size());
+
+        WalletNode firstNode = purposeNode.getChildren().iterator().next();
+        BlockTransactionHashIndex spentTxo = firstNode.getTransactionOutputs().iterator().next();
+        spentTxo.setSpentBy(new BlockTransactionHashIndex(getHash(txCounter++), 0, null, 100L, 0, spentTxo.getValue()));
+        BlockTransactionHashIndex addedTxo = addTxo(getNode(LARGE_NODE_COUNT - 1), 0, 30000L);
+
+        entry.updateUtxos();
+
+        Assertions.assertEquals(LARGE_NODE_COUNT * LARGE_NODE_UTXOS, entry.getChildren().size());
+        Assertions.assertNotNull(getUtxoEntry(entry, addedTxo));
+        Assertions.assertTrue(entry.getChildren().stream().noneMatch(e -> ((UtxoEntry)e).getHashIndex() == spentTxo));
+    }
+
+    private WalletNode getNode(int index) {
+        WalletNode purposeNode = wallet.getNode(KeyPurpose.RECEIVE);
+        purposeNode.fillToIndex(wallet, index);
+        return purposeNode.getChildren().stream().filter(node -> node.getIndex() == index).findFirst().orElseThrow();
+    }
+
+    private BlockTransactionHashIndex addTxo(WalletNode node, int height, long value) {
+        BlockTransactionHashIndex txo = new BlockTransactionHashIndex(getHash(txCounter++), height, null, 100L, 0, value);
+        node.getTransactionOutputs().add(txo);
+        return txo;
+    }
+
+    private BlockTransaction addTransaction(Transaction transaction, int height) {
+        BlockTransaction blockTransaction = new BlockTransaction(transaction.getTxId(), height, null, 100L, transaction);
+        wallet.getTransactions().put(blockTransaction.getHash(), blockTransaction);
+        return blockTransaction;
+    }
+
+    private static BlockTransactionHashIndex addTransactionTxo(WalletNode node, BlockTransaction blockTransaction) {
+        BlockTransactionHashIndex txo = new BlockTransactionHashIndex(blockTransaction.getHash(), blockTransaction.getHeight(), null, 100L, 0, blockTransaction.getTransaction().getOutputs().get(0).getValue());
+        node.getTransactionOutputs().add(txo);
+        return txo;
+    }
+
+    private static UtxoEntry getUtxoEntry(WalletUtxosEntry entry, BlockTransactionHashIndex txo) {
+        return entry.getChildren().stream().map(UtxoEntry.class::cast).filter(utxoEntry -> utxoEntry.getHashIndex() == txo).findFirst().orElseThrow();
+    }
+
+    private static boolean isDustAttack(UtxoEntry utxoEntry) {
+        return utxoEntry.addressStatusProperty().get().isDustAttack();
+    }
+
+    private static Sha256Hash getHash(int i) {
+        return Sha256Hash.of(ByteBuffer.allocate(4).putInt(i).array());
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.setProperty(Wallet.ALLOW_DERIVATIONS_MATCHING_OTHER_NETWORKS_PROPERTY, "false");
+    }
+}